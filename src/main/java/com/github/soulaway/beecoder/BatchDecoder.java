@@ -0,0 +1,219 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_STREAM_END;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Decodes the many Bencoded files (.torrent, resume data) concurrently, on
+ * the bounded pool of threads. The files are submitted only as fast as they
+ * are decoded, so the directory of any size is loaded with the bounded
+ * memory, and every file is passed to the listener as soon as it's decoded.
+ * The file, that can't be read or is malformed, is reported to the listener
+ * too, and the batch goes on.
+ *
+ * <pre>
+ * BatchDecoder batch = new BatchDecoder();
+ * batch.decodeDirectory(resumeDir, "*.fastresume", new BatchDecoder.Listener() {
+ * 	public void decoded(Path path, Object value) {
+ * 		session.resume((BencodeDict) value);
+ * 	}
+ *
+ * 	public void failed(Path path, IOException e) {
+ * 		log.warn(path + ": " + e.getMessage());
+ * 	}
+ * });
+ * </pre>
+ *
+ * The small files are read to the heap, the large ones are memory mapped, the
+ * way {@link BeeCoder#decodeFile(Path)} does. The decoder can be shared
+ * between threads, every batch runs on its own pool.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BatchDecoder {
+
+	// the smaller files are read, mapping them costs more than the copy
+	private static final int MAP_THRESHOLD = 256 * 1024;
+	// the files submitted, but not decoded yet, per thread
+	private static final int QUEUED_PER_THREAD = 4;
+
+	/**
+	 * Receives the results of the batch. The methods are called by the
+	 * threads of the pool concurrently.
+	 */
+	public interface Listener {
+
+		/**
+		 * @param path
+		 *            - the file decoded
+		 * @param value
+		 *            - the decoded value
+		 */
+		void decoded(Path path, Object value);
+
+		/**
+		 * @param path
+		 *            - the file, that can't be read or is malformed
+		 * @param e
+		 *            - the reason
+		 */
+		void failed(Path path, IOException e);
+	}
+
+	private final BencodeDecoder decoder;
+	private final int threads;
+
+	/**
+	 * Creates the decoder with the {@link BencodeLimits#DEFAULT} limits, that
+	 * runs the thread per processor.
+	 */
+	public BatchDecoder() {
+		this(BencodeLimits.DEFAULT, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates the decoder.
+	 *
+	 * @param limits
+	 *            - the limits every file is checked against
+	 * @param threads
+	 *            - the number of the threads decoding the files
+	 */
+	public BatchDecoder(BencodeLimits limits, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads " + threads);
+		}
+		this.decoder = new BencodeDecoder(limits);
+		this.threads = threads;
+	}
+
+	/**
+	 * Decodes the files of the directory, listing it lazily.
+	 *
+	 * @param dir
+	 *            - the directory
+	 * @param glob
+	 *            - the pattern of the file names, like "*.torrent"
+	 * @param listener
+	 *            - receives the results
+	 * @return - the number of the files decoded, the failed ones excluded
+	 * @throws IOException
+	 *             when the directory can't be listed or the batch is
+	 *             interrupted
+	 */
+	public int decodeDirectory(Path dir, String glob, Listener listener)
+			throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+			return decodeAll(files, listener);
+		}
+	}
+
+	/**
+	 * Decodes the files, returning when all of them are decoded or failed.
+	 * The exception or the error thrown by the listener or the decoding (like
+	 * OutOfMemoryError) stops the batch and is thrown from here.
+	 *
+	 * @param paths
+	 *            - the files, every one contains the single value
+	 * @param listener
+	 *            - receives the results
+	 * @return - the number of the files decoded, the failed ones excluded
+	 * @throws IOException
+	 *             when the batch is interrupted
+	 */
+	public int decodeAll(Iterable<Path> paths, Listener listener)
+			throws IOException {
+		int permits = threads * QUEUED_PER_THREAD;
+		Semaphore queued = new Semaphore(permits);
+		AtomicInteger decoded = new AtomicInteger();
+		AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new DaemonFactory());
+		try {
+			for (Path path : paths) {
+				queued.acquire();
+				if (error.get() != null) {
+					queued.release();
+					break;
+				}
+				pool.execute(() -> {
+					try {
+						decode(path, listener, decoded);
+					} catch (Throwable e) {
+						// the pool thread would just print it
+						error.compareAndSet(null, e);
+					} finally {
+						queued.release();
+					}
+				});
+			}
+			// every task returns its permit when done
+			queued.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("The batch is interrupted");
+		} finally {
+			pool.shutdownNow();
+		}
+		Throwable e = error.get();
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		} else if (e != null) {
+			// the checked exception thrown sneakily
+			throw new IllegalStateException(e);
+		}
+		return decoded.get();
+	}
+
+	private void decode(Path path, Listener listener, AtomicInteger decoded) {
+		Object value;
+		try {
+			ByteBuffer buf = BeeCoder.Utils.load(path, MAP_THRESHOLD);
+			value = decoder.decodeSingle(buf);
+			if (value == null) {
+				throw new BencodeException(Reason.STREAM_END,
+						BC_MSG_EXCEPTION_STREAM_END + "Object");
+			}
+		} catch (IOException e) {
+			listener.failed(path, e);
+			return;
+		}
+		decoded.incrementAndGet();
+		listener.decoded(path, value);
+	}
+
+	/**
+	 * Names the threads of the batch, they never keep the JVM alive.
+	 */
+	private static final class DaemonFactory implements ThreadFactory {
+
+		private static final AtomicInteger BATCHES = new AtomicInteger();
+
+		private final int batch = BATCHES.incrementAndGet();
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "beecoder-batch-" + batch + "-"
+					+ count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
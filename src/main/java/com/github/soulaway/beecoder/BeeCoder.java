@@ -6,9 +6,18 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 /**
@@ -25,19 +34,122 @@ public enum BeeCoder {
 
 	INSTANCE;
 
-	private static final char BC_PREFIX_INT = 'i';
-	private static final char BC_SUFIX_NEGATIVE = '-';
-	private static final char BC_POSTFIX_NONSTR = 'e';
-	private static final char BC_DELEMETER_STR = ':';
-	private static final char BC_PREFIX_ARR = 'l';
-	private static final char BC_PREFIX_DIC = 'd';
-	private static final String BC_MSG_EXCEPTION_WRONG_CHAR = " value contains unexpected character - ";
-	private static final String BC_MSG_EXCEPTION_STREAM_END = "unexpected end of stream while encoding ";
+	static final char BC_PREFIX_INT = 'i';
+	static final char BC_SUFIX_NEGATIVE = '-';
+	static final char BC_POSTFIX_NONSTR = 'e';
+	static final char BC_DELEMETER_STR = ':';
+	static final char BC_PREFIX_ARR = 'l';
+	static final char BC_PREFIX_DIC = 'd';
+	static final String BC_MSG_EXCEPTION_WRONG_CHAR = " value contains unexpected character - ";
+	static final String BC_MSG_EXCEPTION_STREAM_END = "unexpected end of stream while encoding ";
+	static final String BC_MSG_EXCEPTION_LIMIT = " exceeds the limit of ";
+	static final String BC_MSG_EXCEPTION_TRAILING = "unexpected data after the decoded value, bytes left ";
+	private static final int BC_READ_CHUNK = 8192;
+
+	private volatile BencodeDecoder decoder = new BencodeDecoder();
+	private volatile BencodeEncoder encoder = new BencodeEncoder();
+
+	/**
+	 * Sets the listener, that observes the decoding and the canonical
+	 * encoding of this instance, like {@link CodecStats} does.
+	 * 
+	 * @param listener
+	 *            - the listener or null to measure nothing
+	 */
+	public void setListener(CodecListener listener) {
+		decoder = new BencodeDecoder(BencodeLimits.DEFAULT, listener);
+		encoder = new BencodeEncoder(listener);
+	}
+
+	/**
+	 * Decodes the byte array, that contains the single Bencoded value.
+	 * 
+	 * @param data
+	 *            - the Bencoded bytes
+	 * @return - the decoded object or null when the array is empty
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public Object decode(byte[] data) throws IOException {
+		return decoder.decodeSingle(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Decodes the Bencoded value starting at the buffer position, and
+	 * advances the position right behind it, so the concatenated values are
+	 * decoded by the subsequent calls.
+	 * 
+	 * @param buf
+	 *            - the buffer where to read from
+	 * @return - the decoded object or null when there is nothing remaining
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public Object decode(ByteBuffer buf) throws IOException {
+		return decoder.decode(buf);
+	}
+
+	/**
+	 * Reads the stream to its end, and decodes the single Bencoded value it
+	 * contains. The stream isn't closed.
+	 * 
+	 * @param is
+	 *            - the stream where to read from
+	 * @return - the decoded object or null when the stream is empty
+	 * @throws IOException
+	 *             when the stream fails or data is malformed
+	 */
+	public Object decode(InputStream is) throws IOException {
+		return decoder.decodeSingle(Utils.readFully(is));
+	}
+
+	/**
+	 * Encodes the object to the canonical Bencode, with the dictionary keys
+	 * sorted, into the array of the exact size. The supported types are
+	 * those of {@link #encode(Object, OutputStream)}.
+	 * 
+	 * @param obj
+	 *            - the object to encode
+	 * @return - the encoded bytes
+	 * @throws IllegalArgumentException
+	 *             when the object isn't Bencodable
+	 */
+	public byte[] encode(Object obj) {
+		return encoder.encode(obj);
+	}
+
+	/**
+	 * Encodes the object to the stream, the dictionary keys are written in
+	 * the order they are given. The stream is flushed, but not closed.
+	 * Supported types are:
+	 * <ul>
+	 * <li>String (as UTF-8), ByteString and byte[] for strings</li>
+	 * <li>Integer, Long, Short, Byte and BigInteger for integers</li>
+	 * <li>List for lists, the List of Entries for dictionaries</li>
+	 * <li>Map with the String or ByteString keys for dictionaries</li>
+	 * </ul>
+	 * 
+	 * @param obj
+	 *            - the object to encode
+	 * @param os
+	 *            - the stream to write to
+	 * @throws IOException
+	 *             when the stream fails
+	 * @throws IllegalArgumentException
+	 *             when the object isn't Bencodable
+	 */
+	public void encode(Object obj, OutputStream os) throws IOException {
+		BencodeWriter w = new BencodeWriter(os);
+		Utils.encodeObject(obj, w);
+		w.flush();
+	}
 
 	/**
 	 * Provides the encoding of the Bencode compatible java objects, by reading
 	 * them from the ObjectInputStream and writing encoded to
-	 * ByteArrayOutputStream.
+	 * ByteArrayOutputStream. The Strings are written as ISO-8859-1, every char
+	 * as the byte, the way {@link #decodeStream(InputStream, ObjectOutputStream)}
+	 * produces them, so the binary strings survive the round trip.
 	 * 
 	 * @param ois
 	 *            - ObjectInputStream to read from
@@ -50,14 +162,15 @@ public enum BeeCoder {
 	 */
 	public void encodeStream(ObjectInputStream ois, OutputStream bos)
 			throws ClassNotFoundException, IOException {
+		BencodeWriter w = new BencodeWriter(bos);
 		Object obj;
 		try {
 			while ((obj = ois.readObject()) != null) {
-				Utils.encodeObject(obj, bos);
+				Utils.encodeObject(obj, w, true);
 			}
 		} catch (EOFException e) {
 			ois.close();
-			bos.flush();
+			w.flush();
 			bos.close();
 		}
 	}
@@ -75,313 +188,298 @@ public enum BeeCoder {
 	 */
 	public void decodeStream(InputStream bis, ObjectOutputStream oos)
 			throws IOException {
+		ByteBuffer buf;
+		try {
+			buf = Utils.readFully(bis);
+		} finally {
+			bis.close();
+		}
 		while (true) {
-			Object obj = Utils.decodeObject(bis);
+			Object obj = decoder.decode(buf);
 			if (obj == null) {
 				oos.close();
 				break;
 			} else {
-				oos.writeObject(obj);
+				oos.writeObject(Utils.toLegacy(obj));
 			}
 		}
 	}
 
+	/**
+	 * Decodes the Bencoded file, that contains the single value (like
+	 * .torrent or resume data), by memory mapping it. The decoded strings are
+	 * the views into the mapped region, so no file content is copied to the
+	 * heap. The mapping stays valid until the decoded values are collected.
+	 * 
+	 * @param path
+	 *            - the file to decode
+	 * @return - the decoded object or null when the file is empty
+	 * @throws IOException
+	 *             when the file can't be read or data is malformed
+	 */
+	public Object decodeFile(Path path) throws IOException {
+		return decoder.decodeSingle(Utils.map(path));
+	}
+
 	/**
 	 * @author Dmitry G. Soloviev
 	 *
 	 */
-	private static class Utils {
+	static class Utils {
 		
 		/*** encoding utils ***/
 
 		/**
-		 * Provides the recursive deserialization of the Bencode compatible
-		 * objects, writing it to byte output stream.
+		 * Provides the recursive encoding of the Bencode compatible objects,
+		 * writing them to the writer.
 		 * 
 		 * @param obj
 		 *            - object that needs to be encoded
-		 * @param bos
-		 *            - ByteArrayInputStream where to write to
+		 * @param w
+		 *            - the writer where to write to
+		 * @throws IOException
+		 *             when the underlying stream fails
 		 */
-		public static void encodeObject(Object obj, OutputStream bos) {
+		static void encodeObject(Object obj, BencodeWriter w)
+				throws IOException {
+			encodeObject(obj, w, false);
+		}
 
-			try {
-				if (obj instanceof String) {
-					String s = (String) obj;
-					bos.write(String.valueOf(s.length()).getBytes());
-					bos.write(BC_DELEMETER_STR);
-					bos.write(s.getBytes());
-				} else if (obj instanceof Integer) {
-					Integer i = (Integer) obj;
-					bos.write(BC_PREFIX_INT);
-					bos.write(i.toString().getBytes());
-					bos.write(BC_POSTFIX_NONSTR);
-				} else if (obj instanceof LinkedList) {
-					encodeCollection(obj, bos);
+		/**
+		 * Provides the recursive encoding of the Bencode compatible objects,
+		 * writing them to the writer.
+		 * 
+		 * @param obj
+		 *            - object that needs to be encoded
+		 * @param w
+		 *            - the writer where to write to
+		 * @param legacy
+		 *            - true to write the Strings as ISO-8859-1, every char as
+		 *            the byte, the way {@link #toLegacy(Object)} reads them,
+		 *            false to write them as UTF-8
+		 * @throws IOException
+		 *             when the underlying stream fails
+		 */
+		static void encodeObject(Object obj, BencodeWriter w, boolean legacy)
+				throws IOException {
+			if (obj instanceof ByteString) {
+				w.value((ByteString) obj);
+			} else if (obj instanceof String) {
+				if (legacy) {
+					w.value(((String) obj).getBytes(StandardCharsets.ISO_8859_1));
 				} else {
-					throw new IllegalArgumentException("The type of the encodable object isn't Bencodable: " + obj.toString());
+					w.value((String) obj);
+				}
+			} else if (obj instanceof Integer || obj instanceof Long
+					|| obj instanceof Short || obj instanceof Byte) {
+				w.value(((Number) obj).longValue());
+			} else if (obj instanceof BigInteger) {
+				w.value((BigInteger) obj);
+			} else if (obj instanceof byte[]) {
+				w.value((byte[]) obj);
+			} else if (obj instanceof List) {
+				encodeCollection((List<?>) obj, w, legacy);
+			} else if (obj instanceof Map) {
+				w.startDict();
+				for (Entry<?, ?> e : ((Map<?, ?>) obj).entrySet()) {
+					encodeDictEntry(e, w, legacy);
 				}
-			} catch (IOException e) {
-				e.printStackTrace();
+				w.end();
+			} else {
+				throw new IllegalArgumentException("The type of the encodable object isn't Bencodable: " + obj);
 			}
 		}
 
 		/**
-		 * Deserialize the Bencoded collection object content to bytes.
+		 * Encodes the list, or the dictionary when the list contains the
+		 * entries.
 		 * 
-		 * @param obj
+		 * @param list
 		 *            - List or Dictionary with Bencoded objects inside
-		 * @param bos
-		 *            - ByteArrayInputStream where to write to
+		 * @param w
+		 *            - the writer where to write to
+		 * @param legacy
+		 *            - true to write the Strings as ISO-8859-1
 		 * @throws IOException
-		 *             when data is malformed
+		 *             when the underlying stream fails
 		 */
-		public static void encodeCollection(Object obj, OutputStream bos)
-				throws IOException {
-			@SuppressWarnings("unchecked")
-			LinkedList<Object> list = (LinkedList<Object>) obj;
-			Object o = list.get(0);
-			if (o instanceof Entry) {
-				bos.write(BC_PREFIX_DIC);
-				@SuppressWarnings("unchecked")
-				LinkedList<Entry<Object, Object>> dict = (LinkedList<Entry<Object, Object>>) obj;
-				dict.stream().forEach(e -> encodeDictEntry(e, bos));
+		static void encodeCollection(List<?> list, BencodeWriter w,
+				boolean legacy) throws IOException {
+			if (!list.isEmpty() && list.get(0) instanceof Entry) {
+				w.startDict();
+				for (Object e : list) {
+					if (!(e instanceof Entry)) {
+						throw new IllegalArgumentException("Bencoded dictionary contains not an Entry " + e);
+					}
+					encodeDictEntry((Entry<?, ?>) e, w, legacy);
+				}
 			} else {
-				bos.write(BC_PREFIX_ARR);
-				list.stream().forEach(e -> encodeObject(e, bos));
+				w.startList();
+				for (Object o : list) {
+					encodeObject(o, w, legacy);
+				}
 			}
-			bos.write(BC_POSTFIX_NONSTR);
+			w.end();
 		}
 
 		/**
-		 * Deserialize the Bencoded dictionary entry to bytes.
+		 * Encodes the dictionary entry.
 		 * 
 		 * @param e
 		 *            - Bencoded dictionary entry
-		 * @param bos
-		 *            - ByteArrayInputStream where to write to
+		 * @param w
+		 *            - the writer where to write to
+		 * @param legacy
+		 *            - true to write the Strings as ISO-8859-1
+		 * @throws IOException
+		 *             when the underlying stream fails
 		 */
-		public static void encodeDictEntry(Entry<Object, Object> e,
-				OutputStream bos) {
-			if (e.getKey() instanceof String){
-				encodeObject(e.getKey(), bos);
-				encodeObject(e.getValue(), bos);
+		static void encodeDictEntry(Entry<?, ?> e, BencodeWriter w,
+				boolean legacy) throws IOException {
+			Object key = e.getKey();
+			if (key instanceof String) {
+				if (legacy) {
+					w.key(((String) key).getBytes(StandardCharsets.ISO_8859_1));
+				} else {
+					w.key((String) key);
+				}
+			} else if (key instanceof ByteString) {
+				w.key((ByteString) key);
 			} else {
-				throw new IllegalArgumentException("Bencoded dictionary key is not String type " + e.getKey());				
+				throw new IllegalArgumentException("Bencoded dictionary key is not String type " + key);
 			}
+			encodeObject(e.getValue(), w, legacy);
 		}
 
-		/*** decoding utils ***/
-
 		/**
-		 * Provides the recursive serialization of the Bencode compatible
-		 * objects from encoded byte stream.
+		 * Converts the decoded object to the plain java types, that the
+		 * serialized stream contains: the byte strings become the Strings,
+		 * with every byte taken as a char, the lists become the LinkedLists
+		 * and the dictionaries the LinkedLists of the entries.
 		 * 
-		 * @param bis
-		 *            - the ByteArrayInputStream where to read from
-		 * @return
-		 * @throws IOException
-		 *             when data is malformed
+		 * @param obj
+		 *            - the decoded object
+		 * @return - the object of the java types only
 		 */
-		public static Object decodeObject(InputStream bis) throws IOException {
-			char ch = (char) bis.read();
-			if (Character.isDigit(ch)) {
-				int length = decodeStringLength(ch, bis);
-				String s = decodeString(bis, length);
-				return s;
-			} else if (ch == BC_PREFIX_INT) {
-				Integer i = decodeInt(bis);
-				return i;
-			} else if (ch == BC_PREFIX_ARR) {
-				List<Object> array = decodeList(bis);
-				return array;
-			} else if (ch == BC_PREFIX_DIC) {
-				List<Entry<String, Object>> dict = decodeDict(bis);
-				return dict;
-			} else if ((byte) ch == -1) {
-				// successful stream end
-				bis.close();
-				return null;
-			} else {
-				throw new IOException("Object" + BC_MSG_EXCEPTION_WRONG_CHAR
-						+ ch + " Bytes left " + bis.available());
+		static Object toLegacy(Object obj) {
+			if (obj instanceof ByteString) {
+				return ((ByteString) obj).toString(StandardCharsets.ISO_8859_1);
+			} else if (obj instanceof List) {
+				List<?> list = (List<?>) obj;
+				LinkedList<Object> legacy = new LinkedList<Object>();
+				for (Object o : list) {
+					if (o instanceof Entry) {
+						Entry<?, ?> e = (Entry<?, ?>) o;
+						legacy.add(new AbstractMap.SimpleEntry<Object, Object>(
+								toLegacy(e.getKey()), toLegacy(e.getValue())));
+					} else {
+						legacy.add(toLegacy(o));
+					}
+				}
+				return legacy;
+			} else if (obj instanceof Map) {
+				LinkedList<Object> legacy = new LinkedList<Object>();
+				for (Entry<?, ?> e : ((Map<?, ?>) obj).entrySet()) {
+					legacy.add(new AbstractMap.SimpleEntry<Object, Object>(
+							toLegacy(e.getKey()), toLegacy(e.getValue())));
+				}
+				return legacy;
 			}
+			return obj;
 		}
 
+		/*** buffer utils ***/
+
 		/**
-		 * Serialize the Bencode compatible String object from encoded byte
-		 * stream. It is supposed that the the String length is already decoded,
-		 * and transferred as 'startedFrom' parameter.
+		 * Maps the whole file read only, the channel is closed right away.
 		 * 
-		 * @param length
-		 *            - the first digit of the String length
-		 * @param bis
-		 *            - the ByteArrayInputStream where to read from
-		 * @return
+		 * @param path
+		 *            - the file to map
+		 * @return - the mapped buffer
 		 * @throws IOException
-		 *             when data is malformed
+		 *             when the file can't be read or is over 2GB
 		 */
-		private static String decodeString(InputStream bis, int length)
-				throws IOException {
-			char[] value = new char[length];
-			int b;
-			for (int i = 0; i < length; i++) {
-				b = bis.read();
-				if (b == -1) {
-					throw new IOException(BC_MSG_EXCEPTION_STREAM_END
-							+ "String");
-				} else {
-					value[i] = (char) b;
-				}
-			}
-			String s = new String(value);
-			return s;
+		static ByteBuffer map(Path path) throws IOException {
+			return load(path, 0);
 		}
 
 		/**
-		 * Returns the length of Bencode compatible String object from encoded
-		 * byte stream. It is supposed that the the first digit of the String
-		 * length is already read and transferred as 'startedFrom' parameter
+		 * Reads the smaller file to the heap, maps the larger one read only,
+		 * the channel is closed right away.
 		 * 
-		 * @param startedFrom
-		 *            - the first digit of the String length
-		 * @param bis
-		 *            - the ByteArrayInputStream where to read from
-		 * @return
+		 * @param path
+		 *            - the file to load
+		 * @param mapThreshold
+		 *            - the files of this many bytes and more are mapped
+		 * @return - the buffer of the whole file
 		 * @throws IOException
-		 *             when data is malformed
+		 *             when the file can't be read or is over 2GB
 		 */
-		private static int decodeStringLength(char startedFrom, InputStream bis)
-				throws IOException {
-			int i = Character.getNumericValue(startedFrom);
-			char ch;
-			while (true) {
-				ch = (char) bis.read();
-				if (ch == BC_DELEMETER_STR) {
-					break;
-				} else if ((byte) ch == -1) {
-					throw new IOException(BC_MSG_EXCEPTION_STREAM_END
-							+ "String length");
-				} else if (!Character.isDigit(ch)) {
-					throw new IOException("String"
-							+ BC_MSG_EXCEPTION_WRONG_CHAR + ch + " Bytes left "
-							+ bis.available());
-				} else {
-					i = i * 10 + Character.getNumericValue(ch);
+		static ByteBuffer load(Path path, int mapThreshold) throws IOException {
+			try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+				long size = ch.size();
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException("File is too large to be decoded "
+							+ path + " " + size + " bytes");
+				}
+				if (size >= mapThreshold) {
+					return ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				}
+				ByteBuffer buf = ByteBuffer.allocate((int) size);
+				while (buf.hasRemaining() && ch.read(buf) >= 0) {
 				}
+				limit(buf, buf.position());
+				position(buf, 0);
+				return buf;
 			}
-			return i;
 		}
 
 		/**
-		 * Serialize the Bencode compatible Integer object from encoded byte
-		 * stream It is supposed that the int indicator symbol 'i' is already
-		 * read
+		 * Moves the buffer position, the cast keeps the byte code compatible
+		 * with the Java 8 runtime.
 		 * 
-		 * @param bis
-		 *            - the ByteArrayInputStream where to read from
-		 * @return - the Integer java Object
-		 * @throws IOException
-		 *             when data is malformed
+		 * @param buf
+		 *            - the buffer to move
+		 * @param position
+		 *            - the new position
 		 */
-		private static Integer decodeInt(InputStream bis) throws IOException {
-			int neg = 1;
-			int i = 0;
-			char ch;
-			while (true) {
-				ch = (char) bis.read();
-				if (Character.isDigit(ch)) {
-					i = i * 10 + Character.getNumericValue(ch);
-				} else if (ch == BC_SUFIX_NEGATIVE && i == 0) {
-					neg = neg * -1;
-				} else if (ch == BC_POSTFIX_NONSTR) {
-					break;
-				} else if ((byte) ch == -1) {
-					throw new IOException(BC_MSG_EXCEPTION_STREAM_END
-							+ "Integer");
-				} else {
-					throw new IOException("Integer"
-							+ BC_MSG_EXCEPTION_WRONG_CHAR + ch + " Bytes left "
-							+ bis.available());
-				}
-			}
-			return new Integer(i * neg);
+		static void position(Buffer buf, int position) {
+			buf.position(position);
 		}
 
 		/**
-		 * Serialize the Bencode compatible List object from encoded byte
-		 * stream. It is supposed that the list indicator symbol 'l' is already
-		 * read
+		 * Limits the buffer, the cast keeps the byte code compatible with the
+		 * Java 8 runtime.
 		 * 
-		 * @param bis
-		 *            - the ByteArrayInputStream where to read from
-		 * @return - the LinkedList as a list of BCodeble objects
-		 * @throws IOException
-		 *             when data is malformed
+		 * @param buf
+		 *            - the buffer to limit
+		 * @param limit
+		 *            - the new limit
 		 */
-		private static List<Object> decodeList(InputStream bis)
-				throws IOException {
-			List<Object> list = new LinkedList<Object>();
-			char ch;
-			while (true) {
-				ch = (char) bis.read();
-				if (Character.isDigit(ch)) {
-					int length = decodeStringLength(ch, bis);
-					String s = decodeString(bis, length);
-					list.add(s);
-				} else if (ch == BC_PREFIX_INT) {
-					Integer i = decodeInt(bis);
-					list.add(i);
-				} else if (ch == BC_PREFIX_ARR) {
-					list.add(decodeList(bis));
-				} else if (ch == BC_PREFIX_DIC) {
-					list.add(decodeDict(bis));
-				} else if (ch == BC_POSTFIX_NONSTR) {
-					break;
-				} else if ((byte) ch == -1) {
-					throw new IOException(BC_MSG_EXCEPTION_STREAM_END + "List");
-				} else {
-					throw new IOException("List" + BC_MSG_EXCEPTION_WRONG_CHAR
-							+ ch + " Bytes left " + bis.available());
-				}
-			}
-			return list;
+		static void limit(Buffer buf, int limit) {
+			buf.limit(limit);
 		}
 
 		/**
-		 * Serialize the Bencode compatible Dictionary object from encoded byte
-		 * stream. It is supposed that the dictionary indicator symbol 'd' is
-		 * already read
+		 * Reads the stream to its end with the bulk reads.
 		 * 
-		 * @param bis
-		 *            - the ByteArrayInputStream where to read from
-		 * @return - the LinkedList as a dictionary of BCodeble Entries
+		 * @param is
+		 *            - the InputStream where to read from
+		 * @return - the buffer over the read bytes
 		 * @throws IOException
-		 *             when data is malformed
+		 *             when the stream can't be read
 		 */
-		private static List<Entry<String, Object>> decodeDict(InputStream bis)
-				throws IOException {
-			List<Entry<String, Object>> list = new LinkedList<Entry<String, Object>>();
-			char ch;
-			while (true) {
-				ch = (char) bis.read();
-				if (Character.isDigit(ch)) {
-					int length = decodeStringLength(ch, bis);
-					String s = decodeString(bis, length);
-					Object o = decodeObject(bis);
-					Entry<String, Object> e = new AbstractMap.SimpleEntry<String, Object>(
-							s, o);
-					list.add(e);
-				} else if (ch == BC_POSTFIX_NONSTR) {
-					break;
-				} else if ((byte) ch == -1) {
-					throw new IOException(BC_MSG_EXCEPTION_STREAM_END + "Dict");
-				} else {
-					throw new IOException("Dict" + BC_MSG_EXCEPTION_WRONG_CHAR
-							+ ch + " Bytes left " + bis.available());
+		static ByteBuffer readFully(InputStream is) throws IOException {
+			byte[] buf = new byte[Math.max(is.available(), BC_READ_CHUNK)];
+			int length = 0;
+			int n;
+			while ((n = is.read(buf, length, buf.length - length)) != -1) {
+				length += n;
+				if (length == buf.length) {
+					buf = Arrays.copyOf(buf, buf.length << 1);
 				}
 			}
-			return list;
+			return ByteBuffer.wrap(buf, 0, length);
 		}
 	}
 }
@@ -0,0 +1,735 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+import com.github.soulaway.beecoder.BencodeReader.Token;
+
+/**
+ * Binds the Bencoded dictionaries to the fields of the class, like the
+ * torrent info, the announce response or the KRPC query. The codec is built
+ * once per class: the fields are found by the reflection, but they are then
+ * accessed through the method handles, and the keys are encoded to the
+ * sorted bytes. The decoding fills the fields right from the tokens of the
+ * {@link BencodeReader}, no tree of the values is built, the keys the class
+ * has no fields for are skipped without decoding them.
+ *
+ * <pre>
+ * public class Info {
+ * 	String name;
+ * 	&#64;BencodeKey("piece length")
+ * 	long pieceLength;
+ * 	byte[] pieces;
+ * 	List&lt;FileEntry&gt; files;
+ * }
+ * Info info = BencodeCodec.of(Info.class).decode(buf);
+ * byte[] encoded = BencodeCodec.of(Info.class).encode(info);
+ * </pre>
+ *
+ * The class needs the constructor without arguments, its non static, non
+ * transient fields are bound: int, long, boolean (as 0 or 1), Integer, Long,
+ * BigInteger, String (as UTF-8), byte[], ByteString (the view over the
+ * source buffer), the classes bound the same way, the Lists and the Maps
+ * with the String keys of those, and Object for the decoded value as it is.
+ * The null fields aren't encoded, the null elements of the Lists and the
+ * null values of the Maps are rejected, Bencode has no null to write them
+ * as. The keys are encoded sorted. The codec is immutable and can be shared
+ * between threads.
+ *
+ * @param <T>
+ *            - the bound class
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeCodec<T> {
+
+	private static final ClassValue<BencodeCodec<?>> CODECS = new ClassValue<BencodeCodec<?>>() {
+
+		@Override
+		protected BencodeCodec<?> computeValue(Class<?> type) {
+			return new BencodeCodec<Object>(type);
+		}
+	};
+
+	private static final BencodeDecoder TREE = new BencodeDecoder();
+
+	private static final Comparator<Property> KEY_ORDER = new Comparator<Property>() {
+
+		@Override
+		public int compare(Property a, Property b) {
+			return compareKeys(a.key, b.key);
+		}
+	};
+
+	private final Class<?> type;
+	private final MethodHandle constructor;
+	// sorted by the key bytes
+	private final Property[] properties;
+
+	/**
+	 * Returns the codec of the class, building it on the first call.
+	 *
+	 * @param type
+	 *            - the bound class
+	 * @return - the codec
+	 * @throws IllegalArgumentException
+	 *             when the class can't be bound
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> BencodeCodec<T> of(Class<T> type) {
+		return (BencodeCodec<T>) CODECS.get(type);
+	}
+
+	private BencodeCodec(Class<?> type) {
+		this.type = type;
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			Constructor<?> c = type.getDeclaredConstructor();
+			c.setAccessible(true);
+			constructor = lookup.unreflectConstructor(c).asType(
+					MethodType.methodType(Object.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalArgumentException("The class can't be bound "
+					+ type.getName() + ", no constructor without arguments", e);
+		}
+		List<Property> list = new ArrayList<Property>();
+		for (Class<?> c = type; c != Object.class && c != null; c = c
+				.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				int mod = f.getModifiers();
+				if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod)
+						&& !f.isSynthetic()) {
+					list.add(property(lookup, f));
+				}
+			}
+		}
+		properties = list.toArray(new Property[list.size()]);
+		Arrays.sort(properties, KEY_ORDER);
+		for (int i = 1; i < properties.length; i++) {
+			if (compareKeys(properties[i - 1].key, properties[i].key) == 0) {
+				throw new IllegalArgumentException("The class "
+						+ type.getName() + " has the duplicated key "
+						+ new String(properties[i].key, StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	/**
+	 * Decodes the dictionary starting at the buffer position, and advances
+	 * the position right behind it.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from
+	 * @return - the bound object
+	 * @throws IOException
+	 *             when data is malformed or doesn't match the fields
+	 */
+	public T decode(ByteBuffer buf) throws IOException {
+		return decode(buf, BencodeLimits.DEFAULT);
+	}
+
+	/**
+	 * Decodes the dictionary starting at the buffer position, and advances
+	 * the position right behind it.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from
+	 * @param limits
+	 *            - the limits the dictionary is checked against
+	 * @return - the bound object
+	 * @throws IOException
+	 *             when data is malformed or doesn't match the fields
+	 */
+	public T decode(ByteBuffer buf, BencodeLimits limits) throws IOException {
+		BencodeReader r = new BencodeReader(buf, limits);
+		T obj = read(r);
+		BeeCoder.Utils.position(buf, r.position());
+		return obj;
+	}
+
+	/**
+	 * Decodes the dictionary the array starts with.
+	 *
+	 * @param data
+	 *            - the Bencoded bytes
+	 * @return - the bound object
+	 * @throws IOException
+	 *             when data is malformed or doesn't match the fields
+	 */
+	public T decode(byte[] data) throws IOException {
+		return decode(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Reads the dictionary the next token of the reader begins.
+	 *
+	 * @param r
+	 *            - the reader positioned before the dictionary
+	 * @return - the bound object
+	 * @throws IOException
+	 *             when data is malformed or doesn't match the fields
+	 */
+	@SuppressWarnings("unchecked")
+	public T read(BencodeReader r) throws IOException {
+		expect(r, Token.START_DICT, "Dict");
+		try {
+			Object obj = (Object) constructor.invokeExact();
+			while (r.next() == Token.KEY) {
+				Property p = find(r.buffer(), r.valueOffset(), r.valueLength());
+				if (p == null) {
+					r.skipValue();
+				} else {
+					p.read(r, obj);
+				}
+			}
+			return (T) obj;
+		} catch (IOException | RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Encodes the object to the canonical Bencode.
+	 *
+	 * @param obj
+	 *            - the bound object
+	 * @return - the encoded bytes
+	 * @throws IllegalArgumentException
+	 *             when the List field has the null element, or the Map field
+	 *             the null value
+	 */
+	public byte[] encode(T obj) {
+		BencodeWriter w = new BencodeWriter();
+		try {
+			write(obj, w);
+		} catch (IOException e) {
+			// the writer to the internal buffer never fails
+			throw new IllegalStateException(e);
+		}
+		return w.toByteArray();
+	}
+
+	/**
+	 * Writes the object as the dictionary of its non null fields.
+	 *
+	 * @param obj
+	 *            - the bound object
+	 * @param w
+	 *            - the writer to write to
+	 * @throws IOException
+	 *             when the stream of the writer fails
+	 */
+	public void write(T obj, BencodeWriter w) throws IOException {
+		if (!type.isInstance(obj)) {
+			throw new IllegalArgumentException("The object isn't "
+					+ type.getName() + ": " + obj);
+		}
+		w.startDict();
+		try {
+			for (Property p : properties) {
+				p.write(obj, w);
+			}
+		} catch (IOException | RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+		w.end();
+	}
+
+	private Property find(ByteBuffer buf, int offset, int length) {
+		int lo = 0;
+		int hi = properties.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			byte[] key = properties[mid].key;
+			int n = Math.min(length, key.length);
+			int c = 0;
+			for (int i = 0; i < n && c == 0; i++) {
+				c = (key[i] & 0xff) - (buf.get(offset + i) & 0xff);
+			}
+			if (c == 0) {
+				c = key.length - length;
+			}
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return properties[mid];
+			}
+		}
+		return null;
+	}
+
+	private static int compareKeys(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	private static void expect(BencodeReader r, Token token, String type)
+			throws IOException {
+		Token t = r.next();
+		if (t != token) {
+			throw new BencodeException(Reason.UNEXPECTED, type
+					+ " expected, but " + t);
+		}
+	}
+
+	private static long readLong(BencodeReader r) throws IOException {
+		expect(r, Token.INT, "Integer");
+		if (!r.isLongValue()) {
+			throw new BencodeException(Reason.UNEXPECTED,
+					"Integer exceeds the long " + r.bigIntegerValue());
+		}
+		return r.longValue();
+	}
+
+	private static int readInt(BencodeReader r) throws IOException {
+		long l = readLong(r);
+		if ((int) l != l) {
+			throw new BencodeException(Reason.UNEXPECTED,
+					"Integer exceeds the int " + l);
+		}
+		return (int) l;
+	}
+
+	/*** building ***/
+
+	private static Property property(MethodHandles.Lookup lookup, Field f) {
+		BencodeKey name = f.getAnnotation(BencodeKey.class);
+		byte[] key = (name != null ? name.value() : f.getName())
+				.getBytes(StandardCharsets.UTF_8);
+		MethodHandle setter;
+		MethodHandle getter;
+		try {
+			f.setAccessible(true);
+			setter = lookup.unreflectSetter(f);
+			getter = lookup.unreflectGetter(f);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("The field can't be bound " + f,
+					e);
+		}
+		Class<?> t = f.getType();
+		if (t == long.class) {
+			return new LongProperty(key, setter, getter);
+		} else if (t == int.class) {
+			return new IntProperty(key, setter, getter);
+		} else if (t == boolean.class) {
+			return new BooleanProperty(key, setter, getter);
+		}
+		return new ObjectProperty(key, setter, getter, valueType(
+				f.getGenericType(), f));
+	}
+
+	private static ValueType valueType(Type type, Field f) {
+		if (type instanceof ParameterizedType) {
+			ParameterizedType p = (ParameterizedType) type;
+			Type raw = p.getRawType();
+			Type[] args = p.getActualTypeArguments();
+			if (raw == List.class) {
+				return new ListType(valueType(args[0], f));
+			} else if (raw == Map.class && args[0] == String.class) {
+				return new MapType(valueType(args[1], f));
+			}
+		} else if (type == String.class) {
+			return ValueType.STRING;
+		} else if (type == byte[].class) {
+			return ValueType.BYTES;
+		} else if (type == ByteString.class) {
+			return ValueType.BYTE_STRING;
+		} else if (type == Long.class) {
+			return ValueType.LONG;
+		} else if (type == Integer.class) {
+			return ValueType.INTEGER;
+		} else if (type == BigInteger.class) {
+			return ValueType.BIG_INTEGER;
+		} else if (type == Object.class) {
+			return ValueType.OBJECT;
+		} else if (type == List.class) {
+			return new ListType(ValueType.OBJECT);
+		} else if (type instanceof Class && !((Class<?>) type).isPrimitive()
+				&& !((Class<?>) type).isArray()
+				&& !((Class<?>) type).isInterface()
+				&& !Number.class.isAssignableFrom((Class<?>) type)) {
+			return new BoundType((Class<?>) type);
+		}
+		throw new IllegalArgumentException("The field type isn't Bencodable: "
+				+ f);
+	}
+
+	/*** properties ***/
+
+	/**
+	 * Reads and writes the field bound to the key.
+	 */
+	private abstract static class Property {
+
+		final byte[] key;
+
+		Property(byte[] key) {
+			this.key = key;
+		}
+
+		abstract void read(BencodeReader r, Object target) throws Throwable;
+
+		abstract void write(Object source, BencodeWriter w) throws Throwable;
+	}
+
+	/**
+	 * The long field, that is never boxed.
+	 */
+	private static final class LongProperty extends Property {
+
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+
+		LongProperty(byte[] key, MethodHandle setter, MethodHandle getter) {
+			super(key);
+			this.setter = setter.asType(MethodType.methodType(void.class,
+					Object.class, long.class));
+			this.getter = getter.asType(MethodType.methodType(long.class,
+					Object.class));
+		}
+
+		@Override
+		void read(BencodeReader r, Object target) throws Throwable {
+			setter.invokeExact(target, readLong(r));
+		}
+
+		@Override
+		void write(Object source, BencodeWriter w) throws Throwable {
+			long value = (long) getter.invokeExact(source);
+			w.key(key).value(value);
+		}
+	}
+
+	/**
+	 * The int field, that is never boxed.
+	 */
+	private static final class IntProperty extends Property {
+
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+
+		IntProperty(byte[] key, MethodHandle setter, MethodHandle getter) {
+			super(key);
+			this.setter = setter.asType(MethodType.methodType(void.class,
+					Object.class, int.class));
+			this.getter = getter.asType(MethodType.methodType(int.class,
+					Object.class));
+		}
+
+		@Override
+		void read(BencodeReader r, Object target) throws Throwable {
+			setter.invokeExact(target, readInt(r));
+		}
+
+		@Override
+		void write(Object source, BencodeWriter w) throws Throwable {
+			int value = (int) getter.invokeExact(source);
+			w.key(key).value(value);
+		}
+	}
+
+	/**
+	 * The boolean field, encoded as the integer 0 or 1.
+	 */
+	private static final class BooleanProperty extends Property {
+
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+
+		BooleanProperty(byte[] key, MethodHandle setter, MethodHandle getter) {
+			super(key);
+			this.setter = setter.asType(MethodType.methodType(void.class,
+					Object.class, boolean.class));
+			this.getter = getter.asType(MethodType.methodType(boolean.class,
+					Object.class));
+		}
+
+		@Override
+		void read(BencodeReader r, Object target) throws Throwable {
+			setter.invokeExact(target, readLong(r) != 0);
+		}
+
+		@Override
+		void write(Object source, BencodeWriter w) throws Throwable {
+			boolean value = (boolean) getter.invokeExact(source);
+			w.key(key).value(value ? 1 : 0);
+		}
+	}
+
+	/**
+	 * The field of the reference type, that isn't encoded when it's null.
+	 */
+	private static final class ObjectProperty extends Property {
+
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+		private final ValueType valueType;
+
+		ObjectProperty(byte[] key, MethodHandle setter, MethodHandle getter,
+				ValueType valueType) {
+			super(key);
+			this.setter = setter.asType(MethodType.methodType(void.class,
+					Object.class, Object.class));
+			this.getter = getter.asType(MethodType.methodType(Object.class,
+					Object.class));
+			this.valueType = valueType;
+		}
+
+		@Override
+		void read(BencodeReader r, Object target) throws Throwable {
+			setter.invokeExact(target, valueType.read(r));
+		}
+
+		@Override
+		void write(Object source, BencodeWriter w) throws Throwable {
+			Object value = (Object) getter.invokeExact(source);
+			if (value != null) {
+				w.key(key);
+				valueType.write(value, w);
+			}
+		}
+	}
+
+	/*** value types ***/
+
+	/**
+	 * Reads and writes the values of the type.
+	 */
+	private abstract static class ValueType {
+
+		static final ValueType STRING = new ValueType() {
+
+			@Override
+			Object read(BencodeReader r) throws IOException {
+				expect(r, Token.BYTES, "String");
+				return r.stringValue();
+			}
+
+			@Override
+			void write(Object value, BencodeWriter w) throws IOException {
+				w.value((String) value);
+			}
+		};
+
+		static final ValueType BYTES = new ValueType() {
+
+			@Override
+			Object read(BencodeReader r) throws IOException {
+				expect(r, Token.BYTES, "String");
+				return r.bytesValue().toByteArray();
+			}
+
+			@Override
+			void write(Object value, BencodeWriter w) throws IOException {
+				w.value((byte[]) value);
+			}
+		};
+
+		static final ValueType BYTE_STRING = new ValueType() {
+
+			@Override
+			Object read(BencodeReader r) throws IOException {
+				expect(r, Token.BYTES, "String");
+				return r.bytesValue();
+			}
+
+			@Override
+			void write(Object value, BencodeWriter w) throws IOException {
+				w.value((ByteString) value);
+			}
+		};
+
+		static final ValueType LONG = new ValueType() {
+
+			@Override
+			Object read(BencodeReader r) throws IOException {
+				return readLong(r);
+			}
+
+			@Override
+			void write(Object value, BencodeWriter w) throws IOException {
+				w.value((Long) value);
+			}
+		};
+
+		static final ValueType INTEGER = new ValueType() {
+
+			@Override
+			Object read(BencodeReader r) throws IOException {
+				return readInt(r);
+			}
+
+			@Override
+			void write(Object value, BencodeWriter w) throws IOException {
+				w.value((Integer) value);
+			}
+		};
+
+		static final ValueType BIG_INTEGER = new ValueType() {
+
+			@Override
+			Object read(BencodeReader r) throws IOException {
+				expect(r, Token.INT, "Integer");
+				return r.bigIntegerValue();
+			}
+
+			@Override
+			void write(Object value, BencodeWriter w) throws IOException {
+				w.value((BigInteger) value);
+			}
+		};
+
+		static final ValueType OBJECT = new ValueType() {
+
+			@Override
+			Object read(BencodeReader r) throws IOException {
+				return TREE.decode(r, null);
+			}
+
+			@Override
+			void write(Object value, BencodeWriter w) throws IOException {
+				BeeCoder.Utils.encodeObject(value, w);
+			}
+		};
+
+		abstract Object read(BencodeReader r) throws IOException;
+
+		abstract void write(Object value, BencodeWriter w) throws IOException;
+	}
+
+	/**
+	 * The List of the values of the element type.
+	 */
+	private static final class ListType extends ValueType {
+
+		private final ValueType element;
+
+		ListType(ValueType element) {
+			this.element = element;
+		}
+
+		@Override
+		Object read(BencodeReader r) throws IOException {
+			expect(r, Token.START_LIST, "List");
+			List<Object> list = new ArrayList<Object>();
+			while (!r.isEndNext()) {
+				list.add(element.read(r));
+			}
+			r.next();
+			return list;
+		}
+
+		@Override
+		void write(Object value, BencodeWriter w) throws IOException {
+			w.startList();
+			for (Object o : (List<?>) value) {
+				if (o == null) {
+					throw new IllegalArgumentException("The List has the null element: " + value);
+				}
+				element.write(o, w);
+			}
+			w.end();
+		}
+	}
+
+	/**
+	 * The Map of the String keys to the values of the value type.
+	 */
+	private static final class MapType extends ValueType {
+
+		private final ValueType value;
+
+		MapType(ValueType value) {
+			this.value = value;
+		}
+
+		@Override
+		Object read(BencodeReader r) throws IOException {
+			expect(r, Token.START_DICT, "Dict");
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			while (r.next() == Token.KEY) {
+				String key = r.stringValue();
+				map.put(key, value.read(r));
+			}
+			return map;
+		}
+
+		@Override
+		void write(Object obj, BencodeWriter w) throws IOException {
+			Map<?, ?> map = (Map<?, ?>) obj;
+			byte[][] keys = new byte[map.size()][];
+			Object[] values = new Object[map.size()];
+			int n = 0;
+			for (Map.Entry<?, ?> e : map.entrySet()) {
+				if (e.getValue() == null) {
+					throw new IllegalArgumentException("The Map has the null value of the key " + e.getKey());
+				}
+				keys[n] = ((String) e.getKey()).getBytes(StandardCharsets.UTF_8);
+				values[n++] = e.getValue();
+			}
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> compareKeys(keys[a], keys[b]));
+			w.startDict();
+			for (int i : order) {
+				w.key(keys[i]);
+				value.write(values[i], w);
+			}
+			w.end();
+		}
+	}
+
+	/**
+	 * The class bound by its own codec, that is found when it's used, so the
+	 * classes may refer to each other.
+	 */
+	private static final class BoundType extends ValueType {
+
+		private final Class<?> type;
+
+		BoundType(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		Object read(BencodeReader r) throws IOException {
+			return of(type).read(r);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		void write(Object value, BencodeWriter w) throws IOException {
+			((BencodeCodec<Object>) of(type)).write(value, w);
+		}
+	}
+}
@@ -0,0 +1,298 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_TRAILING;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+import com.github.soulaway.beecoder.BencodeReader.Token;
+
+/**
+ * Decodes the Bencoded data directly from the ByteBuffer (heap, direct or
+ * mapped) or the byte array, using the index cursor instead of reading the
+ * stream byte by byte. Digits are parsed with the plain ASCII arithmetic.
+ * The integers are decoded to the narrowest of Integer, Long and BigInteger
+ * they fit into.
+ *
+ * The strings (dictionary keys as well) are decoded to the {@link ByteString}
+ * views over the source buffer, nothing is copied, so the buffer content must
+ * stay unchanged while the decoded values are in use. The dictionaries are
+ * decoded to the {@link BencodeDict} and the lists to the {@link BencodeList},
+ * both backed by the arrays of the exact size.
+ *
+ * The decoding isn't recursive: the tokens of the {@link BencodeReader} are
+ * assembled on the explicit stack, so the hostile nesting can't overflow the
+ * thread stack, and the {@link BencodeLimits} are checked before the memory
+ * is spent.
+ *
+ * The decoder given the {@link KeyInterner} shares the dictionary keys
+ * between the documents instead of making the views. The decoder given the
+ * {@link CodecListener} reports every value it decodes
+ * and every rejection, the decoder without it measures nothing.
+ *
+ * The decoder has no state of its own and can be shared between threads.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeDecoder {
+
+	private static final int INITIAL_DEPTH = 16;
+	private static final int INITIAL_SIZE = 16;
+
+	// the counters of the decoded values reported to the listener
+	private static final int C_DICTS = 0;
+	private static final int C_LISTS = 1;
+	private static final int C_INTEGERS = 2;
+	private static final int C_STRINGS = 3;
+	private static final int C_DEPTH = 4;
+
+	private final BencodeLimits limits;
+	private final CodecListener listener;
+	private final KeyInterner keys;
+
+	/**
+	 * Creates the decoder with the {@link BencodeLimits#DEFAULT} limits.
+	 */
+	public BencodeDecoder() {
+		this(BencodeLimits.DEFAULT);
+	}
+
+	/**
+	 * Creates the decoder with the limits.
+	 *
+	 * @param limits
+	 *            - the limits every decoded value is checked against
+	 */
+	public BencodeDecoder(BencodeLimits limits) {
+		this(limits, null);
+	}
+
+	/**
+	 * Creates the decoder with the limits, that reports to the listener.
+	 *
+	 * @param limits
+	 *            - the limits every decoded value is checked against
+	 * @param listener
+	 *            - observes the decoding, null for none
+	 */
+	public BencodeDecoder(BencodeLimits limits, CodecListener listener) {
+		this(limits, listener, null);
+	}
+
+	/**
+	 * Creates the decoder with the limits, that reports to the listener and
+	 * interns the keys.
+	 *
+	 * @param limits
+	 *            - the limits every decoded value is checked against
+	 * @param listener
+	 *            - observes the decoding, null for none
+	 * @param keys
+	 *            - shares the dictionary keys, null to make the views
+	 */
+	public BencodeDecoder(BencodeLimits limits, CodecListener listener,
+			KeyInterner keys) {
+		this.limits = limits;
+		this.listener = listener;
+		this.keys = keys;
+	}
+
+	/**
+	 * @return - the limits every decoded value is checked against
+	 */
+	public BencodeLimits limits() {
+		return limits;
+	}
+
+	/**
+	 * Decodes the first Bencoded value of the byte array.
+	 *
+	 * @param data
+	 *            - the Bencoded bytes
+	 * @return - the decoded object or null when the array is empty
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public Object decode(byte[] data) throws IOException {
+		return decode(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * Decodes the Bencoded value starting at the buffer position, and
+	 * advances the position right behind it, so the concatenated values can
+	 * be decoded by the subsequent calls. The buffer content is never
+	 * modified.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from
+	 * @return - the decoded object or null when there is nothing remaining
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public Object decode(ByteBuffer buf) throws IOException {
+		if (!buf.hasRemaining()) {
+			return null;
+		}
+		if (listener != null) {
+			return decodeObserved(buf);
+		}
+		BencodeReader r = new BencodeReader(buf, limits);
+		Object obj = decode(r, null);
+		BeeCoder.Utils.position(buf, r.position());
+		return obj;
+	}
+
+	/**
+	 * Decodes the single Bencoded value, that takes the buffer remaining.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from, the position is moved to
+	 *            the limit
+	 * @return - the decoded object or null when there is nothing remaining
+	 * @throws IOException
+	 *             when data is malformed or anything follows the value
+	 */
+	Object decodeSingle(ByteBuffer buf) throws IOException {
+		Object obj = decode(buf);
+		if (buf.hasRemaining()) {
+			BencodeException e = new BencodeException(Reason.TRAILING,
+					BC_MSG_EXCEPTION_TRAILING + buf.remaining());
+			if (listener != null) {
+				listener.rejected(e.reason());
+			}
+			throw e;
+		}
+		return obj;
+	}
+
+	private Object decodeObserved(ByteBuffer buf) throws IOException {
+		long start = System.nanoTime();
+		int[] counts = new int[C_DEPTH + 1];
+		BencodeReader r = new BencodeReader(buf, limits);
+		Object obj;
+		try {
+			obj = decode(r, counts);
+		} catch (BencodeException e) {
+			listener.rejected(e.reason());
+			throw e;
+		}
+		int bytes = r.position() - buf.position();
+		BeeCoder.Utils.position(buf, r.position());
+		listener.decoded(bytes, System.nanoTime() - start, counts[C_DICTS],
+				counts[C_LISTS], counts[C_INTEGERS], counts[C_STRINGS],
+				counts[C_DEPTH]);
+		return obj;
+	}
+
+	/**
+	 * Indexes the Bencoded value starting at the buffer position, without
+	 * decoding it, and advances the position right behind it. The values of
+	 * the {@link IndexedDocument} are decoded when they are accessed.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from
+	 * @return - the indexed document or null when there is nothing remaining
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public IndexedDocument index(ByteBuffer buf) throws IOException {
+		if (!buf.hasRemaining()) {
+			return null;
+		}
+		BencodeReader r = new BencodeReader(buf, limits);
+		IndexedDocument doc = IndexedDocument.index(r, limits);
+		BeeCoder.Utils.position(buf, r.position());
+		return doc;
+	}
+
+	/**
+	 * Decodes the value the next token of the reader begins.
+	 *
+	 * @param r
+	 *            - the reader positioned before the value
+	 * @param counts
+	 *            - the counters of the decoded values, null when nothing is
+	 *            counted
+	 * @return - the decoded object
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	Object decode(BencodeReader r, int[] counts) throws IOException {
+		// the values of the open lists and dictionaries (keys and values in
+		// turn), the arrays are reused by the siblings
+		Object[][] open = new Object[INITIAL_DEPTH][];
+		int[] sizes = new int[INITIAL_DEPTH];
+		int[] starts = new int[INITIAL_DEPTH];
+		boolean[] dicts = new boolean[INITIAL_DEPTH];
+		int depth = 0;
+		while (true) {
+			Object value;
+			switch (r.next()) {
+			case START_LIST:
+			case START_DICT:
+				if (depth == open.length) {
+					open = Arrays.copyOf(open, depth << 1);
+					sizes = Arrays.copyOf(sizes, depth << 1);
+					starts = Arrays.copyOf(starts, depth << 1);
+					dicts = Arrays.copyOf(dicts, depth << 1);
+				}
+				if (open[depth] == null) {
+					open[depth] = new Object[INITIAL_SIZE];
+				}
+				sizes[depth] = 0;
+				starts[depth] = r.position() - 1;
+				dicts[depth++] = r.token() == Token.START_DICT;
+				if (counts != null) {
+					counts[dicts[depth - 1] ? C_DICTS : C_LISTS]++;
+					counts[C_DEPTH] = Math.max(counts[C_DEPTH], depth);
+				}
+				continue;
+			case KEY:
+				value = keys != null ? keys.intern(r.buffer(), r.valueOffset(),
+						r.valueLength()) : null;
+				if (value == null) {
+					value = r.bytesValue();
+				}
+				if (counts != null) {
+					counts[C_STRINGS]++;
+				}
+				break;
+			case BYTES:
+				value = r.bytesValue();
+				if (counts != null) {
+					counts[C_STRINGS]++;
+				}
+				break;
+			case INT:
+				value = r.numberValue();
+				if (counts != null) {
+					counts[C_INTEGERS]++;
+				}
+				break;
+			case END:
+				depth--;
+				int start = starts[depth];
+				int length = r.position() - start;
+				value = dicts[depth] ? BencodeDict.ofPairs(open[depth],
+						sizes[depth], r.source(), start, length) : BencodeList
+						.of(open[depth], sizes[depth], r.source(), start, length);
+				Arrays.fill(open[depth], 0, sizes[depth], null);
+				break;
+			default:
+				throw new BencodeException(Reason.UNEXPECTED,
+						"Value expected, but " + r.token());
+			}
+			if (depth == 0) {
+				return value;
+			}
+			int i = depth - 1;
+			Object[] values = open[i];
+			if (sizes[i] == values.length) {
+				open[i] = values = Arrays.copyOf(values, sizes[i] << 1);
+			}
+			values[sizes[i]++] = value;
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package com.github.soulaway.beecoder;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Presents the decoded Bencode dictionary, backed by the flat parallel arrays
+ * of the keys and the values, in the order they were decoded. The canonical
+ * Bencode keeps the keys sorted, so the lookup is the binary search right
+ * over the keys; for the unsorted input the sorted index of the keys is made
+ * once by the decoder.
+ *
+ * <pre>
+ * BencodeDict announce = (BencodeDict) decoder.decode(buf);
+ * ByteString infoHash = announce.getBytes("info_hash");
+ * long port = announce.getLong("port", 6881);
+ * </pre>
+ *
+ * Which of the duplicated keys (malformed, but met in the wild) is found is
+ * unspecified. The dictionary is immutable, the {@link java.util.Map}
+ * mutators throw UnsupportedOperationException. The String keys are looked
+ * up by their UTF-8 bytes, the ASCII ones without encoding them.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeDict extends AbstractMap<ByteString, Object> {
+
+	/** The empty dictionary */
+	public static final BencodeDict EMPTY = new BencodeDict(new ByteString[0],
+			new Object[0], null, 0, 0);
+
+	private static final ByteString EMPTY_RAW = ByteString.of("de");
+
+	private final ByteString[] keys;
+	private final Object[] values;
+	// the encoded dictionary in the source buffer
+	private final ByteBuffer source;
+	private final int rawOffset;
+	private final int rawLength;
+	// the indexes of the keys in the sorted order, null when they are sorted
+	private final int[] order;
+	private Set<Entry<ByteString, Object>> entrySet;
+
+	/**
+	 * Takes the arrays without copying them.
+	 */
+	BencodeDict(ByteString[] keys, Object[] values, ByteBuffer source,
+			int rawOffset, int rawLength) {
+		this.keys = keys;
+		this.values = values;
+		this.order = sorted(keys) ? null : sortedOrder(keys);
+		this.source = source;
+		this.rawOffset = rawOffset;
+		this.rawLength = rawLength;
+	}
+
+	/**
+	 * Takes the keys and the values interleaved in the part of the array,
+	 * and the span of the source buffer they are decoded from.
+	 */
+	static BencodeDict ofPairs(Object[] pairs, int length, ByteBuffer source,
+			int rawOffset, int rawLength) {
+		int n = length >> 1;
+		ByteString[] keys = new ByteString[n];
+		Object[] values = new Object[n];
+		for (int i = 0, j = 0; i < n; i++) {
+			keys[i] = (ByteString) pairs[j++];
+			values[i] = pairs[j++];
+		}
+		return new BencodeDict(keys, values, source, rawOffset, rawLength);
+	}
+
+	/**
+	 * Returns the bytes the dictionary is decoded from, as they are, so the
+	 * hash of the torrent info is made without encoding it again.
+	 *
+	 * @return - the view over the encoded dictionary in the source buffer,
+	 *         or "de" for {@link #EMPTY}
+	 */
+	public ByteString raw() {
+		return source == null ? EMPTY_RAW : ByteString.viewOf(source, rawOffset,
+				rawLength);
+	}
+
+	/**
+	 * @return - true when the keys are in the canonical (sorted, unique)
+	 *         order
+	 */
+	public boolean isCanonical() {
+		return order == null;
+	}
+
+	/**
+	 * @param index
+	 *            - the index of the entry in the decoded order
+	 * @return - the key of the entry
+	 */
+	public ByteString keyAt(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * @param index
+	 *            - the index of the entry in the decoded order
+	 * @return - the value of the entry
+	 */
+	public Object valueAt(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @param key
+	 *            - the key
+	 * @return - the value or null when there is no such key
+	 */
+	public Object get(ByteString key) {
+		int i = indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	/**
+	 * @param key
+	 *            - the key, encoded as UTF-8
+	 * @return - the value or null when there is no such key
+	 */
+	public Object get(String key) {
+		int i = indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	/**
+	 * @param key
+	 *            - the key
+	 * @return - the byte string value or null when there is no such key
+	 * @throws ClassCastException
+	 *             when the value isn't the byte string
+	 */
+	public ByteString getBytes(String key) {
+		return (ByteString) get(key);
+	}
+
+	/**
+	 * @param key
+	 *            - the key
+	 * @return - the byte string value decoded as UTF-8, or null when there is
+	 *         no such key
+	 * @throws ClassCastException
+	 *             when the value isn't the byte string
+	 */
+	public String getString(String key) {
+		ByteString value = getBytes(key);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * @param key
+	 *            - the key
+	 * @param defaultValue
+	 *            - the value to return when there is no such key
+	 * @return - the integer value
+	 * @throws ClassCastException
+	 *             when the value isn't the integer
+	 * @throws ArithmeticException
+	 *             when the value doesn't fit into the long
+	 */
+	public long getLong(String key, long defaultValue) {
+		Number value = (Number) get(key);
+		if (value == null) {
+			return defaultValue;
+		} else if (value instanceof BigInteger) {
+			return ((BigInteger) value).longValueExact();
+		}
+		return value.longValue();
+	}
+
+	/**
+	 * @param key
+	 *            - the key
+	 * @return - the dictionary value or null when there is no such key
+	 * @throws ClassCastException
+	 *             when the value isn't the dictionary
+	 */
+	public BencodeDict getDict(String key) {
+		return (BencodeDict) get(key);
+	}
+
+	/**
+	 * @param key
+	 *            - the key
+	 * @return - the list value or null when there is no such key
+	 * @throws ClassCastException
+	 *             when the value isn't the list
+	 */
+	public BencodeList getList(String key) {
+		return (BencodeList) get(key);
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (key instanceof ByteString) {
+			return get((ByteString) key);
+		} else if (key instanceof String) {
+			return get((String) key);
+		}
+		return null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (key instanceof ByteString) {
+			return indexOf((ByteString) key) >= 0;
+		} else if (key instanceof String) {
+			return indexOf((String) key) >= 0;
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	@Override
+	public Set<Entry<ByteString, Object>> entrySet() {
+		Set<Entry<ByteString, Object>> es = entrySet;
+		if (es == null) {
+			entrySet = es = new AbstractSet<Entry<ByteString, Object>>() {
+
+				@Override
+				public Iterator<Entry<ByteString, Object>> iterator() {
+					return new Iterator<Entry<ByteString, Object>>() {
+
+						private int i;
+
+						@Override
+						public boolean hasNext() {
+							return i < keys.length;
+						}
+
+						@Override
+						public Entry<ByteString, Object> next() {
+							if (i == keys.length) {
+								throw new NoSuchElementException();
+							}
+							i++;
+							return new AbstractMap.SimpleImmutableEntry<ByteString, Object>(
+									keys[i - 1], values[i - 1]);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return keys.length;
+				}
+			};
+		}
+		return es;
+	}
+
+	private int indexOf(ByteString key) {
+		int lo = 0;
+		int hi = keys.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int i = order == null ? mid : order[mid];
+			int c = keys[i].compareTo(key);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(String key) {
+		for (int i = 0; i < key.length(); i++) {
+			if (key.charAt(i) >= 0x80) {
+				return indexOf(ByteString.of(key));
+			}
+		}
+		int lo = 0;
+		int hi = keys.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int i = order == null ? mid : order[mid];
+			int c = keys[i].compareAscii(key);
+			if (c < 0) {
+				lo = mid + 1;
+			} else if (c > 0) {
+				hi = mid - 1;
+			} else {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean sorted(ByteString[] keys) {
+		for (int i = 1; i < keys.length; i++) {
+			if (keys[i - 1].compareTo(keys[i]) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int[] sortedOrder(final ByteString[] keys) {
+		Integer[] boxed = new Integer[keys.length];
+		for (int i = 0; i < boxed.length; i++) {
+			boxed[i] = i;
+		}
+		Arrays.sort(boxed, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				return keys[a].compareTo(keys[b]);
+			}
+		});
+		int[] order = new int[boxed.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = boxed[i];
+		}
+		return order;
+	}
+}
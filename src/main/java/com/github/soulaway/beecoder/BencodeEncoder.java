@@ -0,0 +1,444 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_DELEMETER_STR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_POSTFIX_NONSTR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_ARR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_DIC;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_INT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_SUFIX_NEGATIVE;
+
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Encodes the objects to the canonical Bencode: the dictionary keys are
+ * sorted by their bytes, whatever order the Map or the list of the entries
+ * has. The exact encoded size is computed first, so the output is written at
+ * once into the array of that size or into the ByteBuffer (heap or direct),
+ * the digits and the UTF-8 bytes of the Strings are written right there,
+ * nothing else is allocated but the sorted copies of the dictionaries given
+ * unsorted, that the size pass makes once and the write pass reuses.
+ *
+ * <pre>
+ * BencodeEncoder encoder = new BencodeEncoder();
+ * byte[] response = encoder.encode(reply);
+ * </pre>
+ *
+ * The objects are those {@link BeeCoder#encode(Object, java.io.OutputStream)}
+ * accepts. The encoder given the {@link CodecListener} reports every object it
+ * encodes. The encoder has no state and can be shared between threads.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeEncoder {
+
+	// the unpaired surrogate is encoded as String.getBytes does
+	private static final byte UTF8_REPLACEMENT = '?';
+
+	private static final Comparator<Entry<?, ?>> KEY_ORDER = new Comparator<Entry<?, ?>>() {
+
+		@Override
+		public int compare(Entry<?, ?> a, Entry<?, ?> b) {
+			return compareKeys(a.getKey(), b.getKey());
+		}
+	};
+
+	/**
+	 * The copies of the unsorted dictionaries the size pass has made, in the
+	 * order the write pass meets them, so every dictionary is sorted once.
+	 */
+	private static final class Sorted {
+
+		final List<Collection<?>> dicts = new ArrayList<Collection<?>>();
+		int next;
+	}
+
+	private final CodecListener listener;
+
+	/**
+	 * Creates the encoder, that measures nothing.
+	 */
+	public BencodeEncoder() {
+		this(null);
+	}
+
+	/**
+	 * Creates the encoder, that reports to the listener.
+	 *
+	 * @param listener
+	 *            - observes the encoding, null for none
+	 */
+	public BencodeEncoder(CodecListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Computes the length of the canonical encoding.
+	 *
+	 * @param obj
+	 *            - the object to encode
+	 * @return - the number of bytes {@link #encode(Object)} returns
+	 * @throws IllegalArgumentException
+	 *             when the object isn't Bencodable or is too large
+	 */
+	public int encodedSize(Object obj) {
+		return encodedSize(obj, null);
+	}
+
+	private static int encodedSize(Object obj, Sorted sorted) {
+		long size = size(obj, sorted);
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The encoded object is too large " + size);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Encodes the object into the array of the exact size.
+	 *
+	 * @param obj
+	 *            - the object to encode
+	 * @return - the canonical encoding
+	 * @throws IllegalArgumentException
+	 *             when the object isn't Bencodable
+	 */
+	public byte[] encode(Object obj) {
+		long start = listener != null ? System.nanoTime() : 0;
+		Sorted sorted = new Sorted();
+		byte[] out = new byte[encodedSize(obj, sorted)];
+		write(obj, ByteBuffer.wrap(out), sorted);
+		if (listener != null) {
+			listener.encoded(out.length, System.nanoTime() - start);
+		}
+		return out;
+	}
+
+	/**
+	 * Encodes the object into the buffer, from its position, that is moved
+	 * behind the encoding.
+	 *
+	 * @param obj
+	 *            - the object to encode
+	 * @param dst
+	 *            - the buffer to write to
+	 * @return - the number of bytes written
+	 * @throws IllegalArgumentException
+	 *             when the object isn't Bencodable
+	 * @throws BufferOverflowException
+	 *             when the buffer has no room for the encoding, nothing is
+	 *             written then
+	 */
+	public int encode(Object obj, ByteBuffer dst) {
+		long start = listener != null ? System.nanoTime() : 0;
+		Sorted sorted = new Sorted();
+		int size = encodedSize(obj, sorted);
+		if (dst.remaining() < size) {
+			throw new BufferOverflowException();
+		}
+		write(obj, dst, sorted);
+		if (listener != null) {
+			listener.encoded(size, System.nanoTime() - start);
+		}
+		return size;
+	}
+
+	/*** size ***/
+
+	private static long size(Object obj, Sorted sorted) {
+		if (obj instanceof ByteString) {
+			return bytesSize(((ByteString) obj).length());
+		} else if (obj instanceof String) {
+			return bytesSize(utf8Length((String) obj));
+		} else if (obj instanceof Integer || obj instanceof Long
+				|| obj instanceof Short || obj instanceof Byte) {
+			return 2 + digits(((Number) obj).longValue());
+		} else if (obj instanceof BigInteger) {
+			BigInteger big = (BigInteger) obj;
+			return 2 + (big.bitLength() < Long.SIZE ? digits(big.longValue())
+					: big.toString().length());
+		} else if (obj instanceof byte[]) {
+			return bytesSize(((byte[]) obj).length);
+		} else if (obj instanceof BencodeDict
+				&& ((BencodeDict) obj).isCanonical()) {
+			BencodeDict dict = (BencodeDict) obj;
+			long size = 2;
+			for (int i = 0; i < dict.size(); i++) {
+				size += size(dict.keyAt(i), sorted)
+						+ size(dict.valueAt(i), sorted);
+			}
+			return size;
+		} else if (obj instanceof List) {
+			List<?> list = (List<?>) obj;
+			if (isDict(list)) {
+				return dictSize(list, sorted);
+			}
+			long size = 2;
+			for (Object o : list) {
+				size += size(o, sorted);
+			}
+			return size;
+		} else if (obj instanceof Map) {
+			return dictSize(((Map<?, ?>) obj).entrySet(), sorted);
+		}
+		throw new IllegalArgumentException("The type of the encodable object isn't Bencodable: " + obj);
+	}
+
+	private static long dictSize(Collection<?> entries, Sorted sorted) {
+		Collection<?> ordered = entries;
+		if (!isSorted(entries)) {
+			ordered = sort(entries);
+			if (sorted != null) {
+				sorted.dicts.add(ordered);
+			}
+		}
+		long size = 2;
+		for (Object o : ordered) {
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			size += size(key(e.getKey()), sorted) + size(e.getValue(), sorted);
+		}
+		return size;
+	}
+
+	private static long bytesSize(int length) {
+		return digits(length) + 1 + length;
+	}
+
+	private static int digits(long value) {
+		int digits = value < 0 ? 2 : 1;
+		for (long v = value / 10; v != 0; v /= 10) {
+			digits++;
+		}
+		return digits;
+	}
+
+	private static int utf8Length(String s) {
+		int n = s.length();
+		int length = n;
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					length++;
+				} else if (Character.isHighSurrogate(c) && i + 1 < n
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					// the pair of chars is 4 bytes
+					length += 2;
+					i++;
+				} else if (!Character.isSurrogate(c)) {
+					length += 2;
+				}
+			}
+		}
+		return length;
+	}
+
+	/*** write ***/
+
+	private static void write(Object obj, ByteBuffer dst, Sorted sorted) {
+		if (obj instanceof ByteString) {
+			ByteString bytes = (ByteString) obj;
+			writeLength(bytes.length(), dst);
+			bytes.copyTo(dst);
+		} else if (obj instanceof String) {
+			String s = (String) obj;
+			writeLength(utf8Length(s), dst);
+			writeUtf8(s, dst);
+		} else if (obj instanceof Integer || obj instanceof Long
+				|| obj instanceof Short || obj instanceof Byte) {
+			dst.put((byte) BC_PREFIX_INT);
+			writeLong(((Number) obj).longValue(), dst);
+			dst.put((byte) BC_POSTFIX_NONSTR);
+		} else if (obj instanceof BigInteger) {
+			BigInteger big = (BigInteger) obj;
+			dst.put((byte) BC_PREFIX_INT);
+			if (big.bitLength() < Long.SIZE) {
+				writeLong(big.longValue(), dst);
+			} else {
+				String digits = big.toString();
+				for (int i = 0; i < digits.length(); i++) {
+					dst.put((byte) digits.charAt(i));
+				}
+			}
+			dst.put((byte) BC_POSTFIX_NONSTR);
+		} else if (obj instanceof byte[]) {
+			byte[] bytes = (byte[]) obj;
+			writeLength(bytes.length, dst);
+			dst.put(bytes);
+		} else if (obj instanceof BencodeDict
+				&& ((BencodeDict) obj).isCanonical()) {
+			BencodeDict dict = (BencodeDict) obj;
+			dst.put((byte) BC_PREFIX_DIC);
+			for (int i = 0; i < dict.size(); i++) {
+				write(dict.keyAt(i), dst, sorted);
+				write(dict.valueAt(i), dst, sorted);
+			}
+			dst.put((byte) BC_POSTFIX_NONSTR);
+		} else if (obj instanceof List) {
+			List<?> list = (List<?>) obj;
+			if (isDict(list)) {
+				writeDict(list, dst, sorted);
+			} else {
+				dst.put((byte) BC_PREFIX_ARR);
+				for (Object o : list) {
+					write(o, dst, sorted);
+				}
+				dst.put((byte) BC_POSTFIX_NONSTR);
+			}
+		} else {
+			writeDict(((Map<?, ?>) obj).entrySet(), dst, sorted);
+		}
+	}
+
+	// the write pass meets the unsorted dictionaries in the order the size
+	// pass has sorted them
+	private static void writeDict(Collection<?> entries, ByteBuffer dst,
+			Sorted sorted) {
+		dst.put((byte) BC_PREFIX_DIC);
+		Collection<?> ordered = isSorted(entries) ? entries
+				: sorted.dicts.get(sorted.next++);
+		for (Object o : ordered) {
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			write(e.getKey(), dst, sorted);
+			write(e.getValue(), dst, sorted);
+		}
+		dst.put((byte) BC_POSTFIX_NONSTR);
+	}
+
+	private static void writeLength(int length, ByteBuffer dst) {
+		writeLong(length, dst);
+		dst.put((byte) BC_DELEMETER_STR);
+	}
+
+	private static void writeLong(long value, ByteBuffer dst) {
+		int p = dst.position();
+		int end = p + digits(value);
+		if (value < 0) {
+			dst.put(p, (byte) BC_SUFIX_NEGATIVE);
+		} else {
+			// keeps it negative, so Long.MIN_VALUE is written as well
+			value = -value;
+		}
+		int i = end;
+		do {
+			dst.put(--i, (byte) ('0' - (value % 10)));
+			value /= 10;
+		} while (value != 0);
+		BeeCoder.Utils.position(dst, end);
+	}
+
+	private static void writeUtf8(String s, ByteBuffer dst) {
+		int n = s.length();
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				dst.put((byte) c);
+			} else if (c < 0x800) {
+				dst.put((byte) (0xc0 | (c >> 6)));
+				dst.put((byte) (0x80 | (c & 0x3f)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < n
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				dst.put((byte) (0xf0 | (cp >> 18)));
+				dst.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+				dst.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+				dst.put((byte) (0x80 | (cp & 0x3f)));
+			} else if (Character.isSurrogate(c)) {
+				dst.put(UTF8_REPLACEMENT);
+			} else {
+				dst.put((byte) (0xe0 | (c >> 12)));
+				dst.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				dst.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+
+	/*** keys ***/
+
+	// the list of the entries is the dictionary, as BeeCoder encodes it
+	private static boolean isDict(List<?> list) {
+		if (list.isEmpty() || !(list.get(0) instanceof Entry)) {
+			return false;
+		}
+		for (Object e : list) {
+			if (!(e instanceof Entry)) {
+				throw new IllegalArgumentException("Bencoded dictionary contains not an Entry " + e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks the entries are sorted already, without the duplicated keys.
+	 */
+	private static boolean isSorted(Collection<?> entries) {
+		Object prev = null;
+		for (Object o : entries) {
+			Object key = key(((Entry<?, ?>) o).getKey());
+			if (prev != null && compareKeys(prev, key) >= 0) {
+				return false;
+			}
+			prev = key;
+		}
+		return true;
+	}
+
+	private static Collection<?> sort(Collection<?> entries) {
+		Entry<?, ?>[] sorted = entries.toArray(new Entry<?, ?>[entries.size()]);
+		Arrays.sort(sorted, KEY_ORDER);
+		for (int i = 1; i < sorted.length; i++) {
+			if (compareKeys(sorted[i - 1].getKey(), sorted[i].getKey()) == 0) {
+				throw new IllegalArgumentException("Bencoded dictionary has the duplicated key " + sorted[i].getKey());
+			}
+		}
+		return Arrays.asList(sorted);
+	}
+
+	private static Object key(Object key) {
+		if (key instanceof String || key instanceof ByteString) {
+			return key;
+		}
+		throw new IllegalArgumentException("Bencoded dictionary key is not String type " + key);
+	}
+
+	// the order of the UTF-8 bytes, that is the order of the code points
+	private static int compareKeys(Object a, Object b) {
+		if (a instanceof String && b instanceof String) {
+			return compareUtf8((String) a, (String) b);
+		}
+		return bytes(a).compareTo(bytes(b));
+	}
+
+	private static ByteString bytes(Object key) {
+		return key instanceof ByteString ? (ByteString) key : ByteString
+				.of((String) key);
+	}
+
+	private static int compareUtf8(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			int ca = codePointAt(a, i);
+			int cb = codePointAt(b, j);
+			if (ca != cb) {
+				return ca - cb;
+			}
+			i += Character.charCount(ca);
+			j += Character.charCount(cb);
+		}
+		return (a.length() - i) - (b.length() - j);
+	}
+
+	private static int codePointAt(String s, int i) {
+		int cp = s.codePointAt(i);
+		return Character.isSurrogate((char) cp) && cp < 0x10000 ? UTF8_REPLACEMENT
+				: cp;
+	}
+}
@@ -0,0 +1,56 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+
+/**
+ * Reports the malformed Bencoded data, with the reason it's rejected for, so
+ * the rejections can be counted without parsing the messages.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public class BencodeException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The reasons the data is rejected for.
+	 */
+	public enum Reason {
+		/** The character or the token isn't expected there */
+		UNEXPECTED,
+		/** The data ends inside the value */
+		STREAM_END,
+		/** The nesting exceeds {@link BencodeLimits#maxDepth()} */
+		DEPTH,
+		/** The string exceeds {@link BencodeLimits#maxStringLength()} */
+		STRING_LENGTH,
+		/** The number of values exceeds {@link BencodeLimits#maxElements()} */
+		ELEMENTS,
+		/** The value exceeds {@link BencodeLimits#maxTotalBytes()} */
+		TOTAL_LENGTH,
+		/** Anything follows the single value expected */
+		TRAILING,
+		/** The well-formed value isn't encoded canonically */
+		NON_CANONICAL
+	}
+
+	private final Reason reason;
+
+	/**
+	 * @param reason
+	 *            - the reason the data is rejected for
+	 * @param message
+	 *            - the detail message
+	 */
+	public BencodeException(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+
+	/**
+	 * @return - the reason the data is rejected for
+	 */
+	public Reason reason() {
+		return reason;
+	}
+}
@@ -0,0 +1,24 @@
+package com.github.soulaway.beecoder;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the dictionary key the field is bound to by the {@link BencodeCodec},
+ * when it isn't the name of the field, like "piece length".
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface BencodeKey {
+
+	/**
+	 * @return - the key, encoded as UTF-8
+	 */
+	String value();
+}
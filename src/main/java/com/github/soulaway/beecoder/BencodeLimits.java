@@ -0,0 +1,91 @@
+package com.github.soulaway.beecoder;
+
+/**
+ * Presents the limits the decoding checks, to withstand the hostile input:
+ * the nesting depth, the length of the single string, the number of the
+ * values and the encoded length of the top-level value. The input exceeding
+ * any of them is reported as malformed before the memory is spent on it.
+ *
+ * <pre>
+ * // the DHT message fits into the UDP datagram
+ * BencodeLimits krpc = new BencodeLimits(8, 1024, 512, 1500);
+ * </pre>
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeLimits {
+
+	/** Nothing is limited but the depth, that is 1024 */
+	public static final BencodeLimits DEFAULT = new BencodeLimits(1024,
+			Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+	/** Nothing is limited */
+	public static final BencodeLimits UNLIMITED = new BencodeLimits(
+			Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+			Integer.MAX_VALUE);
+
+	private final int maxDepth;
+	private final int maxStringLength;
+	private final int maxElements;
+	private final int maxTotalBytes;
+
+	/**
+	 * @param maxDepth
+	 *            - the maximum nesting of the dictionaries and lists
+	 * @param maxStringLength
+	 *            - the maximum length of the single string
+	 * @param maxElements
+	 *            - the maximum number of the values (including dictionaries
+	 *            and lists) in the top-level value
+	 * @param maxTotalBytes
+	 *            - the maximum encoded length of the top-level value
+	 */
+	public BencodeLimits(int maxDepth, int maxStringLength, int maxElements,
+			int maxTotalBytes) {
+		if (maxDepth < 0 || maxStringLength < 0 || maxElements < 1
+				|| maxTotalBytes < 1) {
+			throw new IllegalArgumentException("Invalid limits, depth "
+					+ maxDepth + " string " + maxStringLength + " elements "
+					+ maxElements + " bytes " + maxTotalBytes);
+		}
+		this.maxDepth = maxDepth;
+		this.maxStringLength = maxStringLength;
+		this.maxElements = maxElements;
+		this.maxTotalBytes = maxTotalBytes;
+	}
+
+	/**
+	 * @return - the maximum nesting of the dictionaries and lists
+	 */
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return - the maximum length of the single string
+	 */
+	public int maxStringLength() {
+		return maxStringLength;
+	}
+
+	/**
+	 * @return - the maximum number of the values in the top-level value
+	 */
+	public int maxElements() {
+		return maxElements;
+	}
+
+	/**
+	 * @return - the maximum encoded length of the top-level value
+	 */
+	public int maxTotalBytes() {
+		return maxTotalBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "BencodeLimits [maxDepth=" + maxDepth + ", maxStringLength="
+				+ maxStringLength + ", maxElements=" + maxElements
+				+ ", maxTotalBytes=" + maxTotalBytes + "]";
+	}
+}
@@ -0,0 +1,74 @@
+package com.github.soulaway.beecoder;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Presents the decoded Bencode list, backed by the array of the exact size.
+ * It keeps the span of the source buffer it is decoded from.
+ * The list is immutable, the mutators throw UnsupportedOperationException.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeList extends AbstractList<Object> implements
+		RandomAccess {
+
+	/** The empty list */
+	public static final BencodeList EMPTY = new BencodeList(new Object[0],
+			null, 0, 0);
+
+	private static final ByteString EMPTY_RAW = ByteString.of("le");
+
+	private final Object[] values;
+	// the encoded list in the source buffer
+	private final ByteBuffer source;
+	private final int rawOffset;
+	private final int rawLength;
+
+	/**
+	 * Takes the array without copying it.
+	 */
+	BencodeList(Object[] values, ByteBuffer source, int rawOffset,
+			int rawLength) {
+		this.values = values;
+		this.source = source;
+		this.rawOffset = rawOffset;
+		this.rawLength = rawLength;
+	}
+
+	/**
+	 * Copies the part of the array, and takes the span of the source buffer
+	 * it is decoded from.
+	 */
+	static BencodeList of(Object[] values, int length, ByteBuffer source,
+			int rawOffset, int rawLength) {
+		return new BencodeList(Arrays.copyOf(values, length), source,
+				rawOffset, rawLength);
+	}
+
+	/**
+	 * @return - the view over the encoded list in the source buffer, or "le"
+	 *         for {@link #EMPTY}
+	 */
+	public ByteString raw() {
+		return source == null ? EMPTY_RAW : ByteString.viewOf(source, rawOffset,
+				rawLength);
+	}
+
+	@Override
+	public Object get(int index) {
+		return values[index];
+	}
+
+	@Override
+	public int size() {
+		return values.length;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return values.clone();
+	}
+}
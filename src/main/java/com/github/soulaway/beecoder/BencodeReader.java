@@ -0,0 +1,518 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_DELEMETER_STR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_LIMIT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_STREAM_END;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_WRONG_CHAR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_POSTFIX_NONSTR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_ARR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_DIC;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_INT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_SUFIX_NEGATIVE;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Presents the pull parser of the Bencoded data, that returns the tokens one
+ * by one instead of building the whole decoded tree. The values, that aren't
+ * needed, are skipped by {@link #skipValue()} without being materialized.
+ *
+ * <pre>
+ * BencodeReader r = new BencodeReader(torrent);
+ * r.next(); // START_DICT
+ * if (r.seekKey("info") &amp;&amp; r.next() == Token.START_DICT &amp;&amp; r.seekKey("name")) {
+ * 	r.next(); // BYTES
+ * 	String name = r.stringValue();
+ * }
+ * </pre>
+ *
+ * The reader uses the absolute reads only, the buffer position and content
+ * are never changed. It keeps the nesting on its own stack, so the depth of
+ * the data isn't limited by the thread stack, but by the {@link BencodeLimits}
+ * only, that are checked for every top-level value. The reader isn't thread
+ * safe, but can be reused by {@link #reset(ByteBuffer)}.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeReader {
+
+	/**
+	 * The tokens of the Bencoded data.
+	 */
+	public enum Token {
+		/** the dictionary begins, the KEY and value tokens follow till END */
+		START_DICT,
+		/** the list begins, the value tokens follow till END */
+		START_LIST,
+		/** the dictionary key, the byte string */
+		KEY,
+		/** the integer value */
+		INT,
+		/** the byte string value */
+		BYTES,
+		/** the dictionary or the list ends */
+		END,
+		/** there is nothing left to read */
+		EOF
+	}
+
+	// the states of the nesting stack entries
+	private static final byte IN_LIST = 0;
+	private static final byte IN_DICT_KEY = 1;
+	private static final byte IN_DICT_VALUE = 2;
+
+	private static final int INITIAL_DEPTH = 16;
+	// any number of these many digits fits into the long
+	private static final int MAX_SAFE_DIGITS = 18;
+
+	private final BencodeLimits limits;
+	private ByteBuffer buf;
+	// the buffer of the views, made when the first one is
+	private ByteBuffer source;
+	private int pos;
+	private int limit;
+	private byte[] stack = new byte[INITIAL_DEPTH];
+	private int depth;
+	private Token token;
+	private long longValue;
+	private BigInteger bigValue;
+	private int valueOffset;
+	private int valueLength;
+	private int valueStart;
+	private int elements;
+
+	/**
+	 * Creates the reader of the buffer content, from its position to its
+	 * limit, with the default limits.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from
+	 */
+	public BencodeReader(ByteBuffer buf) {
+		this(buf, BencodeLimits.DEFAULT);
+	}
+
+	/**
+	 * Creates the reader of the buffer content, from its position to its
+	 * limit.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from
+	 * @param limits
+	 *            - the limits to check
+	 */
+	public BencodeReader(ByteBuffer buf, BencodeLimits limits) {
+		this.limits = limits;
+		reset(buf);
+	}
+
+	/**
+	 * Restarts the reader over the new buffer, from its position to its
+	 * limit.
+	 *
+	 * @param buf
+	 *            - the buffer where to read from
+	 * @return - this reader
+	 */
+	public BencodeReader reset(ByteBuffer buf) {
+		this.buf = buf;
+		this.source = null;
+		this.pos = buf.position();
+		this.limit = buf.limit();
+		this.depth = 0;
+		this.token = null;
+		return this;
+	}
+
+	/**
+	 * @return - the current token, null before the first call of next()
+	 */
+	public Token token() {
+		return token;
+	}
+
+	/**
+	 * @return - the number of the dictionaries and lists the reader is in
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * @return - the absolute index of the next byte to read
+	 */
+	public int position() {
+		return pos;
+	}
+
+	/**
+	 * @return - the buffer being read
+	 */
+	public ByteBuffer buffer() {
+		return buf;
+	}
+
+	/**
+	 * @return - true when the current INT token fits into the long
+	 */
+	public boolean isLongValue() {
+		check(token == Token.INT);
+		return bigValue == null;
+	}
+
+	/**
+	 * @return - the value of the current INT token
+	 * @throws ArithmeticException
+	 *             when the value doesn't fit into the long
+	 */
+	public long longValue() {
+		check(token == Token.INT);
+		if (bigValue != null) {
+			throw new ArithmeticException("Integer is out of the long range "
+					+ bigValue);
+		}
+		return longValue;
+	}
+
+	/**
+	 * @return - the value of the current INT token, of any size
+	 */
+	public BigInteger bigIntegerValue() {
+		check(token == Token.INT);
+		return bigValue != null ? bigValue : BigInteger.valueOf(longValue);
+	}
+
+	/**
+	 * @return - the value of the current INT token, as the narrowest of
+	 *         Integer, Long and BigInteger it fits into
+	 */
+	public Number numberValue() {
+		check(token == Token.INT);
+		if (bigValue != null) {
+			return bigValue;
+		}
+		int i = (int) longValue;
+		if (i == longValue) {
+			return Integer.valueOf(i);
+		}
+		return Long.valueOf(longValue);
+	}
+
+	/**
+	 * @return - the absolute index of the current KEY or BYTES payload
+	 */
+	public int valueOffset() {
+		checkBytes();
+		return valueOffset;
+	}
+
+	/**
+	 * @return - the length of the current KEY or BYTES payload
+	 */
+	public int valueLength() {
+		checkBytes();
+		return valueLength;
+	}
+
+	/**
+	 * @return - the view over the current KEY or BYTES payload
+	 */
+	public ByteString bytesValue() {
+		checkBytes();
+		return ByteString.viewOf(source(), valueOffset, valueLength);
+	}
+
+	/**
+	 * @return - the buffer the views of the values are over, the duplicate of
+	 *         the direct buffer made once per buffer, see
+	 *         {@link ByteString#detach(ByteBuffer)}
+	 */
+	ByteBuffer source() {
+		if (source == null) {
+			source = ByteString.detach(buf);
+		}
+		return source;
+	}
+
+	/**
+	 * @return - the current KEY or BYTES payload decoded as UTF-8
+	 */
+	public String stringValue() {
+		return bytesValue().toString();
+	}
+
+	/**
+	 * Checks whether the current KEY or BYTES payload is the UTF-8 encoded
+	 * String, without creating any String.
+	 *
+	 * @param s
+	 *            - the String to compare with
+	 * @return - true when the payload is equal to the String
+	 */
+	public boolean valueEquals(String s) {
+		checkBytes();
+		return ByteString.equals(buf, valueOffset, valueLength, s);
+	}
+
+	/**
+	 * Reads the next token.
+	 *
+	 * @return - the token read
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public Token next() throws IOException {
+		if (depth == 0) {
+			if (pos == limit) {
+				return token = Token.EOF;
+			}
+			valueStart = pos;
+			elements = 0;
+			token = readValue();
+			checkTotal();
+			return token;
+		}
+		if (pos == limit) {
+			throw new BencodeException(Reason.STREAM_END,
+					BC_MSG_EXCEPTION_STREAM_END + type());
+		}
+		byte state = stack[depth - 1];
+		byte b = buf.get(pos);
+		if (b == BC_POSTFIX_NONSTR && state != IN_DICT_VALUE) {
+			pos++;
+			depth--;
+			return token = Token.END;
+		}
+		if (state == IN_DICT_KEY) {
+			if (b < '0' || b > '9') {
+				pos++;
+				throw unexpected("Dict", b);
+			}
+			stack[depth - 1] = IN_DICT_VALUE;
+			readBytes();
+			checkTotal();
+			return token = Token.KEY;
+		}
+		if (state == IN_DICT_VALUE) {
+			stack[depth - 1] = IN_DICT_KEY;
+		}
+		token = readValue();
+		checkTotal();
+		return token;
+	}
+
+	/**
+	 * Skips the value that would be returned by the next call of next(),
+	 * with everything nested into it, without materializing anything. After
+	 * the KEY token it skips the value of the key.
+	 *
+	 * @return - the absolute index right behind the skipped value
+	 * @throws IOException
+	 *             when data is malformed, or there is no value to skip
+	 */
+	public int skipValue() throws IOException {
+		int base = depth;
+		Token t = next();
+		if (t == Token.END || t == Token.EOF || t == Token.KEY) {
+			throw new BencodeException(Reason.UNEXPECTED,
+					"There is no value to skip, but " + t);
+		}
+		while (depth > base) {
+			next();
+		}
+		return pos;
+	}
+
+	/**
+	 * Advances within the current dictionary to the key, skipping the keys
+	 * before it with their values. Should be called right after START_DICT,
+	 * or after the value of the previous key has been read.
+	 *
+	 * @param key
+	 *            - the key to find
+	 * @return - true when the key is found, so the next token is its value,
+	 *         false when the dictionary has ended (the END token is read)
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public boolean seekKey(String key) throws IOException {
+		check(depth > 0 && stack[depth - 1] == IN_DICT_KEY);
+		while (next() == Token.KEY) {
+			if (valueEquals(key)) {
+				return true;
+			}
+			skipValue();
+		}
+		return false;
+	}
+
+	/**
+	 * @return - true when the next token is the END of the current list or
+	 *         dictionary, nothing is read
+	 */
+	boolean isEndNext() {
+		return depth > 0 && pos < limit && stack[depth - 1] != IN_DICT_VALUE
+				&& buf.get(pos) == BC_POSTFIX_NONSTR;
+	}
+
+	private Token readValue() throws IOException {
+		if (++elements > limits.maxElements()) {
+			throw new BencodeException(Reason.ELEMENTS, "Number of values"
+					+ BC_MSG_EXCEPTION_LIMIT + limits.maxElements());
+		}
+		byte b = buf.get(pos);
+		if (b >= '0' && b <= '9') {
+			readBytes();
+			return Token.BYTES;
+		}
+		pos++;
+		if (b == BC_PREFIX_INT) {
+			readInteger();
+			return Token.INT;
+		} else if (b == BC_PREFIX_ARR) {
+			push(IN_LIST);
+			return Token.START_LIST;
+		} else if (b == BC_PREFIX_DIC) {
+			push(IN_DICT_KEY);
+			return Token.START_DICT;
+		} else {
+			throw unexpected(depth == 0 ? "Object" : type(), b);
+		}
+	}
+
+	private void readBytes() throws IOException {
+		int length = 0;
+		while (true) {
+			if (pos == limit) {
+				throw new BencodeException(Reason.STREAM_END,
+						BC_MSG_EXCEPTION_STREAM_END + "String length");
+			}
+			byte b = buf.get(pos++);
+			if (b == BC_DELEMETER_STR) {
+				break;
+			} else if (b >= '0' && b <= '9') {
+				int d = b - '0';
+				if (length > (limit - d) / 10) {
+					throw new BencodeException(Reason.STREAM_END,
+							BC_MSG_EXCEPTION_STREAM_END + "String");
+				}
+				length = length * 10 + d;
+			} else {
+				throw unexpected("String", b);
+			}
+		}
+		if (length > limits.maxStringLength()) {
+			throw new BencodeException(Reason.STRING_LENGTH, "String length"
+					+ BC_MSG_EXCEPTION_LIMIT + limits.maxStringLength());
+		}
+		if (length > limit - pos) {
+			throw new BencodeException(Reason.STREAM_END,
+					BC_MSG_EXCEPTION_STREAM_END + "String");
+		}
+		valueOffset = pos;
+		valueLength = length;
+		pos += length;
+	}
+
+	private void readInteger() throws IOException {
+		bigValue = null;
+		int first = pos;
+		boolean neg = false;
+		int digits = 0;
+		long l = 0;
+		while (true) {
+			if (pos == limit) {
+				throw new BencodeException(Reason.STREAM_END,
+						BC_MSG_EXCEPTION_STREAM_END + "Integer");
+			}
+			byte b = buf.get(pos++);
+			if (b >= '0' && b <= '9') {
+				if (++digits > MAX_SAFE_DIGITS) {
+					// the long may overflow, the rare case goes the slow way
+					readBigInteger(first);
+					return;
+				}
+				l = l * 10 + (b - '0');
+			} else if (b == BC_SUFIX_NEGATIVE && !neg && digits == 0) {
+				neg = true;
+			} else if (b == BC_POSTFIX_NONSTR && digits > 0) {
+				longValue = neg ? -l : l;
+				return;
+			} else {
+				throw unexpected("Integer", b);
+			}
+		}
+	}
+
+	private void readBigInteger(int first) throws IOException {
+		while (true) {
+			if (pos == limit) {
+				throw new BencodeException(Reason.STREAM_END,
+						BC_MSG_EXCEPTION_STREAM_END + "Integer");
+			}
+			byte b = buf.get(pos++);
+			if (b == BC_POSTFIX_NONSTR) {
+				break;
+			} else if (b < '0' || b > '9') {
+				throw unexpected("Integer", b);
+			} else if (pos - first > limits.maxStringLength()) {
+				throw new BencodeException(Reason.STRING_LENGTH,
+						"Integer length" + BC_MSG_EXCEPTION_LIMIT
+								+ limits.maxStringLength());
+			}
+		}
+		// the transient view within the limit
+		BigInteger big = new BigInteger(ByteString.viewOf(buf, first,
+				pos - 1 - first).toString(StandardCharsets.US_ASCII));
+		if (big.bitLength() < Long.SIZE) {
+			longValue = big.longValue();
+		} else {
+			bigValue = big;
+		}
+	}
+
+	private void push(byte state) throws IOException {
+		if (depth == limits.maxDepth()) {
+			throw new BencodeException(Reason.DEPTH, "Depth"
+					+ BC_MSG_EXCEPTION_LIMIT + limits.maxDepth());
+		}
+		if (depth == stack.length) {
+			stack = Arrays.copyOf(stack, depth << 1);
+		}
+		stack[depth++] = state;
+	}
+
+	private void checkTotal() throws IOException {
+		if (pos - valueStart > limits.maxTotalBytes()) {
+			throw new BencodeException(Reason.TOTAL_LENGTH, "Value length"
+					+ BC_MSG_EXCEPTION_LIMIT + limits.maxTotalBytes());
+		}
+	}
+
+	private String type() {
+		return stack[depth - 1] == IN_LIST ? "List" : "Dict";
+	}
+
+	private BencodeException unexpected(String type, byte b) {
+		return new BencodeException(Reason.UNEXPECTED, type
+				+ BC_MSG_EXCEPTION_WRONG_CHAR + (char) (b & 0xff)
+				+ " Bytes left " + (limit - pos));
+	}
+
+	private void checkBytes() {
+		check(token == Token.KEY || token == Token.BYTES);
+	}
+
+	private void check(boolean state) {
+		if (!state) {
+			throw new IllegalStateException("Not applicable to the token "
+					+ token);
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_DELEMETER_STR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_LIMIT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_STREAM_END;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_WRONG_CHAR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_POSTFIX_NONSTR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_ARR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_DIC;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_INT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_SUFIX_NEGATIVE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Checks the Bencoded value without decoding it: the single pass over the
+ * buffer finds where the value ends and nothing is allocated, so the
+ * malformed input is rejected before any decoding work is spent on it.
+ *
+ * <pre>
+ * BencodeValidator v = new BencodeValidator(limits, true);
+ * if (!v.isValid(datagram)) {
+ * 	return; // dropped
+ * }
+ * </pre>
+ *
+ * The canonical validator also rejects the well-formed data, that has the
+ * other encoding than the canonical one: the unsorted or duplicated
+ * dictionary keys, the leading zeros of the integers and the string lengths,
+ * and the negative zero. The validator isn't thread safe, but can be reused.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeValidator {
+
+	// the states of the nesting stack entries
+	private static final byte IN_LIST = 0;
+	private static final byte IN_DICT_KEY = 1;
+	private static final byte IN_DICT_VALUE = 2;
+
+	// the failures
+	private static final int F_UNEXPECTED = 1;
+	private static final int F_STREAM_END = 2;
+	private static final int F_DEPTH = 3;
+	private static final int F_STRING_LENGTH = 4;
+	private static final int F_ELEMENTS = 5;
+	private static final int F_TOTAL = 6;
+	private static final int F_UNSORTED = 7;
+	private static final int F_LEADING_ZERO = 8;
+	private static final int F_NEGATIVE_ZERO = 9;
+
+	private static final int INVALID = -1;
+	private static final int INITIAL_DEPTH = 16;
+
+	private final BencodeLimits limits;
+	private final boolean canonical;
+	private byte[] stack = new byte[INITIAL_DEPTH];
+	// the last key of every open dictionary, the length is -1 before the first
+	private int[] keyOffsets = new int[INITIAL_DEPTH];
+	private int[] keyLengths = new int[INITIAL_DEPTH];
+	private int depth;
+	private int limit;
+
+	private int failure;
+	private String failedType;
+	private int failedPos;
+	private byte failedByte;
+
+	/**
+	 * Creates the validator of the well-formed data, with the
+	 * {@link BencodeLimits#DEFAULT} limits.
+	 */
+	public BencodeValidator() {
+		this(BencodeLimits.DEFAULT, false);
+	}
+
+	/**
+	 * Creates the validator.
+	 *
+	 * @param limits
+	 *            - the limits to check
+	 * @param canonical
+	 *            - true to accept the canonical encoding only
+	 */
+	public BencodeValidator(BencodeLimits limits, boolean canonical) {
+		this.limits = limits;
+		this.canonical = canonical;
+	}
+
+	/**
+	 * Checks the value starting at the buffer position. The buffer position
+	 * and content are never changed.
+	 *
+	 * @param buf
+	 *            - the buffer to check
+	 * @return - the absolute index right behind the value
+	 * @throws IOException
+	 *             when data is malformed (or non canonical), or there is
+	 *             nothing remaining
+	 */
+	public int validate(ByteBuffer buf) throws IOException {
+		int end = scan(buf);
+		if (end == INVALID) {
+			throw new BencodeException(reason(), message());
+		}
+		return end;
+	}
+
+	/**
+	 * Checks that the buffer remaining is the single value, without creating
+	 * any exception for the malformed data.
+	 *
+	 * @param buf
+	 *            - the buffer to check
+	 * @return - true when the value is valid and nothing follows it
+	 */
+	public boolean isValid(ByteBuffer buf) {
+		return scan(buf) == buf.limit();
+	}
+
+	private int scan(ByteBuffer buf) {
+		int pos = buf.position();
+		int start = pos;
+		int maxEnd = (int) Math.min((long) start + limits.maxTotalBytes(),
+				buf.limit());
+		// the bytes behind the total limit are never read
+		limit = maxEnd;
+		depth = 0;
+		int elements = 0;
+		do {
+			if (pos == limit) {
+				return streamEnd(buf, start, depth == 0 ? "Object" : type());
+			}
+			byte b = buf.get(pos);
+			if (depth > 0) {
+				byte state = stack[depth - 1];
+				if (b == BC_POSTFIX_NONSTR && state != IN_DICT_VALUE) {
+					pos++;
+					depth--;
+					continue;
+				}
+				if (state == IN_DICT_KEY) {
+					int offset = pos;
+					pos = scanString(buf, pos, "Dict");
+					if (pos == INVALID) {
+						return INVALID;
+					}
+					if (canonical && !checkKey(buf, offset, pos)) {
+						return INVALID;
+					}
+					stack[depth - 1] = IN_DICT_VALUE;
+					continue;
+				}
+				if (state == IN_DICT_VALUE) {
+					stack[depth - 1] = IN_DICT_KEY;
+				}
+			}
+			if (++elements > limits.maxElements()) {
+				return fail(F_ELEMENTS, null, pos);
+			}
+			if (b >= '0' && b <= '9') {
+				pos = scanString(buf, pos, "String");
+			} else if (b == BC_PREFIX_INT) {
+				pos = scanInteger(buf, pos + 1);
+			} else if (b == BC_PREFIX_ARR || b == BC_PREFIX_DIC) {
+				if (depth == limits.maxDepth()) {
+					return fail(F_DEPTH, null, pos);
+				}
+				if (depth == stack.length) {
+					stack = Arrays.copyOf(stack, depth << 1);
+					keyOffsets = Arrays.copyOf(keyOffsets, depth << 1);
+					keyLengths = Arrays.copyOf(keyLengths, depth << 1);
+				}
+				keyLengths[depth] = -1;
+				stack[depth++] = b == BC_PREFIX_ARR ? IN_LIST : IN_DICT_KEY;
+				pos++;
+			} else {
+				return unexpected(depth == 0 ? "Object" : type(), pos + 1, b);
+			}
+			if (pos == INVALID) {
+				return INVALID;
+			}
+		} while (depth > 0);
+		return pos;
+	}
+
+	private int scanString(ByteBuffer buf, int pos, String type) {
+		int first = pos;
+		long length = 0;
+		while (true) {
+			if (pos == limit) {
+				return streamEnd(buf, pos, "String length");
+			}
+			byte b = buf.get(pos++);
+			if (b == BC_DELEMETER_STR) {
+				break;
+			} else if (b >= '0' && b <= '9') {
+				if (canonical && length == 0 && pos - 1 > first) {
+					return fail(F_LEADING_ZERO, "String length", pos);
+				}
+				length = length * 10 + (b - '0');
+				if (length > limit - pos) {
+					return streamEnd(buf, pos, "String");
+				}
+			} else {
+				return unexpected(pos - 1 == first ? type : "String", pos, b);
+			}
+		}
+		if (pos - 1 == first) {
+			return unexpected(type, pos, (byte) BC_DELEMETER_STR);
+		}
+		if (length > limits.maxStringLength()) {
+			return fail(F_STRING_LENGTH, null, pos);
+		}
+		if (length > limit - pos) {
+			return streamEnd(buf, pos, "String");
+		}
+		return pos + (int) length;
+	}
+
+	private int scanInteger(ByteBuffer buf, int pos) {
+		int first = pos;
+		int firstDigit = -1;
+		while (true) {
+			if (pos == limit) {
+				return streamEnd(buf, pos, "Integer");
+			}
+			byte b = buf.get(pos++);
+			if (b >= '0' && b <= '9') {
+				if (firstDigit < 0) {
+					firstDigit = pos - 1;
+				} else if (canonical && buf.get(firstDigit) == '0') {
+					return fail(F_LEADING_ZERO, "Integer", pos);
+				}
+				if (pos - first > limits.maxStringLength()) {
+					return fail(F_STRING_LENGTH, null, pos);
+				}
+			} else if (b == BC_SUFIX_NEGATIVE && pos - 1 == first) {
+				continue;
+			} else if (b == BC_POSTFIX_NONSTR && firstDigit >= 0) {
+				if (canonical && firstDigit > first
+						&& buf.get(firstDigit) == '0') {
+					return fail(F_NEGATIVE_ZERO, "Integer", pos);
+				}
+				return pos;
+			} else {
+				return unexpected("Integer", pos, b);
+			}
+		}
+	}
+
+	// checks the key is greater than the previous key of the dictionary
+	private boolean checkKey(ByteBuffer buf, int from, int end) {
+		int d = depth - 1;
+		// skips the length prefix
+		int offset = from;
+		while (buf.get(offset++) != BC_DELEMETER_STR) {
+		}
+		int length = end - offset;
+		int prevLength = keyLengths[d];
+		if (prevLength >= 0) {
+			int prevOffset = keyOffsets[d];
+			int n = Math.min(length, prevLength);
+			int c = 0;
+			for (int i = 0; i < n && c == 0; i++) {
+				c = (buf.get(offset + i) & 0xff)
+						- (buf.get(prevOffset + i) & 0xff);
+			}
+			if (c < 0 || (c == 0 && length <= prevLength)) {
+				fail(F_UNSORTED, "Dict", end);
+				return false;
+			}
+		}
+		keyOffsets[d] = offset;
+		keyLengths[d] = length;
+		return true;
+	}
+
+	private int streamEnd(ByteBuffer buf, int pos, String type) {
+		// the data is cut by the total limit, not by the buffer end
+		if (limit < buf.limit()) {
+			return fail(F_TOTAL, null, pos);
+		}
+		return fail(F_STREAM_END, type, pos);
+	}
+
+	private int unexpected(String type, int pos, byte b) {
+		failedByte = b;
+		return fail(F_UNEXPECTED, type, pos);
+	}
+
+	private int fail(int failure, String type, int pos) {
+		this.failure = failure;
+		this.failedType = type;
+		this.failedPos = pos;
+		return INVALID;
+	}
+
+	private String type() {
+		return stack[depth - 1] == IN_LIST ? "List" : "Dict";
+	}
+
+	private Reason reason() {
+		switch (failure) {
+		case F_UNEXPECTED:
+			return Reason.UNEXPECTED;
+		case F_STREAM_END:
+			return Reason.STREAM_END;
+		case F_DEPTH:
+			return Reason.DEPTH;
+		case F_STRING_LENGTH:
+			return Reason.STRING_LENGTH;
+		case F_ELEMENTS:
+			return Reason.ELEMENTS;
+		case F_TOTAL:
+			return Reason.TOTAL_LENGTH;
+		default:
+			return Reason.NON_CANONICAL;
+		}
+	}
+
+	private String message() {
+		switch (failure) {
+		case F_UNEXPECTED:
+			return failedType + BC_MSG_EXCEPTION_WRONG_CHAR
+					+ (char) (failedByte & 0xff) + " Bytes left "
+					+ (limit - failedPos);
+		case F_STREAM_END:
+			return BC_MSG_EXCEPTION_STREAM_END + failedType;
+		case F_DEPTH:
+			return "Depth" + BC_MSG_EXCEPTION_LIMIT + limits.maxDepth();
+		case F_STRING_LENGTH:
+			return "String length" + BC_MSG_EXCEPTION_LIMIT
+					+ limits.maxStringLength();
+		case F_ELEMENTS:
+			return "Number of values" + BC_MSG_EXCEPTION_LIMIT
+					+ limits.maxElements();
+		case F_TOTAL:
+			return "Value length" + BC_MSG_EXCEPTION_LIMIT
+					+ limits.maxTotalBytes();
+		case F_UNSORTED:
+			return "Dict keys are not sorted, the key ends at " + failedPos;
+		case F_LEADING_ZERO:
+			return failedType + " has the leading zero at " + (failedPos - 1);
+		default:
+			return "Integer is the negative zero at " + (failedPos - 1);
+		}
+	}
+}
@@ -0,0 +1,476 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_DELEMETER_STR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_POSTFIX_NONSTR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_ARR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_DIC;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_INT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_SUFIX_NEGATIVE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Presents the streaming Bencode writer, that encodes the values as they are
+ * given, without building any tree of objects. The output goes to the
+ * internal byte buffer, that is reused after {@link #reset()}, or through it
+ * to the OutputStream.
+ *
+ * <pre>
+ * BencodeWriter w = new BencodeWriter();
+ * w.startDict().key("interval").value(1800).key("peers").value(compactPeers).end();
+ * w.writeTo(os);
+ * </pre>
+ *
+ * The writer checks the nesting: the dictionary accepts the key and the value
+ * in turn. The order of the keys is up to the caller, the canonical Bencode
+ * requires them sorted. The writer isn't thread safe.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class BencodeWriter {
+
+	// the states of the nesting stack entries
+	private static final byte IN_LIST = 0;
+	private static final byte IN_DICT_KEY = 1;
+	private static final byte IN_DICT_VALUE = 2;
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final int STREAM_CAPACITY = 8192;
+	private static final int INITIAL_DEPTH = 16;
+	// the longest long is "-9223372036854775808"
+	private static final int MAX_LONG_DIGITS = 20;
+
+	private final OutputStream os;
+	private byte[] buf;
+	private int size;
+	private byte[] stack = new byte[INITIAL_DEPTH];
+	private int depth;
+
+	/**
+	 * Creates the writer to the internal buffer, growing as needed.
+	 */
+	public BencodeWriter() {
+		this(null, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Creates the writer to the internal buffer, growing as needed.
+	 *
+	 * @param capacity
+	 *            - the initial capacity of the buffer
+	 */
+	public BencodeWriter(int capacity) {
+		this(null, capacity);
+	}
+
+	/**
+	 * Creates the writer to the stream, through the internal buffer, that is
+	 * written to the stream when it's full and on {@link #flush()}.
+	 *
+	 * @param os
+	 *            - the stream to write to
+	 */
+	public BencodeWriter(OutputStream os) {
+		this(os, STREAM_CAPACITY);
+	}
+
+	private BencodeWriter(OutputStream os, int capacity) {
+		this.os = os;
+		this.buf = new byte[Math.max(capacity, MAX_LONG_DIGITS + 2)];
+	}
+
+	/**
+	 * Begins the dictionary, that is closed by {@link #end()}.
+	 *
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter startDict() throws IOException {
+		beginValue();
+		ensure(1);
+		buf[size++] = BC_PREFIX_DIC;
+		push(IN_DICT_KEY);
+		return this;
+	}
+
+	/**
+	 * Begins the list, that is closed by {@link #end()}.
+	 *
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter startList() throws IOException {
+		beginValue();
+		ensure(1);
+		buf[size++] = BC_PREFIX_ARR;
+		push(IN_LIST);
+		return this;
+	}
+
+	/**
+	 * Ends the current dictionary or list.
+	 *
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter end() throws IOException {
+		if (depth == 0) {
+			throw new IllegalStateException("There is nothing to end");
+		}
+		if (stack[depth - 1] == IN_DICT_VALUE) {
+			throw new IllegalStateException("The key has no value");
+		}
+		depth--;
+		ensure(1);
+		buf[size++] = BC_POSTFIX_NONSTR;
+		return this;
+	}
+
+	/**
+	 * Writes the dictionary key, encoded as UTF-8.
+	 *
+	 * @param key
+	 *            - the key
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter key(String key) throws IOException {
+		beginKey();
+		writeString(key);
+		return this;
+	}
+
+	/**
+	 * Writes the dictionary key.
+	 *
+	 * @param key
+	 *            - the key bytes
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter key(byte[] key) throws IOException {
+		beginKey();
+		writeBytes(key, 0, key.length);
+		return this;
+	}
+
+	/**
+	 * Writes the dictionary key.
+	 *
+	 * @param key
+	 *            - the key bytes
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter key(ByteString key) throws IOException {
+		beginKey();
+		writeBytes(key);
+		return this;
+	}
+
+	/**
+	 * Writes the integer.
+	 *
+	 * @param value
+	 *            - the integer value
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter value(long value) throws IOException {
+		beginValue();
+		ensure(MAX_LONG_DIGITS + 2);
+		buf[size++] = BC_PREFIX_INT;
+		writeLong(value);
+		buf[size++] = BC_POSTFIX_NONSTR;
+		return this;
+	}
+
+	/**
+	 * Writes the integer of any size.
+	 *
+	 * @param value
+	 *            - the integer value
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter value(BigInteger value) throws IOException {
+		if (value.bitLength() < Long.SIZE) {
+			return value(value.longValue());
+		}
+		beginValue();
+		String digits = value.toString();
+		ensure(digits.length() + 2);
+		buf[size++] = BC_PREFIX_INT;
+		for (int i = 0; i < digits.length(); i++) {
+			buf[size++] = (byte) digits.charAt(i);
+		}
+		buf[size++] = BC_POSTFIX_NONSTR;
+		return this;
+	}
+
+	/**
+	 * Writes the byte string, encoded as UTF-8.
+	 *
+	 * @param value
+	 *            - the String value
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter value(String value) throws IOException {
+		beginValue();
+		writeString(value);
+		return this;
+	}
+
+	/**
+	 * Writes the byte string.
+	 *
+	 * @param value
+	 *            - the bytes
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter value(byte[] value) throws IOException {
+		return value(value, 0, value.length);
+	}
+
+	/**
+	 * Writes the byte string made of the part of the array.
+	 *
+	 * @param value
+	 *            - the bytes
+	 * @param offset
+	 *            - the first byte to write
+	 * @param length
+	 *            - the number of bytes to write
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter value(byte[] value, int offset, int length)
+			throws IOException {
+		beginValue();
+		writeBytes(value, offset, length);
+		return this;
+	}
+
+	/**
+	 * Writes the byte string.
+	 *
+	 * @param value
+	 *            - the bytes
+	 * @return - this writer
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public BencodeWriter value(ByteString value) throws IOException {
+		beginValue();
+		writeBytes(value);
+		return this;
+	}
+
+	/**
+	 * @return - the depth of the dictionaries and lists not ended yet
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * @return - the number of bytes in the buffer
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return - the copy of the buffered bytes
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buf, size);
+	}
+
+	/**
+	 * @return - the buffer over the buffered bytes, without copying them, it
+	 *         is valid till the next write or reset
+	 */
+	public ByteBuffer buffer() {
+		return ByteBuffer.wrap(buf, 0, size);
+	}
+
+	/**
+	 * Writes the buffered bytes to the stream.
+	 *
+	 * @param target
+	 *            - the stream to write to
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public void writeTo(OutputStream target) throws IOException {
+		target.write(buf, 0, size);
+	}
+
+	/**
+	 * Writes the buffered bytes to the stream given to the constructor, and
+	 * flushes it.
+	 *
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public void flush() throws IOException {
+		if (os != null) {
+			os.write(buf, 0, size);
+			size = 0;
+			os.flush();
+		}
+	}
+
+	/**
+	 * Drops the buffered bytes and the nesting, keeping the buffer for the
+	 * next use.
+	 *
+	 * @return - this writer
+	 */
+	public BencodeWriter reset() {
+		size = 0;
+		depth = 0;
+		return this;
+	}
+
+	private void beginKey() {
+		if (depth == 0 || stack[depth - 1] != IN_DICT_KEY) {
+			throw new IllegalStateException("The key is expected in the dictionary only");
+		}
+		stack[depth - 1] = IN_DICT_VALUE;
+	}
+
+	private void beginValue() {
+		if (depth > 0) {
+			byte state = stack[depth - 1];
+			if (state == IN_DICT_KEY) {
+				throw new IllegalStateException("The dictionary key is expected");
+			} else if (state == IN_DICT_VALUE) {
+				stack[depth - 1] = IN_DICT_KEY;
+			}
+		}
+	}
+
+	private void push(byte state) {
+		if (depth == stack.length) {
+			stack = Arrays.copyOf(stack, depth << 1);
+		}
+		stack[depth++] = state;
+	}
+
+	private void writeString(String s) throws IOException {
+		int n = s.length();
+		for (int i = 0; i < n; i++) {
+			if (s.charAt(i) >= 0x80) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				writeBytes(bytes, 0, bytes.length);
+				return;
+			}
+		}
+		writeLength(n);
+		int off = 0;
+		while (off < n) {
+			int chunk = Math.min(n - off, room());
+			for (int i = 0; i < chunk; i++) {
+				buf[size++] = (byte) s.charAt(off + i);
+			}
+			off += chunk;
+		}
+	}
+
+	private void writeBytes(byte[] bytes, int offset, int length)
+			throws IOException {
+		writeLength(length);
+		if (os != null && length > buf.length) {
+			flushBuffer();
+			os.write(bytes, offset, length);
+		} else {
+			ensure(length);
+			System.arraycopy(bytes, offset, buf, size, length);
+			size += length;
+		}
+	}
+
+	private void writeBytes(ByteString bytes) throws IOException {
+		int length = bytes.length();
+		writeLength(length);
+		if (os != null && length > buf.length) {
+			flushBuffer();
+			bytes.writeTo(os);
+		} else {
+			ensure(length);
+			bytes.copyTo(buf, size);
+			size += length;
+		}
+	}
+
+	private void writeLength(int length) throws IOException {
+		ensure(MAX_LONG_DIGITS + 1);
+		writeLong(length);
+		buf[size++] = BC_DELEMETER_STR;
+	}
+
+	// the space is ensured by the caller
+	private void writeLong(long value) {
+		if (value < 0) {
+			buf[size++] = BC_SUFIX_NEGATIVE;
+		} else {
+			// keeps it negative, so Long.MIN_VALUE is written as well
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10) {
+			digits++;
+		}
+		int i = size + digits;
+		size = i;
+		do {
+			buf[--i] = (byte) ('0' - (value % 10));
+			value /= 10;
+		} while (value != 0);
+	}
+
+	private int room() throws IOException {
+		if (size == buf.length) {
+			ensure(1);
+		}
+		return buf.length - size;
+	}
+
+	private void ensure(int length) throws IOException {
+		if (buf.length - size >= length) {
+			return;
+		}
+		if (os != null) {
+			flushBuffer();
+			if (buf.length >= length) {
+				return;
+			}
+		}
+		buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + length));
+	}
+
+	private void flushBuffer() throws IOException {
+		os.write(buf, 0, size);
+		size = 0;
+	}
+}
@@ -0,0 +1,391 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Presents the Bencode byte string, that is the read only view over the
+ * source bytes, given by the offset and the length. The bytes are never
+ * copied nor widened to chars, so the binary values (like the SHA-1 hashes of
+ * the 'pieces') survive the decoding untouched. The String is created only
+ * when asked by {@link #toString()}.
+ *
+ * The view shares the source: the content of the buffer (or the array) it was
+ * made of, must not be changed while the view is in use.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class ByteString implements Comparable<ByteString> {
+
+	/** The empty byte string */
+	public static final ByteString EMPTY = new ByteString(new byte[0], null, 0, 0);
+
+	private static final int COPY_CHUNK = 8192;
+
+	// either the heap array or the buffer (direct or mapped) is the source
+	private final byte[] array;
+	private final ByteBuffer buf;
+	private final int offset;
+	private final int length;
+	private int hash;
+	private String string;
+
+	private ByteString(byte[] array, ByteBuffer buf, int offset, int length) {
+		this.array = array;
+		this.buf = buf;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the view over the whole array, without copying it.
+	 *
+	 * @param bytes
+	 *            - the source array
+	 * @return - the byte string
+	 */
+	public static ByteString wrap(byte[] bytes) {
+		return wrap(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Returns the view over the part of the array, without copying it.
+	 *
+	 * @param bytes
+	 *            - the source array
+	 * @param offset
+	 *            - the first byte of the view
+	 * @param length
+	 *            - the length of the view
+	 * @return - the byte string
+	 */
+	public static ByteString wrap(byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > bytes.length - length) {
+			throw new IndexOutOfBoundsException("offset " + offset
+					+ " length " + length + " of " + bytes.length);
+		}
+		return new ByteString(bytes, null, offset, length);
+	}
+
+	/**
+	 * Returns the view over the part of the buffer, without copying it. The
+	 * offset is absolute, the buffer position and limit are ignored and never
+	 * changed, the view of the direct buffer keeps its duplicate for that.
+	 *
+	 * @param buf
+	 *            - the source buffer
+	 * @param offset
+	 *            - the absolute index of the first byte of the view
+	 * @param length
+	 *            - the length of the view
+	 * @return - the byte string
+	 */
+	public static ByteString view(ByteBuffer buf, int offset, int length) {
+		return viewOf(detach(buf), offset, length);
+	}
+
+	/**
+	 * Returns the view over the buffer {@link #detach(ByteBuffer)} has
+	 * returned, so the many views share the single duplicate.
+	 */
+	static ByteString viewOf(ByteBuffer buf, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > buf.capacity() - length) {
+			throw new IndexOutOfBoundsException("offset " + offset
+					+ " length " + length + " of " + buf.capacity());
+		}
+		if (buf.hasArray()) {
+			return new ByteString(buf.array(), null, buf.arrayOffset() + offset,
+					length);
+		}
+		return new ByteString(null, buf, offset, length);
+	}
+
+	/**
+	 * Returns the heap buffer itself, its array is read, or the duplicate of
+	 * the direct (or mapped) buffer over its whole capacity, so the caller
+	 * changing the limit of the buffer afterwards doesn't bound the absolute
+	 * reads of the views.
+	 */
+	static ByteBuffer detach(ByteBuffer buf) {
+		if (buf.hasArray()) {
+			return buf;
+		}
+		ByteBuffer whole = buf.duplicate();
+		BeeCoder.Utils.limit(whole, whole.capacity());
+		return whole;
+	}
+
+	/**
+	 * Returns the UTF-8 encoded String.
+	 *
+	 * @param s
+	 *            - the String to encode
+	 * @return - the byte string
+	 */
+	public static ByteString of(String s) {
+		ByteString bs = wrap(s.getBytes(StandardCharsets.UTF_8));
+		bs.string = s;
+		return bs;
+	}
+
+	/**
+	 * @return - the number of bytes
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @param index
+	 *            - the byte index, from 0 to length - 1
+	 * @return - the byte
+	 */
+	public byte byteAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + " length "
+					+ length);
+		}
+		return array != null ? array[offset + index] : buf.get(offset + index);
+	}
+
+	/**
+	 * Copies the bytes to the array.
+	 *
+	 * @param dst
+	 *            - the array to copy to
+	 * @param dstOffset
+	 *            - the position in the array to copy to
+	 */
+	public void copyTo(byte[] dst, int dstOffset) {
+		if (array != null) {
+			System.arraycopy(array, offset, dst, dstOffset, length);
+		} else {
+			ByteBuffer src = buf.duplicate();
+			BeeCoder.Utils.limit(src, offset + length);
+			BeeCoder.Utils.position(src, offset);
+			src.get(dst, dstOffset, length);
+		}
+	}
+
+	/**
+	 * Copies the bytes to the buffer, from its position, that is moved behind
+	 * them.
+	 *
+	 * @param dst
+	 *            - the buffer to copy to
+	 */
+	public void copyTo(ByteBuffer dst) {
+		if (array != null) {
+			dst.put(array, offset, length);
+		} else {
+			ByteBuffer src = buf.duplicate();
+			BeeCoder.Utils.limit(src, offset + length);
+			BeeCoder.Utils.position(src, offset);
+			dst.put(src);
+		}
+	}
+
+	/**
+	 * @return - the copy of the bytes
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[length];
+		copyTo(bytes, 0);
+		return bytes;
+	}
+
+	/**
+	 * @return - the read only buffer over the bytes, from 0 to the length
+	 */
+	public ByteBuffer asByteBuffer() {
+		if (array != null) {
+			return ByteBuffer.wrap(array, offset, length).slice()
+					.asReadOnlyBuffer();
+		}
+		ByteBuffer src = buf.duplicate();
+		BeeCoder.Utils.limit(src, offset + length);
+		BeeCoder.Utils.position(src, offset);
+		return src.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Updates the digest with the bytes. The heap bytes are digested as they
+	 * are, without copying.
+	 *
+	 * @param md
+	 *            - the digest to update
+	 */
+	public void updateDigest(MessageDigest md) {
+		if (array != null) {
+			// the chunks keep the digest loop short, so it gets compiled
+			for (int off = 0; off < length; off += COPY_CHUNK) {
+				md.update(array, offset + off, Math.min(COPY_CHUNK, length - off));
+			}
+		} else {
+			ByteBuffer src = buf.duplicate();
+			BeeCoder.Utils.limit(src, offset + length);
+			BeeCoder.Utils.position(src, offset);
+			md.update(src);
+		}
+	}
+
+	/**
+	 * Writes the bytes to the stream. The heap bytes are written as they are,
+	 * without copying.
+	 *
+	 * @param os
+	 *            - the stream to write to
+	 * @throws IOException
+	 *             when the stream fails
+	 */
+	public void writeTo(OutputStream os) throws IOException {
+		if (array != null) {
+			os.write(array, offset, length);
+		} else {
+			byte[] chunk = new byte[Math.min(length, COPY_CHUNK)];
+			ByteBuffer src = buf.duplicate();
+			BeeCoder.Utils.limit(src, offset + length);
+			BeeCoder.Utils.position(src, offset);
+			for (int left = length; left > 0; left -= chunk.length) {
+				int n = Math.min(left, chunk.length);
+				src.get(chunk, 0, n);
+				os.write(chunk, 0, n);
+			}
+		}
+	}
+
+	/**
+	 * Returns the String decoded with the charset, it isn't cached.
+	 *
+	 * @param charset
+	 *            - the charset of the bytes
+	 * @return - the decoded String
+	 */
+	public String toString(Charset charset) {
+		if (array != null) {
+			return new String(array, offset, length, charset);
+		}
+		return new String(toByteArray(), charset);
+	}
+
+	/**
+	 * Returns the UTF-8 decoded String, created once on the first call.
+	 */
+	@Override
+	public String toString() {
+		String s = string;
+		if (s == null) {
+			s = toString(StandardCharsets.UTF_8);
+			string = s;
+		}
+		return s;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0 && length > 0) {
+			for (int i = 0; i < length; i++) {
+				h = 31 * h + get(i);
+			}
+			hash = h;
+		}
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ByteString)) {
+			return false;
+		}
+		ByteString other = (ByteString) obj;
+		if (length != other.length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (get(i) != other.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the bytes as unsigned values, that is the order of the
+	 * Bencoded dictionary keys.
+	 */
+	@Override
+	public int compareTo(ByteString other) {
+		int n = Math.min(length, other.length);
+		for (int i = 0; i < n; i++) {
+			int c = (get(i) & 0xff) - (other.get(i) & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length - other.length;
+	}
+
+	/**
+	 * Checks whether the bytes of the buffer are the UTF-8 encoded String,
+	 * the ASCII one is compared without encoding it.
+	 */
+	static boolean equals(ByteBuffer buf, int offset, int length, String s) {
+		int n = s.length();
+		for (int i = 0; i < n; i++) {
+			if (s.charAt(i) >= 0x80) {
+				return view(buf, offset, length).equals(of(s));
+			}
+		}
+		if (n != length) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			if (buf.get(offset + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares to the bytes of the buffer without creating the view.
+	 */
+	boolean contentEquals(ByteBuffer buf, int offset, int length) {
+		if (this.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (get(i) != buf.get(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares to the ASCII string without encoding it, the chars are taken
+	 * as the bytes.
+	 */
+	int compareAscii(String s) {
+		int n = Math.min(length, s.length());
+		for (int i = 0; i < n; i++) {
+			int c = (get(i) & 0xff) - s.charAt(i);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length - s.length();
+	}
+
+	private byte get(int index) {
+		return array != null ? array[offset + index] : buf.get(offset + index);
+	}
+}
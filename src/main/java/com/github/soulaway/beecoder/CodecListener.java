@@ -0,0 +1,58 @@
+package com.github.soulaway.beecoder;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Observes the work of the {@link BencodeDecoder} and the
+ * {@link BencodeEncoder} it's given to, like {@link CodecStats} does. The
+ * codecs without the listener don't measure anything, so the metrics cost
+ * nothing when they aren't needed.
+ *
+ * The methods are called on the decoding (encoding) thread right after the
+ * value is done, so they should be quick, thread safe and should never
+ * throw.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public interface CodecListener {
+
+	/**
+	 * Reports the top-level value decoded.
+	 *
+	 * @param bytes
+	 *            - the encoded length of the value
+	 * @param nanos
+	 *            - the time the decoding took
+	 * @param dicts
+	 *            - the number of the dictionaries decoded
+	 * @param lists
+	 *            - the number of the lists decoded
+	 * @param integers
+	 *            - the number of the integers decoded
+	 * @param strings
+	 *            - the number of the byte strings decoded, the dictionary
+	 *            keys included
+	 * @param maxDepth
+	 *            - the deepest nesting of the dictionaries and lists
+	 */
+	void decoded(int bytes, long nanos, int dicts, int lists, int integers,
+			int strings, int maxDepth);
+
+	/**
+	 * Reports the object encoded.
+	 *
+	 * @param bytes
+	 *            - the length of the encoding
+	 * @param nanos
+	 *            - the time the encoding took
+	 */
+	void encoded(int bytes, long nanos);
+
+	/**
+	 * Reports the data rejected as malformed.
+	 *
+	 * @param reason
+	 *            - the reason it's rejected for
+	 */
+	void rejected(Reason reason);
+}
@@ -0,0 +1,279 @@
+package com.github.soulaway.beecoder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Counts what the codecs do: the values decoded by their types, the bytes
+ * decoded and encoded, the rejections by their reasons, and the histograms of
+ * the time every call takes. The counters are striped, so the codecs running
+ * on many threads don't contend on them, and the stats are published to JMX
+ * as the MXBean.
+ *
+ * <pre>
+ * CodecStats stats = new CodecStats();
+ * BencodeDecoder decoder = new BencodeDecoder(limits, stats);
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(stats,
+ * 		new ObjectName("com.github.soulaway.beecoder:type=CodecStats"));
+ * </pre>
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class CodecStats implements CodecListener, CodecStatsMXBean {
+
+	private final LongAdder decodes = new LongAdder();
+	private final LongAdder decodedBytes = new LongAdder();
+	private final LongAdder dicts = new LongAdder();
+	private final LongAdder lists = new LongAdder();
+	private final LongAdder integers = new LongAdder();
+	private final LongAdder strings = new LongAdder();
+	private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+	private final LongAdder encodes = new LongAdder();
+	private final LongAdder encodedBytes = new LongAdder();
+	private final AtomicLongArray rejections = new AtomicLongArray(
+			Reason.values().length);
+	private final Histogram decodeNanos = new Histogram();
+	private final Histogram encodeNanos = new Histogram();
+
+	@Override
+	public void decoded(int bytes, long nanos, int dicts, int lists,
+			int integers, int strings, int maxDepth) {
+		decodes.increment();
+		decodedBytes.add(bytes);
+		this.dicts.add(dicts);
+		this.lists.add(lists);
+		this.integers.add(integers);
+		this.strings.add(strings);
+		this.maxDepth.accumulate(maxDepth);
+		decodeNanos.record(nanos);
+	}
+
+	@Override
+	public void encoded(int bytes, long nanos) {
+		encodes.increment();
+		encodedBytes.add(bytes);
+		encodeNanos.record(nanos);
+	}
+
+	@Override
+	public void rejected(Reason reason) {
+		rejections.incrementAndGet(reason.ordinal());
+	}
+
+	/**
+	 * @param reason
+	 *            - the reason of the rejections
+	 * @return - the number of the rejections for the reason
+	 */
+	public long rejections(Reason reason) {
+		return rejections.get(reason.ordinal());
+	}
+
+	/**
+	 * @param quantile
+	 *            - the quantile, from 0 to 1
+	 * @return - the decoding time not exceeded by the quantile of the calls,
+	 *         in nanoseconds, rounded up by at most 25%
+	 */
+	public long decodeNanos(double quantile) {
+		return decodeNanos.quantile(quantile);
+	}
+
+	/**
+	 * @param quantile
+	 *            - the quantile, from 0 to 1
+	 * @return - the encoding time not exceeded by the quantile of the calls,
+	 *         in nanoseconds, rounded up by at most 25%
+	 */
+	public long encodeNanos(double quantile) {
+		return encodeNanos.quantile(quantile);
+	}
+
+	@Override
+	public long getDecodeCount() {
+		return decodes.sum();
+	}
+
+	@Override
+	public long getDecodedBytes() {
+		return decodedBytes.sum();
+	}
+
+	@Override
+	public long getDecodedDicts() {
+		return dicts.sum();
+	}
+
+	@Override
+	public long getDecodedLists() {
+		return lists.sum();
+	}
+
+	@Override
+	public long getDecodedIntegers() {
+		return integers.sum();
+	}
+
+	@Override
+	public long getDecodedStrings() {
+		return strings.sum();
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return (int) maxDepth.get();
+	}
+
+	@Override
+	public long getEncodeCount() {
+		return encodes.sum();
+	}
+
+	@Override
+	public long getEncodedBytes() {
+		return encodedBytes.sum();
+	}
+
+	@Override
+	public Map<String, Long> getRejections() {
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		for (Reason reason : Reason.values()) {
+			map.put(reason.name(), rejections(reason));
+		}
+		return map;
+	}
+
+	@Override
+	public long getDecodeNanosP50() {
+		return decodeNanos(0.5);
+	}
+
+	@Override
+	public long getDecodeNanosP99() {
+		return decodeNanos(0.99);
+	}
+
+	@Override
+	public long getDecodeNanosMax() {
+		return decodeNanos.max();
+	}
+
+	@Override
+	public long getEncodeNanosP50() {
+		return encodeNanos(0.5);
+	}
+
+	@Override
+	public long getEncodeNanosP99() {
+		return encodeNanos(0.99);
+	}
+
+	@Override
+	public long getEncodeNanosMax() {
+		return encodeNanos.max();
+	}
+
+	@Override
+	public void reset() {
+		decodes.reset();
+		decodedBytes.reset();
+		dicts.reset();
+		lists.reset();
+		integers.reset();
+		strings.reset();
+		maxDepth.reset();
+		encodes.reset();
+		encodedBytes.reset();
+		for (int i = 0; i < rejections.length(); i++) {
+			rejections.set(i, 0);
+		}
+		decodeNanos.reset();
+		encodeNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "CodecStats [decodes=" + getDecodeCount() + ", decodedBytes="
+				+ getDecodedBytes() + ", encodes=" + getEncodeCount()
+				+ ", encodedBytes=" + getEncodedBytes() + ", rejections="
+				+ getRejections() + "]";
+	}
+
+	/**
+	 * Counts the values in the buckets, four per power of two, so any value
+	 * is reported with the error of 25% at most.
+	 */
+	static final class Histogram {
+
+		private static final int SUB_BITS = 2;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1)
+				* SUB_BUCKETS;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		void record(long value) {
+			long v = Math.max(value, 0);
+			counts.incrementAndGet(bucket(v));
+			max.accumulate(v);
+		}
+
+		long quantile(double quantile) {
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				total += counts.get(i);
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts.get(i);
+				if (seen >= rank && seen > 0) {
+					return Math.min(upperBound(i), max());
+				}
+			}
+			return max();
+		}
+
+		long max() {
+			return max.get();
+		}
+
+		void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts.set(i, 0);
+			}
+			max.reset();
+		}
+
+		// the values below four get the bucket of their own
+		static int bucket(long v) {
+			if (v < SUB_BUCKETS) {
+				return (int) v;
+			}
+			int exp = Long.SIZE - 1 - Long.numberOfLeadingZeros(v);
+			int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		// the largest value of the bucket
+		static long upperBound(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+			long sub = bucket % SUB_BUCKETS;
+			long next = (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS);
+			// the last bucket ends at Long.MAX_VALUE
+			return next <= 0 ? Long.MAX_VALUE : next - 1;
+		}
+	}
+}
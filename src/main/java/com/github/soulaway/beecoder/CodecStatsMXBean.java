@@ -0,0 +1,96 @@
+package com.github.soulaway.beecoder;
+
+import java.util.Map;
+
+/**
+ * Presents the {@link CodecStats} to JMX.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public interface CodecStatsMXBean {
+
+	/**
+	 * @return - the number of the top-level values decoded
+	 */
+	long getDecodeCount();
+
+	/**
+	 * @return - the number of the bytes decoded
+	 */
+	long getDecodedBytes();
+
+	/**
+	 * @return - the number of the dictionaries decoded
+	 */
+	long getDecodedDicts();
+
+	/**
+	 * @return - the number of the lists decoded
+	 */
+	long getDecodedLists();
+
+	/**
+	 * @return - the number of the integers decoded
+	 */
+	long getDecodedIntegers();
+
+	/**
+	 * @return - the number of the byte strings decoded, the keys included
+	 */
+	long getDecodedStrings();
+
+	/**
+	 * @return - the deepest nesting decoded
+	 */
+	int getMaxDepth();
+
+	/**
+	 * @return - the number of the objects encoded
+	 */
+	long getEncodeCount();
+
+	/**
+	 * @return - the number of the bytes encoded
+	 */
+	long getEncodedBytes();
+
+	/**
+	 * @return - the number of the rejections by their reasons
+	 */
+	Map<String, Long> getRejections();
+
+	/**
+	 * @return - the median of the decoding time, in nanoseconds
+	 */
+	long getDecodeNanosP50();
+
+	/**
+	 * @return - the 99th percentile of the decoding time, in nanoseconds
+	 */
+	long getDecodeNanosP99();
+
+	/**
+	 * @return - the longest decoding time, in nanoseconds
+	 */
+	long getDecodeNanosMax();
+
+	/**
+	 * @return - the median of the encoding time, in nanoseconds
+	 */
+	long getEncodeNanosP50();
+
+	/**
+	 * @return - the 99th percentile of the encoding time, in nanoseconds
+	 */
+	long getEncodeNanosP99();
+
+	/**
+	 * @return - the longest encoding time, in nanoseconds
+	 */
+	long getEncodeNanosMax();
+
+	/**
+	 * Sets all the counters to zero.
+	 */
+	void reset();
+}
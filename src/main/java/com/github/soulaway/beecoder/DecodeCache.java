@@ -0,0 +1,279 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the decoded documents by their content, so the same bytes (the info
+ * dictionary received from many peers, the metadata looked up again and
+ * again) are decoded once. The cache keeps the copy of every document it
+ * decodes, the decoded strings are the views over that copy, so the caller
+ * may reuse its buffer right away and the decoded trees, immutable as
+ * {@link BencodeDict} and {@link BencodeList} are, can be shared between
+ * threads.
+ *
+ * <pre>
+ * DecodeCache cache = new DecodeCache(new BencodeDecoder(), 64 &lt;&lt; 20);
+ * BencodeDict info = (BencodeDict) cache.decode(metadata);
+ * </pre>
+ *
+ * The documents are looked up by the hash of their bytes and then compared
+ * byte by byte, so the hash collision never returns the wrong document. The
+ * least recently used documents are evicted, when the estimated size of the
+ * retained ones exceeds the bound. The cache is thread safe, the documents
+ * are decoded out of the lock.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class DecodeCache {
+
+	// the estimated sizes of the decoded objects, the compressed references
+	private static final int OBJECT_SIZE = 16;
+	private static final int REFERENCE_SIZE = 4;
+	private static final int BYTE_STRING_SIZE = 32;
+	private static final int LONG_SIZE = 24;
+	private static final int BIG_INTEGER_SIZE = 56;
+	private static final int CONTAINER_SIZE = 40;
+	// the key, the entry of the map and the array header of the copy
+	private static final int ENTRY_SIZE = 96;
+
+	private final BencodeDecoder decoder;
+	private final long maxBytes;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(
+			16, 0.75f, true);
+	private long retained;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Creates the cache.
+	 *
+	 * @param decoder
+	 *            - decodes the documents missed
+	 * @param maxBytes
+	 *            - the bound of the estimated size of the documents retained,
+	 *            the larger documents are decoded, but never cached
+	 */
+	public DecodeCache(BencodeDecoder decoder, long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Cache size " + maxBytes);
+		}
+		this.decoder = decoder;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the document decoded from the same bytes before, or decodes
+	 * the bytes and caches the document.
+	 *
+	 * @param buf
+	 *            - the single document, from the position to the limit, the
+	 *            position is moved to the limit
+	 * @return - the decoded document, the same instance for the same bytes
+	 *         while it's cached, or null when the buffer is empty
+	 * @throws IOException
+	 *             when data is malformed or anything follows the document
+	 */
+	public Object decode(ByteBuffer buf) throws IOException {
+		if (!buf.hasRemaining()) {
+			return null;
+		}
+		Key probe = new Key(buf.duplicate());
+		Entry hit;
+		synchronized (entries) {
+			hit = entries.get(probe);
+		}
+		if (hit != null) {
+			hits.incrementAndGet();
+			BeeCoder.Utils.position(buf, buf.limit());
+			return hit.value;
+		}
+		misses.incrementAndGet();
+		byte[] copy = new byte[buf.remaining()];
+		buf.get(copy);
+		ByteBuffer src = ByteBuffer.wrap(copy);
+		Object value = decoder.decodeSingle(src);
+		long size = ENTRY_SIZE + copy.length + retained(value);
+		if (size <= maxBytes) {
+			put(new Key(ByteBuffer.wrap(copy), probe.hash), new Entry(value,
+					size));
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the document decoded from the same bytes before, or decodes
+	 * the bytes and caches the document.
+	 *
+	 * @param bytes
+	 *            - the single document
+	 * @return - the decoded document, the same instance for the same bytes
+	 *         while it's cached, or null when the array is empty
+	 * @throws IOException
+	 *             when data is malformed or anything follows the document
+	 */
+	public Object decode(byte[] bytes) throws IOException {
+		return decode(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Drops all the documents, the counters are kept.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			retained = 0;
+		}
+	}
+
+	/**
+	 * @return - the number of the documents cached
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return - the estimated size of the documents cached
+	 */
+	public long retainedBytes() {
+		synchronized (entries) {
+			return retained;
+		}
+	}
+
+	/**
+	 * @return - the number of the documents returned from the cache
+	 */
+	public long hits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return - the number of the documents decoded
+	 */
+	public long misses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return - the number of the documents evicted to keep the bound
+	 */
+	public long evictions() {
+		return evictions.get();
+	}
+
+	private void put(Key key, Entry entry) {
+		synchronized (entries) {
+			Entry old = entries.put(key, entry);
+			retained += entry.size - (old == null ? 0 : old.size);
+			Iterator<Entry> it = entries.values().iterator();
+			while (retained > maxBytes) {
+				// the least recently used goes first
+				retained -= it.next().size;
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	// the estimated size of the decoded tree, the source bytes excluded
+	private static long retained(Object value) {
+		if (value instanceof ByteString) {
+			return BYTE_STRING_SIZE;
+		} else if (value instanceof Integer) {
+			return OBJECT_SIZE;
+		} else if (value instanceof Long) {
+			return LONG_SIZE;
+		} else if (value instanceof BigInteger) {
+			return BIG_INTEGER_SIZE
+					+ (((BigInteger) value).bitLength() >>> 3);
+		} else if (value instanceof BencodeDict) {
+			BencodeDict dict = (BencodeDict) value;
+			int n = dict.size();
+			long size = CONTAINER_SIZE + 3L * (OBJECT_SIZE + n * REFERENCE_SIZE);
+			for (int i = 0; i < n; i++) {
+				size += retained(dict.keyAt(i)) + retained(dict.valueAt(i));
+			}
+			return size;
+		} else {
+			List<?> list = (List<?>) value;
+			long size = CONTAINER_SIZE + OBJECT_SIZE + list.size()
+					* REFERENCE_SIZE;
+			for (Object o : list) {
+				size += retained(o);
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Compares the documents by their bytes, the hash is computed once.
+	 */
+	private static final class Key {
+
+		private final ByteBuffer bytes;
+		private final int hash;
+
+		Key(ByteBuffer bytes) {
+			this(bytes, hash(bytes));
+		}
+
+		Key(ByteBuffer bytes, int hash) {
+			this.bytes = bytes;
+			this.hash = hash;
+		}
+
+		// mixes the eight bytes at once, the order of the buffer is fixed
+		private static int hash(ByteBuffer buf) {
+			ByteBuffer b = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+			int i = b.position();
+			int end = b.limit();
+			long h = end - i;
+			for (; i <= end - 8; i += 8) {
+				h = Long.rotateLeft(h ^ b.getLong(i) * 0x9E3779B97F4A7C15L, 31)
+						* 0xBF58476D1CE4E5B9L;
+			}
+			for (; i < end; i++) {
+				h = (h ^ b.get(i)) * 0x94D049BB133111EBL;
+			}
+			h ^= h >>> 29;
+			return (int) (h ^ h >>> 32);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).hash == hash
+					&& ((Key) obj).bytes.equals(bytes);
+		}
+	}
+
+	/**
+	 * The document cached and its estimated size.
+	 */
+	private static final class Entry {
+
+		final Object value;
+		final long size;
+
+		Entry(Object value, long size) {
+			this.value = value;
+			this.size = size;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_DELEMETER_STR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_LIMIT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_WRONG_CHAR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_POSTFIX_NONSTR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_ARR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_DIC;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_INT;
+import static com.github.soulaway.beecoder.BeeCoder.BC_SUFIX_NEGATIVE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Presents the push style decoder for the data, that comes in the chunks of
+ * any size, like the reads of the non-blocking socket. The chunks are scanned
+ * as they arrive, the scan state is kept between the calls, so the incomplete
+ * value just waits for more input instead of failing. Every top-level value
+ * is decoded and passed to the consumer as soon as its last byte arrives.
+ *
+ * <pre>
+ * IncrementalDecoder d = new IncrementalDecoder(msg -&gt; handle(msg));
+ * while (channel.read(buf) &gt; 0) {
+ * 	buf.flip();
+ * 	d.feed(buf);
+ * 	buf.clear();
+ * }
+ * </pre>
+ *
+ * The decoded values own their bytes, they don't share the fed chunks nor the
+ * internal buffer. The decoder isn't thread safe, after the malformed data is
+ * reported it has to be {@link #reset()}.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class IncrementalDecoder {
+
+	// the scanner states
+	private static final int S_VALUE = 0;
+	private static final int S_INT = 1;
+	private static final int S_LENGTH = 2;
+	private static final int S_STRING = 3;
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	private final BencodeDecoder decoder;
+	private final Consumer<Object> consumer;
+	private final int maxValueLength;
+	private final int maxDepth;
+
+	private byte[] pending = new byte[INITIAL_CAPACITY];
+	private int size;
+	private int valueStart;
+	private int scanPos;
+	private int state = S_VALUE;
+	private int depth;
+	private int length;
+
+	/**
+	 * Creates the decoder with the {@link BencodeLimits#DEFAULT} limits.
+	 *
+	 * @param consumer
+	 *            - receives the decoded top-level values in order
+	 */
+	public IncrementalDecoder(Consumer<Object> consumer) {
+		this(BencodeLimits.DEFAULT, consumer);
+	}
+
+	/**
+	 * Creates the decoder with the limits. The total bytes and the depth
+	 * limits are checked by the scan, so the value exceeding them is reported
+	 * as malformed before it is buffered.
+	 *
+	 * @param limits
+	 *            - the limits every decoded value is checked against
+	 * @param consumer
+	 *            - receives the decoded top-level values in order
+	 */
+	public IncrementalDecoder(BencodeLimits limits, Consumer<Object> consumer) {
+		this.decoder = new BencodeDecoder(limits);
+		this.maxValueLength = limits.maxTotalBytes();
+		this.maxDepth = limits.maxDepth();
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Takes all the bytes remaining in the chunk, and decodes the values
+	 * that are complete.
+	 *
+	 * @param chunk
+	 *            - the next chunk of the data, its position is moved to the
+	 *            limit
+	 * @return - the number of the values passed to the consumer
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public int feed(ByteBuffer chunk) throws IOException {
+		int n = chunk.remaining();
+		ensure(n);
+		chunk.get(pending, size, n);
+		size += n;
+		return scan();
+	}
+
+	/**
+	 * Takes the part of the array, and decodes the values that are complete.
+	 *
+	 * @param chunk
+	 *            - the array with the next chunk of the data
+	 * @param offset
+	 *            - the first byte of the chunk
+	 * @param length
+	 *            - the length of the chunk
+	 * @return - the number of the values passed to the consumer
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public int feed(byte[] chunk, int offset, int length) throws IOException {
+		ensure(length);
+		System.arraycopy(chunk, offset, pending, size, length);
+		size += length;
+		return scan();
+	}
+
+	/**
+	 * @return - true when the incomplete value waits for more input
+	 */
+	public boolean needsInput() {
+		return size > valueStart;
+	}
+
+	/**
+	 * @return - the number of bytes of the incomplete value buffered so far
+	 */
+	public int pending() {
+		return size - valueStart;
+	}
+
+	/**
+	 * Drops the incomplete value and the scan state.
+	 */
+	public void reset() {
+		size = 0;
+		valueStart = 0;
+		scanPos = 0;
+		state = S_VALUE;
+		depth = 0;
+		length = 0;
+	}
+
+	private int scan() throws IOException {
+		int values = 0;
+		byte[] b = pending;
+		while (scanPos < size) {
+			switch (state) {
+			case S_VALUE: {
+				byte c = b[scanPos++];
+				if (c >= '0' && c <= '9') {
+					length = c - '0';
+					state = S_LENGTH;
+				} else if (c == BC_PREFIX_INT) {
+					state = S_INT;
+				} else if (c == BC_PREFIX_ARR || c == BC_PREFIX_DIC) {
+					if (depth == maxDepth) {
+						throw new BencodeException(Reason.DEPTH, "Depth"
+								+ BC_MSG_EXCEPTION_LIMIT + maxDepth);
+					}
+					depth++;
+				} else if (c == BC_POSTFIX_NONSTR && depth > 0) {
+					depth--;
+				} else {
+					throw unexpected("Object", c);
+				}
+				break;
+			}
+			case S_INT: {
+				byte c = b[scanPos++];
+				if (c == BC_POSTFIX_NONSTR) {
+					state = S_VALUE;
+				} else if ((c < '0' || c > '9') && c != BC_SUFIX_NEGATIVE) {
+					throw unexpected("Integer", c);
+				}
+				break;
+			}
+			case S_LENGTH: {
+				byte c = b[scanPos++];
+				if (c == BC_DELEMETER_STR) {
+					state = length == 0 ? S_VALUE : S_STRING;
+				} else if (c >= '0' && c <= '9') {
+					int d = c - '0';
+					if (length > (maxValueLength - d) / 10) {
+						throw tooLong();
+					}
+					length = length * 10 + d;
+				} else {
+					throw unexpected("String", c);
+				}
+				break;
+			}
+			default: {
+				int n = Math.min(length, size - scanPos);
+				scanPos += n;
+				length -= n;
+				if (length == 0) {
+					state = S_VALUE;
+				}
+			}
+			}
+			if (state == S_VALUE && depth == 0) {
+				// the top-level value is complete
+				Object obj = decoder.decode(Arrays.copyOfRange(b, valueStart,
+						scanPos));
+				valueStart = scanPos;
+				values++;
+				consumer.accept(obj);
+			} else if (scanPos - valueStart > maxValueLength) {
+				throw tooLong();
+			}
+		}
+		compact();
+		return values;
+	}
+
+	private void compact() {
+		if (valueStart > 0) {
+			System.arraycopy(pending, valueStart, pending, 0, size - valueStart);
+			size -= valueStart;
+			scanPos -= valueStart;
+			valueStart = 0;
+		}
+	}
+
+	private void ensure(int length) {
+		if (pending.length - size < length) {
+			compact();
+			if (pending.length - size < length) {
+				pending = Arrays.copyOf(pending,
+						Math.max(pending.length << 1, size + length));
+			}
+		}
+	}
+
+	private BencodeException unexpected(String type, byte c) {
+		return new BencodeException(Reason.UNEXPECTED, type
+				+ BC_MSG_EXCEPTION_WRONG_CHAR + (char) (c & 0xff)
+				+ " Bytes left " + (size - scanPos));
+	}
+
+	private BencodeException tooLong() {
+		return new BencodeException(Reason.TOTAL_LENGTH, "Value length"
+				+ BC_MSG_EXCEPTION_LIMIT + maxValueLength);
+	}
+}
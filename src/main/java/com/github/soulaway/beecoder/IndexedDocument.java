@@ -0,0 +1,376 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+import com.github.soulaway.beecoder.BencodeReader.Token;
+
+/**
+ * Presents the Bencoded value indexed by the single pass of the
+ * {@link BencodeReader}: the index is the flat int array of the token
+ * offsets, types and subtree ends, nothing else is allocated. The values are
+ * materialized only when they are accessed, so reading the few fields of the
+ * large document costs the fields touched, not the whole document.
+ *
+ * <pre>
+ * IndexedDocument doc = decoder.index(torrent);
+ * long length = doc.root().get("info").get("files").get(3).get("length").longValue();
+ * String name = doc.root().get("info").get("name").stringValue();
+ * </pre>
+ *
+ * The byte strings are the views over the source buffer, so its content must
+ * stay unchanged while the document is in use. The document is immutable and
+ * can be shared between threads.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class IndexedDocument {
+
+	// the fields of the index entry
+	private static final int TYPE = 0;
+	private static final int START = 1;
+	// the number of the children (keys and values) or the payload length
+	private static final int COUNT = 2;
+	// the index of the entry behind the subtree
+	private static final int NEXT = 3;
+	private static final int END = 4;
+	private static final int STRIDE = 5;
+
+	// the types of the entries
+	private static final int T_DICT = 0;
+	private static final int T_LIST = 1;
+	private static final int T_INT = 2;
+	private static final int T_BYTES = 3;
+
+	private static final String[] TYPE_NAMES = { "Dict", "List", "Integer",
+			"String" };
+
+	private static final int INITIAL_ENTRIES = 64;
+	private static final int INITIAL_DEPTH = 16;
+
+	private final ByteBuffer buf;
+	private final BencodeLimits limits;
+	private final int[] index;
+	private final int entries;
+
+	private IndexedDocument(ByteBuffer buf, BencodeLimits limits, int[] index,
+			int entries) {
+		this.buf = buf;
+		this.limits = limits;
+		this.index = index;
+		this.entries = entries;
+	}
+
+	/**
+	 * Indexes the value the next token of the reader begins.
+	 *
+	 * @param r
+	 *            - the reader positioned before the value
+	 * @param limits
+	 *            - the limits of the reader, used to materialize the values
+	 * @return - the indexed document
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	static IndexedDocument index(BencodeReader r, BencodeLimits limits)
+			throws IOException {
+		int[] index = new int[INITIAL_ENTRIES * STRIDE];
+		int[] open = new int[INITIAL_DEPTH];
+		int depth = 0;
+		int n = 0;
+		do {
+			int start = r.position();
+			Token t = r.next();
+			if (t == Token.END) {
+				int e = open[--depth] * STRIDE;
+				index[e + NEXT] = n;
+				index[e + END] = r.position();
+				continue;
+			}
+			if (n * STRIDE == index.length) {
+				index = Arrays.copyOf(index, index.length << 1);
+			}
+			int e = n * STRIDE;
+			index[e + START] = start;
+			if (depth > 0) {
+				index[open[depth - 1] * STRIDE + COUNT]++;
+			}
+			switch (t) {
+			case START_DICT:
+			case START_LIST:
+				index[e + TYPE] = t == Token.START_DICT ? T_DICT : T_LIST;
+				if (depth == open.length) {
+					open = Arrays.copyOf(open, depth << 1);
+				}
+				open[depth++] = n;
+				break;
+			case INT:
+				index[e + TYPE] = T_INT;
+				index[e + NEXT] = n + 1;
+				index[e + END] = r.position();
+				break;
+			case KEY:
+			case BYTES:
+				index[e + TYPE] = T_BYTES;
+				index[e + COUNT] = r.valueLength();
+				index[e + NEXT] = n + 1;
+				index[e + END] = r.position();
+				break;
+			default:
+				throw new BencodeException(Reason.UNEXPECTED,
+						"Value expected, but " + t);
+			}
+			n++;
+		} while (depth > 0);
+		return new IndexedDocument(r.source(), limits, index, n);
+	}
+
+	/**
+	 * @return - the top-level value
+	 */
+	public Node root() {
+		return new Node(0);
+	}
+
+	/**
+	 * @return - the number of the index entries (the values and the keys)
+	 */
+	public int entries() {
+		return entries;
+	}
+
+	/**
+	 * Presents the value of the document, that reads the index only till
+	 * it's materialized.
+	 */
+	public final class Node {
+
+		private final int i;
+
+		private Node(int i) {
+			this.i = i;
+		}
+
+		/**
+		 * @return - true when the value is the dictionary
+		 */
+		public boolean isDict() {
+			return type() == T_DICT;
+		}
+
+		/**
+		 * @return - true when the value is the list
+		 */
+		public boolean isList() {
+			return type() == T_LIST;
+		}
+
+		/**
+		 * @return - true when the value is the integer
+		 */
+		public boolean isInteger() {
+			return type() == T_INT;
+		}
+
+		/**
+		 * @return - true when the value is the byte string
+		 */
+		public boolean isBytes() {
+			return type() == T_BYTES;
+		}
+
+		/**
+		 * @return - the number of the dictionary entries, the list elements
+		 *         or the string bytes
+		 */
+		public int size() {
+			int type = type();
+			check(type != T_INT, "Dict, List or String");
+			int count = index[i * STRIDE + COUNT];
+			return type == T_DICT ? count >> 1 : count;
+		}
+
+		/**
+		 * Looks the dictionary key up, skipping the values of the other keys
+		 * by the index.
+		 *
+		 * @param key
+		 *            - the key, encoded as UTF-8
+		 * @return - the value of the key or null when there is no such key
+		 */
+		public Node get(String key) {
+			check(type() == T_DICT, "Dict");
+			int count = index[i * STRIDE + COUNT] >> 1;
+			int k = i + 1;
+			for (int c = 0; c < count; c++) {
+				int e = k * STRIDE;
+				int length = index[e + COUNT];
+				if (ByteString.equals(buf, index[e + END] - length, length, key)) {
+					return new Node(k + 1);
+				}
+				k = index[(k + 1) * STRIDE + NEXT];
+			}
+			return null;
+		}
+
+		/**
+		 * Looks the dictionary key up, skipping the values of the other keys
+		 * by the index.
+		 *
+		 * @param key
+		 *            - the key
+		 * @return - the value of the key or null when there is no such key
+		 */
+		public Node get(ByteString key) {
+			check(type() == T_DICT, "Dict");
+			int count = index[i * STRIDE + COUNT] >> 1;
+			int k = i + 1;
+			for (int c = 0; c < count; c++) {
+				if (new Node(k).bytesValue().equals(key)) {
+					return new Node(k + 1);
+				}
+				k = index[(k + 1) * STRIDE + NEXT];
+			}
+			return null;
+		}
+
+		/**
+		 * Gets the list element, skipping the elements before it by the
+		 * index.
+		 *
+		 * @param n
+		 *            - the index of the element
+		 * @return - the element
+		 * @throws IndexOutOfBoundsException
+		 *             when there is no such element
+		 */
+		public Node get(int n) {
+			check(type() == T_LIST, "List");
+			int count = index[i * STRIDE + COUNT];
+			if (n < 0 || n >= count) {
+				throw new IndexOutOfBoundsException("Index: " + n + ", Size: "
+						+ count);
+			}
+			int k = i + 1;
+			for (int c = 0; c < n; c++) {
+				k = index[k * STRIDE + NEXT];
+			}
+			return new Node(k);
+		}
+
+		/**
+		 * @return - the integer value
+		 * @throws ArithmeticException
+		 *             when the value doesn't fit into the long
+		 */
+		public long longValue() {
+			check(type() == T_INT, "Integer");
+			return reader().longValue();
+		}
+
+		/**
+		 * @return - the integer value, as the narrowest of Integer, Long and
+		 *         BigInteger it fits into
+		 */
+		public Number numberValue() {
+			check(type() == T_INT, "Integer");
+			return reader().numberValue();
+		}
+
+		/**
+		 * @return - the view over the byte string value
+		 */
+		public ByteString bytesValue() {
+			check(type() == T_BYTES, "String");
+			int e = i * STRIDE;
+			int length = index[e + COUNT];
+			return ByteString.viewOf(buf, index[e + END] - length, length);
+		}
+
+		/**
+		 * @return - the byte string value decoded as UTF-8
+		 */
+		public String stringValue() {
+			return bytesValue().toString();
+		}
+
+		/**
+		 * @return - the absolute index of the first byte of the encoded value
+		 */
+		public int rawOffset() {
+			return index[i * STRIDE + START];
+		}
+
+		/**
+		 * @return - the length of the encoded value
+		 */
+		public int rawLength() {
+			int e = i * STRIDE;
+			return index[e + END] - index[e + START];
+		}
+
+		/**
+		 * @return - the view over the encoded value
+		 */
+		public ByteString raw() {
+			return ByteString.viewOf(buf, rawOffset(), rawLength());
+		}
+
+		/**
+		 * Decodes the value with everything nested into it, the way
+		 * {@link BencodeDecoder} does.
+		 *
+		 * @return - the decoded object
+		 */
+		public Object materialize() {
+			try {
+				return new BencodeDecoder(limits).decode(reader(value()), null);
+			} catch (IOException e) {
+				// the value has been read once already
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return TYPE_NAMES[type()] + " at " + rawOffset() + ", "
+					+ rawLength() + " bytes";
+		}
+
+		private int type() {
+			return index[i * STRIDE + TYPE];
+		}
+
+		// the reader, that has read the INT token of the value
+		private BencodeReader reader() {
+			BencodeReader r = reader(value());
+			try {
+				r.next();
+			} catch (IOException e) {
+				// the value has been read once already
+				throw new IllegalStateException(e);
+			}
+			return r;
+		}
+
+		private BencodeReader reader(ByteBuffer value) {
+			return new BencodeReader(value, limits);
+		}
+
+		private ByteBuffer value() {
+			ByteBuffer value = buf.duplicate();
+			BeeCoder.Utils.limit(value, index[i * STRIDE + END]);
+			BeeCoder.Utils.position(value, rawOffset());
+			return value;
+		}
+
+		private void check(boolean state, String expected) {
+			if (!state) {
+				throw new IllegalStateException("The value isn't " + expected
+						+ ", but " + TYPE_NAMES[type()]);
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the info hash of the torrent: the SHA-1 (BitTorrent v1) or the
+ * SHA-256 (v2) digest of the info dictionary, exactly as it is encoded in the
+ * torrent. The encoded bytes are digested right in the source buffer, they
+ * are neither decoded nor encoded again, so the non canonical torrents get
+ * the same hash the other clients compute.
+ *
+ * <pre>
+ * byte[] v1 = InfoHash.sha1(torrent);
+ * // or, when the torrent is decoded anyway
+ * BencodeDict info = ((BencodeDict) decoder.decode(torrent)).getDict("info");
+ * byte[] v2 = InfoHash.sha256(info);
+ * </pre>
+ *
+ * The digests are cached per thread, so the methods are thread safe.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class InfoHash {
+
+	private static final String INFO_KEY = "info";
+
+	private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+
+		@Override
+		protected MessageDigest initialValue() {
+			return digest("SHA-1");
+		}
+	};
+
+	private static final ThreadLocal<MessageDigest> SHA256 = new ThreadLocal<MessageDigest>() {
+
+		@Override
+		protected MessageDigest initialValue() {
+			return digest("SHA-256");
+		}
+	};
+
+	private InfoHash() {
+	}
+
+	/**
+	 * Finds the info dictionary of the torrent, skipping the other keys
+	 * without decoding them.
+	 *
+	 * @param torrent
+	 *            - the encoded torrent, from its position to its limit, the
+	 *            position isn't changed
+	 * @return - the view over the encoded info dictionary
+	 * @throws IOException
+	 *             when data is malformed or there is no info dictionary
+	 */
+	public static ByteString infoSpan(ByteBuffer torrent) throws IOException {
+		BencodeReader r = new BencodeReader(torrent, BencodeLimits.UNLIMITED);
+		if (r.next() != BencodeReader.Token.START_DICT) {
+			throw new IOException("The torrent is not the dictionary, but "
+					+ r.token());
+		}
+		if (!r.seekKey(INFO_KEY)) {
+			throw new IOException("The torrent has no info dictionary");
+		}
+		int start = r.position();
+		int end = r.skipValue();
+		if (torrent.get(start) != BeeCoder.BC_PREFIX_DIC) {
+			throw new IOException("The torrent info is not the dictionary");
+		}
+		return ByteString.view(torrent, start, end - start);
+	}
+
+	/**
+	 * @param torrent
+	 *            - the encoded torrent, the position isn't changed
+	 * @return - the SHA-1 info hash of the v1 torrent
+	 * @throws IOException
+	 *             when data is malformed or there is no info dictionary
+	 */
+	public static byte[] sha1(ByteBuffer torrent) throws IOException {
+		return digest(SHA1.get(), infoSpan(torrent));
+	}
+
+	/**
+	 * @param torrent
+	 *            - the encoded torrent, the position isn't changed
+	 * @return - the SHA-256 info hash of the v2 torrent
+	 * @throws IOException
+	 *             when data is malformed or there is no info dictionary
+	 */
+	public static byte[] sha256(ByteBuffer torrent) throws IOException {
+		return digest(SHA256.get(), infoSpan(torrent));
+	}
+
+	/**
+	 * @param info
+	 *            - the decoded info dictionary
+	 * @return - the SHA-1 digest of the bytes it is decoded from
+	 */
+	public static byte[] sha1(BencodeDict info) {
+		return digest(SHA1.get(), info.raw());
+	}
+
+	/**
+	 * @param info
+	 *            - the decoded info dictionary
+	 * @return - the SHA-256 digest of the bytes it is decoded from
+	 */
+	public static byte[] sha256(BencodeDict info) {
+		return digest(SHA256.get(), info.raw());
+	}
+
+	private static byte[] digest(MessageDigest md, ByteString raw) {
+		raw.updateDigest(md);
+		return md.digest();
+	}
+
+	private static MessageDigest digest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-1 and SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,819 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import com.github.soulaway.beecoder.BencodeReader.Token;
+
+/**
+ * Transcodes the Bencode to JSON and back as the stream of the tokens, no
+ * value is decoded to the object on the way: the memory used is the nesting
+ * stack and the buffer of the single string, whatever the size of the data
+ * is. The file is transcoded from the memory mapping, so the resume data dump
+ * of any size is printed with the small heap.
+ *
+ * <pre>
+ * JsonTranscoder json = new JsonTranscoder(JsonTranscoder.Binary.HEX);
+ * json.toJson(Paths.get("resume.dat"), System.out);
+ * </pre>
+ *
+ * The byte strings (and the keys) are JSON strings, the way the
+ * {@link Binary} mode chooses. The integers of any length are JSON numbers.
+ * The top-level values are written one per line. Back to Bencode, true and
+ * false are the integers 1 and 0, null and the fractional numbers are
+ * rejected, the keys are written in the order they are given. The
+ * transcoder has no state and can be shared between threads.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class JsonTranscoder {
+
+	/**
+	 * How the byte strings are written to JSON.
+	 */
+	public enum Binary {
+		/**
+		 * Every byte is the char of the same code (ISO-8859-1), so any bytes
+		 * go to JSON and back unchanged, but the UTF-8 text is hard to read
+		 */
+		LATIN1,
+		/**
+		 * The valid UTF-8 strings are the text, the other ones are in
+		 * hexadecimal, that comes back to Bencode as the text
+		 */
+		HEX,
+		/**
+		 * The valid UTF-8 strings are the text, the other ones are in Base64,
+		 * that comes back to Bencode as the text
+		 */
+		BASE64
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int INITIAL_DEPTH = 16;
+	private static final int MAX_SAFE_DIGITS = 18;
+
+	private static final byte[] HEX_DIGITS = "0123456789abcdef"
+			.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] BASE64_DIGITS = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+			+ "abcdefghijklmnopqrstuvwxyz0123456789+/")
+			.getBytes(StandardCharsets.US_ASCII);
+
+	// the states of the JSON parser
+	private static final int S_VALUE = 0;
+	private static final int S_FIRST_VALUE = 1;
+	private static final int S_FIRST_KEY = 2;
+	private static final int S_KEY = 3;
+	private static final int S_AFTER_VALUE = 4;
+
+	private final Binary binary;
+	private final BencodeLimits limits;
+
+	/**
+	 * Creates the transcoder with the {@link BencodeLimits#DEFAULT} limits.
+	 *
+	 * @param binary
+	 *            - how the byte strings are written to JSON
+	 */
+	public JsonTranscoder(Binary binary) {
+		this(binary, BencodeLimits.DEFAULT);
+	}
+
+	/**
+	 * Creates the transcoder.
+	 *
+	 * @param binary
+	 *            - how the byte strings are written to JSON
+	 * @param limits
+	 *            - the limits the Bencoded values and the JSON strings and
+	 *            nesting are checked against
+	 */
+	public JsonTranscoder(Binary binary, BencodeLimits limits) {
+		this.binary = binary;
+		this.limits = limits;
+	}
+
+	/*** Bencode to JSON ***/
+
+	/**
+	 * Writes the Bencoded values of the buffer as JSON, one per line.
+	 *
+	 * @param src
+	 *            - the Bencoded values, from the position to the limit, the
+	 *            position is moved to the limit
+	 * @param out
+	 *            - the stream to write to, flushed, but not closed
+	 * @return - the number of the values
+	 * @throws IOException
+	 *             when data is malformed or the stream fails
+	 */
+	public int toJson(ByteBuffer src, OutputStream out) throws IOException {
+		BencodeReader r = new BencodeReader(src, limits);
+		Out o = new Out(out);
+		// the closing bytes and whether nothing is written yet, per depth
+		byte[] closing = new byte[INITIAL_DEPTH];
+		boolean[] first = new boolean[INITIAL_DEPTH];
+		boolean afterKey = false;
+		int values = 0;
+		while (true) {
+			Token t = r.next();
+			if (t == Token.EOF) {
+				break;
+			}
+			int depth = r.depth();
+			if (t == Token.END) {
+				o.put(closing[depth]);
+			} else {
+				boolean start = t == Token.START_DICT || t == Token.START_LIST;
+				// the depth of the container the token is in
+				int d = start ? depth - 1 : depth;
+				if (afterKey) {
+					afterKey = false;
+				} else if (d > 0) {
+					if (!first[d - 1]) {
+						o.put((byte) ',');
+					}
+					first[d - 1] = false;
+				}
+				writeToken(r, t, o);
+				if (t == Token.KEY) {
+					o.put((byte) ':');
+					afterKey = true;
+				} else if (start) {
+					if (depth > closing.length) {
+						closing = Arrays.copyOf(closing, closing.length << 1);
+						first = Arrays.copyOf(first, first.length << 1);
+					}
+					closing[depth - 1] = (byte) (t == Token.START_DICT ? '}'
+							: ']');
+					first[depth - 1] = true;
+				}
+			}
+			if (depth == 0) {
+				o.put((byte) '\n');
+				values++;
+			}
+		}
+		BeeCoder.Utils.position(src, r.position());
+		o.flush();
+		return values;
+	}
+
+	/**
+	 * Writes the Bencoded values of the file as JSON, one per line, reading
+	 * the file by memory mapping it.
+	 *
+	 * @param src
+	 *            - the file of the Bencoded values
+	 * @param out
+	 *            - the stream to write to, flushed, but not closed
+	 * @return - the number of the values
+	 * @throws IOException
+	 *             when the file can't be read, data is malformed or the
+	 *             stream fails
+	 */
+	public int toJson(Path src, OutputStream out) throws IOException {
+		return toJson(BeeCoder.Utils.map(src), out);
+	}
+
+	/**
+	 * @param src
+	 *            - the single Bencoded value
+	 * @return - the value as JSON, without the line end
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public String toJson(byte[] src) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(
+				src.length * 2);
+		toJson(ByteBuffer.wrap(src), bos);
+		String json = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+		return json.endsWith("\n") ? json.substring(0, json.length() - 1)
+				: json;
+	}
+
+	private void writeToken(BencodeReader r, Token t, Out o)
+			throws IOException {
+		switch (t) {
+		case START_DICT:
+			o.put((byte) '{');
+			break;
+		case START_LIST:
+			o.put((byte) '[');
+			break;
+		case INT:
+			// the digits of the value, the source may have the leading zeros
+			// or "-0", that JSON doesn't allow
+			if (r.isLongValue()) {
+				o.putLong(r.longValue());
+			} else {
+				String digits = r.bigIntegerValue().toString();
+				for (int i = 0; i < digits.length(); i++) {
+					o.put((byte) digits.charAt(i));
+				}
+			}
+			break;
+		default:
+			writeString(r.buffer(), r.valueOffset(), r.valueLength(), o);
+		}
+	}
+
+	private void writeString(ByteBuffer buf, int offset, int length, Out o)
+			throws IOException {
+		o.put((byte) '"');
+		int end = offset + length;
+		if (binary == Binary.LATIN1) {
+			for (int i = offset; i < end; i++) {
+				int b = buf.get(i) & 0xff;
+				if (b >= 0x80) {
+					o.put((byte) (0xc0 | b >>> 6));
+					o.put((byte) (0x80 | b & 0x3f));
+				} else {
+					writeAscii(b, o);
+				}
+			}
+		} else if (isUtf8(buf, offset, end)) {
+			for (int i = offset; i < end; i++) {
+				int b = buf.get(i) & 0xff;
+				if (b >= 0x80) {
+					o.put((byte) b);
+				} else {
+					writeAscii(b, o);
+				}
+			}
+		} else if (binary == Binary.HEX) {
+			for (int i = offset; i < end; i++) {
+				int b = buf.get(i) & 0xff;
+				o.put(HEX_DIGITS[b >>> 4]);
+				o.put(HEX_DIGITS[b & 0xf]);
+			}
+		} else {
+			writeBase64(buf, offset, end, o);
+		}
+		o.put((byte) '"');
+	}
+
+	private static void writeAscii(int b, Out o) throws IOException {
+		if (b == '"' || b == '\\') {
+			o.put((byte) '\\');
+			o.put((byte) b);
+		} else if (b < 0x20) {
+			o.put((byte) '\\');
+			o.put((byte) 'u');
+			o.put((byte) '0');
+			o.put((byte) '0');
+			o.put(HEX_DIGITS[b >>> 4]);
+			o.put(HEX_DIGITS[b & 0xf]);
+		} else {
+			o.put((byte) b);
+		}
+	}
+
+	private static void writeBase64(ByteBuffer buf, int offset, int end, Out o)
+			throws IOException {
+		int i = offset;
+		for (; i + 2 < end; i += 3) {
+			int n = (buf.get(i) & 0xff) << 16 | (buf.get(i + 1) & 0xff) << 8
+					| buf.get(i + 2) & 0xff;
+			o.put(BASE64_DIGITS[n >>> 18]);
+			o.put(BASE64_DIGITS[n >>> 12 & 0x3f]);
+			o.put(BASE64_DIGITS[n >>> 6 & 0x3f]);
+			o.put(BASE64_DIGITS[n & 0x3f]);
+		}
+		int left = end - i;
+		if (left > 0) {
+			int n = (buf.get(i) & 0xff) << 16
+					| (left == 2 ? (buf.get(i + 1) & 0xff) << 8 : 0);
+			o.put(BASE64_DIGITS[n >>> 18]);
+			o.put(BASE64_DIGITS[n >>> 12 & 0x3f]);
+			o.put(left == 2 ? BASE64_DIGITS[n >>> 6 & 0x3f] : (byte) '=');
+			o.put((byte) '=');
+		}
+	}
+
+	// checks the well-formed UTF-8, the overlong forms and the surrogates
+	// are rejected
+	static boolean isUtf8(ByteBuffer buf, int offset, int end) {
+		int i = offset;
+		while (i < end) {
+			int b = buf.get(i++) & 0xff;
+			if (b < 0x80) {
+				continue;
+			}
+			int n;
+			int min;
+			if (b >= 0xc2 && b <= 0xdf) {
+				n = 1;
+				min = 0x80;
+				b &= 0x1f;
+			} else if (b >= 0xe0 && b <= 0xef) {
+				n = 2;
+				min = 0x800;
+				b &= 0x0f;
+			} else if (b >= 0xf0 && b <= 0xf4) {
+				n = 3;
+				min = 0x10000;
+				b &= 0x07;
+			} else {
+				return false;
+			}
+			if (end - i < n) {
+				return false;
+			}
+			int cp = b;
+			for (int k = 0; k < n; k++) {
+				int c = buf.get(i++) & 0xff;
+				if ((c & 0xc0) != 0x80) {
+					return false;
+				}
+				cp = cp << 6 | c & 0x3f;
+			}
+			if (cp < min || cp > 0x10ffff || (cp >= 0xd800 && cp <= 0xdfff)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*** JSON to Bencode ***/
+
+	/**
+	 * Writes the JSON values of the stream as the concatenated Bencoded
+	 * values.
+	 *
+	 * @param in
+	 *            - the JSON values, separated by the whitespace, read to the
+	 *            end, but not closed
+	 * @param out
+	 *            - the stream to write to, flushed, but not closed
+	 * @return - the number of the values
+	 * @throws IOException
+	 *             when JSON is malformed, can't be Bencoded or the stream
+	 *             fails
+	 */
+	public int toBencode(InputStream in, OutputStream out) throws IOException {
+		In i = new In(in);
+		BencodeWriter w = new BencodeWriter(out);
+		int values = 0;
+		while (i.skipWhitespace() >= 0) {
+			readValue(i, w);
+			values++;
+		}
+		w.flush();
+		return values;
+	}
+
+	/**
+	 * @param json
+	 *            - the JSON values
+	 * @return - the Bencoded values
+	 * @throws IOException
+	 *             when JSON is malformed or can't be Bencoded
+	 */
+	public byte[] toBencode(String json) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		toBencode(new ByteArrayInputStream(
+				json.getBytes(StandardCharsets.UTF_8)), bos);
+		return bos.toByteArray();
+	}
+
+	private void readValue(In in, BencodeWriter w) throws IOException {
+		// true for the open objects, false for the arrays
+		boolean[] objects = new boolean[INITIAL_DEPTH];
+		int depth = 0;
+		int state = S_VALUE;
+		while (true) {
+			int c = in.skipWhitespace();
+			switch (state) {
+			case S_VALUE:
+				if (c == '{' || c == '[') {
+					in.read();
+					if (depth == limits.maxDepth()) {
+						throw new BencodeException(
+								BencodeException.Reason.DEPTH, "Depth"
+										+ BeeCoder.BC_MSG_EXCEPTION_LIMIT
+										+ limits.maxDepth());
+					}
+					if (depth == objects.length) {
+						objects = Arrays.copyOf(objects, depth << 1);
+					}
+					objects[depth++] = c == '{';
+					if (c == '{') {
+						w.startDict();
+						state = S_FIRST_KEY;
+					} else {
+						w.startList();
+						state = S_FIRST_VALUE;
+					}
+					continue;
+				}
+				readScalar(in, w, c);
+				state = S_AFTER_VALUE;
+				break;
+			case S_FIRST_VALUE:
+				if (c == ']') {
+					in.read();
+					w.end();
+					depth--;
+					state = S_AFTER_VALUE;
+					break;
+				}
+				state = S_VALUE;
+				continue;
+			case S_FIRST_KEY:
+				if (c == '}') {
+					in.read();
+					w.end();
+					depth--;
+					state = S_AFTER_VALUE;
+					break;
+				}
+				state = S_KEY;
+				continue;
+			case S_KEY:
+				if (c != '"') {
+					throw in.unexpected("Object key", c);
+				}
+				int length = in.readString(binary, limits.maxStringLength());
+				w.key(ByteString.wrap(in.string, 0, length));
+				c = in.skipWhitespace();
+				if (c != ':') {
+					throw in.unexpected("Object", c);
+				}
+				in.read();
+				state = S_VALUE;
+				continue;
+			default:
+				if (depth > 0 && c == ',') {
+					in.read();
+					state = objects[depth - 1] ? S_KEY : S_VALUE;
+					continue;
+				} else if (depth > 0 && c == (objects[depth - 1] ? '}' : ']')) {
+					in.read();
+					w.end();
+					depth--;
+				} else if (depth > 0) {
+					throw in.unexpected(objects[depth - 1] ? "Object"
+							: "Array", c);
+				}
+			}
+			if (depth == 0 && state == S_AFTER_VALUE) {
+				return;
+			}
+		}
+	}
+
+	private void readScalar(In in, BencodeWriter w, int c) throws IOException {
+		if (c == '"') {
+			int length = in.readString(binary, limits.maxStringLength());
+			w.value(in.string, 0, length);
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			int length = in.readNumber(limits.maxStringLength());
+			int digits = in.string[0] == '-' ? length - 1 : length;
+			String number = new String(in.string, 0, length,
+					StandardCharsets.US_ASCII);
+			if (digits <= MAX_SAFE_DIGITS) {
+				w.value(Long.parseLong(number));
+			} else {
+				w.value(new BigInteger(number));
+			}
+		} else if (c == 't') {
+			in.readLiteral("true");
+			w.value(1);
+		} else if (c == 'f') {
+			in.readLiteral("false");
+			w.value(0);
+		} else if (c == 'n') {
+			in.readLiteral("null");
+			throw new IOException("JSON null can't be Bencoded at "
+					+ in.position());
+		} else {
+			throw in.unexpected("Value", c);
+		}
+	}
+
+	/**
+	 * Buffers the output stream.
+	 */
+	private static final class Out {
+
+		private final OutputStream os;
+		private final byte[] buf = new byte[BUFFER_SIZE];
+		private final byte[] digits = new byte[20];
+		private int size;
+
+		Out(OutputStream os) {
+			this.os = os;
+		}
+
+		void put(byte b) throws IOException {
+			if (size == buf.length) {
+				os.write(buf, 0, size);
+				size = 0;
+			}
+			buf[size++] = b;
+		}
+
+		void putLong(long value) throws IOException {
+			if (value < 0) {
+				put((byte) '-');
+			} else {
+				// the negative value has the room for Long.MIN_VALUE
+				value = -value;
+			}
+			int n = digits.length;
+			do {
+				digits[--n] = (byte) ('0' - value % 10);
+				value /= 10;
+			} while (value != 0);
+			for (; n < digits.length; n++) {
+				put(digits[n]);
+			}
+		}
+
+		void flush() throws IOException {
+			os.write(buf, 0, size);
+			size = 0;
+			os.flush();
+		}
+	}
+
+	/**
+	 * Buffers the input stream and reads the JSON strings and numbers to the
+	 * reused array.
+	 */
+	private static final class In {
+
+		private final InputStream is;
+		private final byte[] buf = new byte[BUFFER_SIZE];
+		private int pos;
+		private int size;
+		private long consumed;
+		// the bytes of the last string or number read
+		byte[] string = new byte[64];
+
+		In(InputStream is) {
+			this.is = is;
+		}
+
+		int peek() throws IOException {
+			if (pos == size) {
+				consumed += size;
+				size = is.read(buf, 0, buf.length);
+				pos = 0;
+				if (size <= 0) {
+					size = 0;
+					return -1;
+				}
+			}
+			return buf[pos] & 0xff;
+		}
+
+		int read() throws IOException {
+			int c = peek();
+			if (c >= 0) {
+				pos++;
+			}
+			return c;
+		}
+
+		int readOrFail(String type) throws IOException {
+			int c = read();
+			if (c < 0) {
+				throw new IOException(BeeCoder.BC_MSG_EXCEPTION_STREAM_END
+						+ type);
+			}
+			return c;
+		}
+
+		long position() {
+			return consumed + pos;
+		}
+
+		int skipWhitespace() throws IOException {
+			int c = peek();
+			while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+				pos++;
+				c = peek();
+			}
+			return c;
+		}
+
+		void readLiteral(String literal) throws IOException {
+			for (int i = 0; i < literal.length(); i++) {
+				int c = readOrFail("Value");
+				if (c != literal.charAt(i)) {
+					throw unexpected("Value", c);
+				}
+			}
+		}
+
+		int readNumber(int maxLength) throws IOException {
+			int n = 0;
+			int c = peek();
+			while (c == '-' || (c >= '0' && c <= '9')) {
+				if (n == maxLength) {
+					throw new BencodeException(
+							BencodeException.Reason.STRING_LENGTH,
+							"Integer length" + BeeCoder.BC_MSG_EXCEPTION_LIMIT
+									+ maxLength);
+				}
+				put(n++, c);
+				pos++;
+				c = peek();
+			}
+			if (c == '.' || c == 'e' || c == 'E') {
+				throw new IOException("JSON number isn't the integer at "
+						+ position());
+			}
+			if (n == 0 || (n == 1 && string[0] == '-')) {
+				throw unexpected("Number", c);
+			}
+			int lead = string[0] == '-' ? 1 : 0;
+			if (n - lead > 1 && string[lead] == '0') {
+				throw new IOException("JSON number is malformed at "
+						+ position());
+			}
+			for (int i = 1; i < n; i++) {
+				if (string[i] == '-') {
+					throw new IOException("JSON number is malformed at "
+							+ position());
+				}
+			}
+			return n;
+		}
+
+		int readString(Binary binary, int maxLength) throws IOException {
+			// the opening quote
+			read();
+			int n = 0;
+			while (true) {
+				int c = readOrFail("String");
+				int cp;
+				if (c == '"') {
+					return n;
+				} else if (c == '\\') {
+					cp = readEscape();
+				} else if (c < 0x20) {
+					throw unexpected("String", c);
+				} else if (c < 0x80 || binary != Binary.LATIN1) {
+					// the UTF-8 bytes are taken as they are
+					if (n == maxLength) {
+						throw tooLong(maxLength);
+					}
+					put(n++, c);
+					continue;
+				} else {
+					cp = readUtf8(c);
+				}
+				if (binary == Binary.LATIN1) {
+					if (cp > 0xff) {
+						throw new IOException(
+								"JSON string has the character beyond Latin-1 at "
+										+ position());
+					}
+					if (n == maxLength) {
+						throw tooLong(maxLength);
+					}
+					put(n++, cp);
+				} else {
+					n = putUtf8(n, cp, maxLength);
+				}
+			}
+		}
+
+		private int readEscape() throws IOException {
+			int c = readOrFail("String");
+			switch (c) {
+			case '"':
+			case '\\':
+			case '/':
+				return c;
+			case 'b':
+				return '\b';
+			case 'f':
+				return '\f';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 't':
+				return '\t';
+			case 'u':
+				int cp = readHex4();
+				if (cp >= 0xd800 && cp <= 0xdbff) {
+					if (readOrFail("String") != '\\'
+							|| readOrFail("String") != 'u') {
+						throw new IOException("JSON string has the lone surrogate at "
+								+ position());
+					}
+					int low = readHex4();
+					if (low < 0xdc00 || low > 0xdfff) {
+						throw new IOException("JSON string has the lone surrogate at "
+								+ position());
+					}
+					return Character.toCodePoint((char) cp, (char) low);
+				} else if (cp >= 0xdc00 && cp <= 0xdfff) {
+					throw new IOException("JSON string has the lone surrogate at "
+							+ position());
+				}
+				return cp;
+			default:
+				throw unexpected("String escape", c);
+			}
+		}
+
+		private int readHex4() throws IOException {
+			int cp = 0;
+			for (int i = 0; i < 4; i++) {
+				int c = readOrFail("String");
+				int d = Character.digit(c, 16);
+				if (d < 0) {
+					throw unexpected("String escape", c);
+				}
+				cp = cp << 4 | d;
+			}
+			return cp;
+		}
+
+		// decodes the UTF-8 sequence of the lead byte
+		private int readUtf8(int lead) throws IOException {
+			int n;
+			int cp;
+			if (lead >= 0xc2 && lead <= 0xdf) {
+				n = 1;
+				cp = lead & 0x1f;
+			} else if (lead >= 0xe0 && lead <= 0xef) {
+				n = 2;
+				cp = lead & 0x0f;
+			} else if (lead >= 0xf0 && lead <= 0xf4) {
+				n = 3;
+				cp = lead & 0x07;
+			} else {
+				throw unexpected("String", lead);
+			}
+			for (int i = 0; i < n; i++) {
+				int c = readOrFail("String");
+				if ((c & 0xc0) != 0x80) {
+					throw unexpected("String", c);
+				}
+				cp = cp << 6 | c & 0x3f;
+			}
+			return cp;
+		}
+
+		private int putUtf8(int n, int cp, int maxLength) throws IOException {
+			int length = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+			if (n + length > maxLength) {
+				throw tooLong(maxLength);
+			}
+			if (length == 1) {
+				put(n++, cp);
+			} else if (length == 2) {
+				put(n++, 0xc0 | cp >>> 6);
+				put(n++, 0x80 | cp & 0x3f);
+			} else if (length == 3) {
+				put(n++, 0xe0 | cp >>> 12);
+				put(n++, 0x80 | cp >>> 6 & 0x3f);
+				put(n++, 0x80 | cp & 0x3f);
+			} else {
+				put(n++, 0xf0 | cp >>> 18);
+				put(n++, 0x80 | cp >>> 12 & 0x3f);
+				put(n++, 0x80 | cp >>> 6 & 0x3f);
+				put(n++, 0x80 | cp & 0x3f);
+			}
+			return n;
+		}
+
+		private void put(int n, int b) {
+			if (n == string.length) {
+				string = Arrays.copyOf(string, n << 1);
+			}
+			string[n] = (byte) b;
+		}
+
+		private BencodeException tooLong(int maxLength) {
+			return new BencodeException(BencodeException.Reason.STRING_LENGTH,
+					"String length" + BeeCoder.BC_MSG_EXCEPTION_LIMIT
+							+ maxLength);
+		}
+
+		IOException unexpected(String type, int c) {
+			if (c < 0) {
+				return new IOException(BeeCoder.BC_MSG_EXCEPTION_STREAM_END
+						+ type);
+			}
+			return new IOException("JSON " + type
+					+ BeeCoder.BC_MSG_EXCEPTION_WRONG_CHAR + (char) c + " at "
+					+ position());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.github.soulaway.beecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shares the dictionary keys between the decoded documents: the key is
+ * looked up by its bytes right in the source buffer, and the byte string
+ * found is returned instead of the new view. The shared keys are backed by
+ * their own small arrays, so the decoded values don't keep the source buffer
+ * reachable through the keys, and the millions of the cached peers and
+ * torrents hold the single "peers" or "piece length".
+ *
+ * <pre>
+ * KeyInterner keys = new KeyInterner();
+ * BencodeDecoder decoder = new BencodeDecoder(limits, null, keys);
+ * </pre>
+ *
+ * The table is bounded and starts with the keys of the torrents, the trackers
+ * and the DHT. The keys seen then take the free slots and replace each other
+ * in the slots they collide on, so the frequent keys stay. The interner is
+ * lock free and can be shared between the decoders of many threads: the slot
+ * written concurrently may lose the key, but never returns the wrong one.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class KeyInterner {
+
+	/** The keys every interner starts with */
+	static final String[] WELL_KNOWN = { "announce", "announce-list",
+			"comment", "created by", "creation date", "encoding", "info",
+			"files", "length", "md5sum", "name", "path", "piece length",
+			"pieces", "private", "url-list", "meta version", "file tree",
+			"pieces root", "piece layers", "complete", "incomplete",
+			"downloaded", "interval", "min interval", "peers", "peers6",
+			"peer id", "ip", "port", "failure reason", "warning message",
+			"tracker id", "t", "y", "q", "a", "r", "e", "v", "id",
+			"target", "info_hash", "token", "nodes", "nodes6", "values",
+			"implied_port", "want", "ro", "m", "p", "reqq", "yourip",
+			"metadata_size", "msg_type", "piece", "total_size", "ut_metadata",
+			"ut_pex", "added", "added.f", "dropped" };
+
+	private static final int DEFAULT_CAPACITY = 4096;
+	private static final int DEFAULT_MAX_KEY_LENGTH = 64;
+
+	private final ByteString[] slots;
+	private final int mask;
+	private final int maxKeyLength;
+
+	/**
+	 * Creates the interner of the 4096 keys up to 64 bytes long.
+	 */
+	public KeyInterner() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_KEY_LENGTH);
+	}
+
+	/**
+	 * Creates the interner.
+	 *
+	 * @param capacity
+	 *            - the number of the keys kept at most, rounded up to the
+	 *            power of two
+	 * @param maxKeyLength
+	 *            - the longer keys are never interned
+	 */
+	public KeyInterner(int capacity, int maxKeyLength) {
+		if (capacity < 2 || capacity > 1 << 30 || maxKeyLength < 0) {
+			throw new IllegalArgumentException("Invalid interner, capacity "
+					+ capacity + " key length " + maxKeyLength);
+		}
+		this.slots = new ByteString[Integer.highestOneBit(capacity - 1) << 1];
+		this.mask = slots.length - 1;
+		this.maxKeyLength = maxKeyLength;
+		for (String key : WELL_KNOWN) {
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length <= maxKeyLength) {
+				intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+			}
+		}
+	}
+
+	/**
+	 * Returns the shared byte string of the bytes, adding it when there is
+	 * none.
+	 *
+	 * @param buf
+	 *            - the source buffer
+	 * @param offset
+	 *            - the absolute index of the first byte
+	 * @param length
+	 *            - the number of the bytes
+	 * @return - the shared byte string or null when the bytes are too long to
+	 *         be interned
+	 */
+	public ByteString intern(ByteBuffer buf, int offset, int length) {
+		if (length > maxKeyLength) {
+			return null;
+		}
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + buf.get(offset + i);
+		}
+		// the two slots of the key, the second one is replaced on collision
+		int first = spread(h) & mask;
+		int second = first ^ 1;
+		ByteString s = slots[first];
+		if (s != null && s.contentEquals(buf, offset, length)) {
+			return s;
+		}
+		ByteString t = slots[second];
+		if (t != null && t.contentEquals(buf, offset, length)) {
+			return t;
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buf.get(offset + i);
+		}
+		ByteString key = ByteString.wrap(bytes);
+		// the racy write is safe: the bytes and the bounds of ByteString are
+		// final fields, and its lazy hash and string caches are idempotent,
+		// so the thread that sees them unset just computes them again
+		slots[s == null ? first : second] = key;
+		return key;
+	}
+
+	/**
+	 * @param key
+	 *            - the key
+	 * @return - the shared byte string of the key
+	 */
+	public ByteString intern(ByteString key) {
+		ByteString s = intern(key.asByteBuffer(), 0, key.length());
+		return s != null ? s : key;
+	}
+
+	/**
+	 * @return - the number of the keys kept, counted by the racy reads
+	 */
+	public int size() {
+		int n = 0;
+		for (ByteString s : slots) {
+			if (s != null) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	private static int spread(int h) {
+		return h ^ h >>> 16;
+	}
+}
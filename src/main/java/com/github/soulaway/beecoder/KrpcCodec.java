@@ -0,0 +1,430 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BeeCoder.BC_DELEMETER_STR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_MSG_EXCEPTION_TRAILING;
+import static com.github.soulaway.beecoder.BeeCoder.BC_POSTFIX_NONSTR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_ARR;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_DIC;
+import static com.github.soulaway.beecoder.BeeCoder.BC_PREFIX_INT;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+import com.github.soulaway.beecoder.BencodeReader.Token;
+import com.github.soulaway.beecoder.KrpcMessage.Field;
+
+/**
+ * Decodes the Mainline DHT datagrams into {@link KrpcMessage} and encodes the
+ * messages back, the fast path for the DHT nodes and crawlers. The datagram
+ * is read token by token by the {@link BencodeReader} the codec reuses, the
+ * keys are matched by their bytes, the values are copied into the message,
+ * so neither the tree nor any String is built. The messages are encoded into
+ * the buffer the codec reuses, with the keys sorted.
+ *
+ * <pre>
+ * KrpcCodec codec = new KrpcCodec();
+ * KrpcMessage msg = new KrpcMessage();
+ * codec.decode(datagram, msg);
+ * for (int i = 0; i &lt; msg.nodeCount(); i++) {
+ * 	table.add(msg, i);
+ * }
+ * </pre>
+ *
+ * The datagram is checked against the limits sized for UDP, the message must
+ * have the transaction id and the kind, the query must have the method and
+ * the arguments, the response the values, the error the code and the
+ * message. The codec isn't thread safe, the codec per thread allocates
+ * nothing per datagram.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class KrpcCodec {
+
+	/**
+	 * The limits of the datagram: the nesting of the dictionaries and the
+	 * values list, the largest UDP payload.
+	 */
+	public static final BencodeLimits LIMITS = new BencodeLimits(4, 65507,
+			4096, 65507);
+
+	private static final int INITIAL_CAPACITY = 1500;
+
+	// the keys, with their length prefixes for encoding
+	private static final byte[] K_ARGS = key("a");
+	private static final byte[] K_ERROR = key("e");
+	private static final byte[] K_METHOD = key("q");
+	private static final byte[] K_RESPONSE = key("r");
+	private static final byte[] K_TID = key("t");
+	private static final byte[] K_VERSION = key("v");
+	private static final byte[] K_TYPE = key("y");
+	private static final byte[] K_ID = key("id");
+	private static final byte[] K_IMPLIED_PORT = key("implied_port");
+	private static final byte[] K_INFO_HASH = key("info_hash");
+	private static final byte[] K_NODES = key("nodes");
+	private static final byte[] K_PORT = key("port");
+	private static final byte[] K_TARGET = key("target");
+	private static final byte[] K_TOKEN = key("token");
+	private static final byte[] K_VALUES = key("values");
+
+	private final BencodeReader reader = new BencodeReader(
+			ByteBuffer.allocate(0), LIMITS);
+	private byte[] out = new byte[INITIAL_CAPACITY];
+	private ByteBuffer outBuffer = ByteBuffer.wrap(out);
+	private int size;
+
+	/**
+	 * Decodes the datagram into the message, it's cleared first.
+	 *
+	 * @param datagram
+	 *            - the single KRPC message, from the position to the limit,
+	 *            the position is moved to the limit
+	 * @param msg
+	 *            - the message to fill
+	 * @throws IOException
+	 *             when data is malformed or isn't the KRPC message, the
+	 *             message is left partially filled then
+	 */
+	public void decode(ByteBuffer datagram, KrpcMessage msg) throws IOException {
+		msg.clear();
+		BencodeReader r = reader.reset(datagram);
+		if (r.next() != Token.START_DICT) {
+			throw new IOException("KRPC message is not the dictionary, but "
+					+ r.token());
+		}
+		while (r.next() == Token.KEY) {
+			if (isKey(r, K_TID)) {
+				readBytes(r, msg.transactionId, "t");
+			} else if (isKey(r, K_TYPE)) {
+				readBytes(r, null, "y");
+				KrpcMessage.Type type = r.valueLength() == 1 ? KrpcMessage.Type
+						.of(r.buffer().get(r.valueOffset())) : null;
+				if (type == null) {
+					throw new IOException("KRPC message has unknown kind "
+							+ r.stringValue());
+				}
+				msg.setType(type);
+			} else if (isKey(r, K_METHOD)) {
+				readBytes(r, msg.methodName, "q");
+				msg.resolveMethod();
+			} else if (isKey(r, K_VERSION)) {
+				readBytes(r, msg.version, "v");
+			} else if (isKey(r, K_ARGS) || isKey(r, K_RESPONSE)) {
+				if (r.next() != Token.START_DICT) {
+					throw new IOException("KRPC arguments are not the dictionary, but "
+							+ r.token());
+				}
+				readBody(r, msg);
+			} else if (isKey(r, K_ERROR)) {
+				readError(r, msg);
+			} else {
+				r.skipValue();
+			}
+		}
+		if (r.position() != datagram.limit()) {
+			throw new BencodeException(Reason.TRAILING,
+					BC_MSG_EXCEPTION_TRAILING
+							+ (datagram.limit() - r.position()));
+		}
+		BeeCoder.Utils.position(datagram, r.position());
+		check(msg);
+	}
+
+	/**
+	 * Encodes the message, with the keys sorted.
+	 *
+	 * @param msg
+	 *            - the message, it must have the fields required for its kind
+	 * @return - the buffer over the encoded message, the codec reuses it, so
+	 *         it's valid till the next call
+	 */
+	public ByteBuffer encode(KrpcMessage msg) {
+		try {
+			check(msg);
+		} catch (IOException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+		size = 0;
+		put(BC_PREFIX_DIC);
+		if (msg.type() == KrpcMessage.Type.QUERY) {
+			putKey(K_ARGS);
+			putBody(msg);
+		} else if (msg.type() == KrpcMessage.Type.ERROR) {
+			putKey(K_ERROR);
+			put(BC_PREFIX_ARR);
+			putInt(msg.errorCode);
+			putBytes(msg.errorMessage);
+			put(BC_POSTFIX_NONSTR);
+		}
+		if (msg.type() == KrpcMessage.Type.QUERY) {
+			putKey(K_METHOD);
+			putBytes(msg.methodName);
+		} else if (msg.type() == KrpcMessage.Type.RESPONSE) {
+			putKey(K_RESPONSE);
+			putBody(msg);
+		}
+		putKey(K_TID);
+		putBytes(msg.transactionId);
+		if (msg.version.isSet()) {
+			putKey(K_VERSION);
+			putBytes(msg.version);
+		}
+		putKey(K_TYPE);
+		ensure(2);
+		out[size++] = '1';
+		out[size++] = BC_DELEMETER_STR;
+		put(msg.type().code);
+		put(BC_POSTFIX_NONSTR);
+		BeeCoder.Utils.limit(outBuffer, size);
+		BeeCoder.Utils.position(outBuffer, 0);
+		return outBuffer;
+	}
+
+	// reads the arguments of the query or the values of the response
+	private static void readBody(BencodeReader r, KrpcMessage msg)
+			throws IOException {
+		while (r.next() == Token.KEY) {
+			if (isKey(r, K_ID)) {
+				readId(r, msg.id, "id");
+			} else if (isKey(r, K_TARGET)) {
+				readId(r, msg.target, "target");
+			} else if (isKey(r, K_INFO_HASH)) {
+				readId(r, msg.infoHash, "info_hash");
+			} else if (isKey(r, K_TOKEN)) {
+				readBytes(r, msg.token, "token");
+			} else if (isKey(r, K_NODES)) {
+				readBytes(r, msg.nodes, "nodes");
+				if (r.valueLength() % KrpcMessage.NODE_LENGTH != 0) {
+					throw new IOException("KRPC nodes of " + r.valueLength()
+							+ " bytes are not the compact node infos");
+				}
+			} else if (isKey(r, K_VALUES)) {
+				readPeers(r, msg);
+			} else if (isKey(r, K_PORT)) {
+				msg.port = (int) readInt(r, "port", 0xffff);
+			} else if (isKey(r, K_IMPLIED_PORT)) {
+				msg.impliedPort = (int) readInt(r, "implied_port", 1);
+			} else {
+				r.skipValue();
+			}
+		}
+	}
+
+	private static void readPeers(BencodeReader r, KrpcMessage msg)
+			throws IOException {
+		if (r.next() != Token.START_LIST) {
+			throw new IOException("KRPC values are not the list, but "
+					+ r.token());
+		}
+		Field values = msg.values;
+		values.length = 0;
+		Token t;
+		while ((t = r.next()) == Token.BYTES) {
+			if (r.valueLength() != KrpcMessage.PEER_LENGTH) {
+				throw new IOException("KRPC value of " + r.valueLength()
+						+ " bytes is not the compact peer info");
+			}
+			values.append(r.buffer(), r.valueOffset(), KrpcMessage.PEER_LENGTH);
+		}
+		if (t != Token.END) {
+			throw new IOException("KRPC value is not the byte string, but " + t);
+		}
+	}
+
+	private static void readError(BencodeReader r, KrpcMessage msg)
+			throws IOException {
+		if (r.next() != Token.START_LIST || r.next() != Token.INT
+				|| !r.isLongValue()) {
+			throw new IOException("KRPC error is not the code and the message");
+		}
+		msg.errorCode = r.longValue();
+		readBytes(r, msg.errorMessage, "e");
+		while (r.next() != Token.END) {
+			// the values nobody defined
+			if (r.token() == Token.START_DICT || r.token() == Token.START_LIST) {
+				int depth = r.depth();
+				while (r.depth() >= depth) {
+					r.next();
+				}
+			}
+		}
+	}
+
+	private static void readId(BencodeReader r, Field field, String key)
+			throws IOException {
+		readBytes(r, field, key);
+		if (r.valueLength() != KrpcMessage.ID_LENGTH) {
+			throw new IOException("KRPC " + key + " of " + r.valueLength()
+					+ " bytes");
+		}
+	}
+
+	// reads the byte string into the field, or just checks it's there
+	private static void readBytes(BencodeReader r, Field field, String key)
+			throws IOException {
+		if (r.next() != Token.BYTES) {
+			throw new IOException("KRPC " + key
+					+ " is not the byte string, but " + r.token());
+		}
+		if (field != null) {
+			field.set(r.buffer(), r.valueOffset(), r.valueLength());
+		}
+	}
+
+	private static long readInt(BencodeReader r, String key, long max)
+			throws IOException {
+		if (r.next() != Token.INT || !r.isLongValue() || r.longValue() < 0
+				|| r.longValue() > max) {
+			throw new IOException("KRPC " + key + " is not the integer of 0 to "
+					+ max);
+		}
+		return r.longValue();
+	}
+
+	// compares the KEY token with the key, skipping the length prefix
+	private static boolean isKey(BencodeReader r, byte[] key) {
+		int length = r.valueLength();
+		int prefix = key.length - length;
+		if (prefix != (length >= 10 ? 3 : 2)) {
+			return false;
+		}
+		ByteBuffer buf = r.buffer();
+		int offset = r.valueOffset() - prefix;
+		for (int i = prefix; i < key.length; i++) {
+			if (buf.get(offset + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void check(KrpcMessage msg) throws IOException {
+		if (!msg.transactionId.isSet()) {
+			throw new IOException("KRPC message has no transaction id");
+		}
+		if (msg.type() == null) {
+			throw new IOException("KRPC message has no kind");
+		}
+		if (msg.type() == KrpcMessage.Type.QUERY && msg.method() == null) {
+			throw new IOException("KRPC query has no method");
+		}
+		switch (msg.type()) {
+		case QUERY:
+		case RESPONSE:
+			// the arguments and the values have the id of the node
+			if (!msg.id.isSet()) {
+				throw new IOException("KRPC " + msg.type()
+						+ " has no node id");
+			}
+			break;
+		default:
+			if (msg.errorCode < 0 || !msg.errorMessage.isSet()) {
+				throw new IOException("KRPC error has no code or message");
+			}
+		}
+	}
+
+	private void putBody(KrpcMessage msg) {
+		put(BC_PREFIX_DIC);
+		putKey(K_ID);
+		putBytes(msg.id);
+		if (msg.impliedPort >= 0) {
+			putKey(K_IMPLIED_PORT);
+			putInt(msg.impliedPort);
+		}
+		if (msg.infoHash.isSet()) {
+			putKey(K_INFO_HASH);
+			putBytes(msg.infoHash);
+		}
+		if (msg.nodes.isSet()) {
+			putKey(K_NODES);
+			putBytes(msg.nodes);
+		}
+		if (msg.port >= 0) {
+			putKey(K_PORT);
+			putInt(msg.port);
+		}
+		if (msg.target.isSet()) {
+			putKey(K_TARGET);
+			putBytes(msg.target);
+		}
+		if (msg.token.isSet()) {
+			putKey(K_TOKEN);
+			putBytes(msg.token);
+		}
+		if (msg.values.isSet()) {
+			putKey(K_VALUES);
+			put(BC_PREFIX_ARR);
+			byte[] values = msg.values.data;
+			for (int i = 0; i < msg.values.length; i += KrpcMessage.PEER_LENGTH) {
+				putBytes(values, i, KrpcMessage.PEER_LENGTH);
+			}
+			put(BC_POSTFIX_NONSTR);
+		}
+		put(BC_POSTFIX_NONSTR);
+	}
+
+	private void put(byte b) {
+		ensure(1);
+		out[size++] = b;
+	}
+
+	private void put(char c) {
+		put((byte) c);
+	}
+
+	private void putKey(byte[] key) {
+		ensure(key.length);
+		System.arraycopy(key, 0, out, size, key.length);
+		size += key.length;
+	}
+
+	private void putBytes(Field field) {
+		putBytes(field.data, 0, field.length);
+	}
+
+	private void putBytes(byte[] bytes, int offset, int length) {
+		// the length fits into 5 digits, the datagram is smaller anyway
+		ensure(length + 11);
+		size = putDigits(length, size);
+		out[size++] = BC_DELEMETER_STR;
+		System.arraycopy(bytes, offset, out, size, length);
+		size += length;
+	}
+
+	private void putInt(long value) {
+		ensure(22);
+		out[size++] = BC_PREFIX_INT;
+		size = putDigits(value, size);
+		out[size++] = BC_POSTFIX_NONSTR;
+	}
+
+	// writes the digits of the non negative number at the index, the
+	// integers encoded are never negative
+	private int putDigits(long value, int index) {
+		int n = 1;
+		for (long v = value; v >= 10; v /= 10) {
+			n++;
+		}
+		int end = index + n;
+		for (int i = end - 1; i >= index; i--) {
+			out[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return end;
+	}
+
+	private void ensure(int n) {
+		if (out.length - size < n) {
+			byte[] grown = new byte[Math.max(out.length << 1, size + n)];
+			System.arraycopy(out, 0, grown, 0, size);
+			out = grown;
+			outBuffer = ByteBuffer.wrap(out);
+		}
+	}
+
+	private static byte[] key(String key) {
+		return (key.length() + ":" + key).getBytes(StandardCharsets.US_ASCII);
+	}
+}
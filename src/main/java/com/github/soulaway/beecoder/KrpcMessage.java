@@ -0,0 +1,625 @@
+package com.github.soulaway.beecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Presents the Mainline DHT (KRPC, BEP 5) message: the query, the response or
+ * the error, with the arguments or the response values the DHT uses. The
+ * message is mutable and reusable: {@link KrpcCodec} decodes every datagram
+ * into the same instance, copying the few bytes into the arrays the message
+ * keeps, so the datagram buffer can be reused right away and nothing is
+ * allocated once the arrays have grown to the size of the traffic.
+ *
+ * <pre>
+ * KrpcMessage query = new KrpcMessage();
+ * KrpcMessage reply = new KrpcMessage();
+ * codec.decode(datagram, query);
+ * if (query.method() == KrpcMessage.Method.PING) {
+ * 	reply.clear().setType(KrpcMessage.Type.RESPONSE)
+ * 			.setTransactionId(query.transactionId()).setId(ownId);
+ * 	channel.send(codec.encode(reply), sender);
+ * }
+ * </pre>
+ *
+ * The compact node infos (20 bytes id, IPv4 address, port) and the compact
+ * peer infos (IPv4 address, port) are read and added as the primitives. The
+ * byte strings are returned as the views over the arrays of the message,
+ * valid till it's decoded or changed again. The keys the DHT doesn't define
+ * are skipped on decoding. The message isn't thread safe.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class KrpcMessage {
+
+	/** the length of the node id and the info hash */
+	public static final int ID_LENGTH = 20;
+	/** the length of the compact node info */
+	public static final int NODE_LENGTH = 26;
+	/** the length of the compact peer info */
+	public static final int PEER_LENGTH = 6;
+
+	/**
+	 * The kinds of the message, the 'y' key.
+	 */
+	public enum Type {
+		/** 'q' */
+		QUERY('q'),
+		/** 'r' */
+		RESPONSE('r'),
+		/** 'e' */
+		ERROR('e');
+
+		final byte code;
+
+		Type(char code) {
+			this.code = (byte) code;
+		}
+
+		static Type of(byte code) {
+			switch (code) {
+			case 'q':
+				return QUERY;
+			case 'r':
+				return RESPONSE;
+			case 'e':
+				return ERROR;
+			default:
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * The query methods, the 'q' key.
+	 */
+	public enum Method {
+		/** "ping" */
+		PING("ping"),
+		/** "find_node" */
+		FIND_NODE("find_node"),
+		/** "get_peers" */
+		GET_PEERS("get_peers"),
+		/** "announce_peer" */
+		ANNOUNCE_PEER("announce_peer"),
+		/** any other method, its name is {@link KrpcMessage#methodName()} */
+		OTHER("");
+
+		final byte[] name;
+
+		Method(String name) {
+			this.name = name.getBytes(StandardCharsets.US_ASCII);
+		}
+
+		static Method of(byte[] bytes, int length) {
+			for (Method m : VALUES) {
+				if (m.name.length == length && m != OTHER
+						&& Field.equals(m.name, bytes, length)) {
+					return m;
+				}
+			}
+			return OTHER;
+		}
+
+		private static final Method[] VALUES = values();
+	}
+
+	private Type type;
+	private Method method;
+	final Field transactionId = new Field();
+	final Field methodName = new Field();
+	final Field version = new Field();
+	final Field id = new Field();
+	final Field target = new Field();
+	final Field infoHash = new Field();
+	final Field token = new Field();
+	final Field nodes = new Field();
+	final Field values = new Field();
+	final Field errorMessage = new Field();
+	int port;
+	int impliedPort;
+	long errorCode;
+
+	/**
+	 * Creates the empty message.
+	 */
+	public KrpcMessage() {
+		clear();
+	}
+
+	/**
+	 * Drops everything, keeping the arrays for the next use.
+	 *
+	 * @return - this message
+	 */
+	public KrpcMessage clear() {
+		type = null;
+		method = null;
+		transactionId.clear();
+		methodName.clear();
+		version.clear();
+		id.clear();
+		target.clear();
+		infoHash.clear();
+		token.clear();
+		nodes.clear();
+		values.clear();
+		errorMessage.clear();
+		port = -1;
+		impliedPort = -1;
+		errorCode = -1;
+		return this;
+	}
+
+	/**
+	 * @return - the kind of the message, null when not set
+	 */
+	public Type type() {
+		return type;
+	}
+
+	/**
+	 * @param type
+	 *            - the kind of the message
+	 * @return - this message
+	 */
+	public KrpcMessage setType(Type type) {
+		this.type = type;
+		return this;
+	}
+
+	/**
+	 * @return - the method of the query, null when not set
+	 */
+	public Method method() {
+		return method;
+	}
+
+	/**
+	 * @param method
+	 *            - the method of the query, not {@link Method#OTHER}
+	 * @return - this message
+	 */
+	public KrpcMessage setMethod(Method method) {
+		if (method == Method.OTHER) {
+			throw new IllegalArgumentException(
+					"The other method is set by its name");
+		}
+		this.method = method;
+		methodName.set(method.name, 0, method.name.length);
+		return this;
+	}
+
+	/**
+	 * @return - the name of the query method, null when not set
+	 */
+	public ByteString methodName() {
+		return methodName.view();
+	}
+
+	/**
+	 * @param name
+	 *            - the name of the query method
+	 * @return - this message
+	 */
+	public KrpcMessage setMethodName(ByteString name) {
+		methodName.set(name);
+		method = name == null ? null : Method.of(methodName.data,
+				methodName.length);
+		return this;
+	}
+
+	/**
+	 * @return - the transaction id, null when not set
+	 */
+	public ByteString transactionId() {
+		return transactionId.view();
+	}
+
+	/**
+	 * @param tid
+	 *            - the transaction id
+	 * @return - this message
+	 */
+	public KrpcMessage setTransactionId(ByteString tid) {
+		transactionId.set(tid);
+		return this;
+	}
+
+	/**
+	 * @return - the client version, the 'v' key, null when not set
+	 */
+	public ByteString version() {
+		return version.view();
+	}
+
+	/**
+	 * @param v
+	 *            - the client version
+	 * @return - this message
+	 */
+	public KrpcMessage setVersion(ByteString v) {
+		version.set(v);
+		return this;
+	}
+
+	/**
+	 * @return - the id of the querying or the responding node, null when not
+	 *         set
+	 */
+	public ByteString id() {
+		return id.view();
+	}
+
+	/**
+	 * @param nodeId
+	 *            - the id of the node, 20 bytes
+	 * @return - this message
+	 */
+	public KrpcMessage setId(ByteString nodeId) {
+		id.set(checkId(nodeId));
+		return this;
+	}
+
+	/**
+	 * @return - the target of find_node, null when not set
+	 */
+	public ByteString target() {
+		return target.view();
+	}
+
+	/**
+	 * @param nodeId
+	 *            - the id of the node looked for, 20 bytes
+	 * @return - this message
+	 */
+	public KrpcMessage setTarget(ByteString nodeId) {
+		target.set(checkId(nodeId));
+		return this;
+	}
+
+	/**
+	 * @return - the info hash of get_peers and announce_peer, null when not
+	 *         set
+	 */
+	public ByteString infoHash() {
+		return infoHash.view();
+	}
+
+	/**
+	 * @param hash
+	 *            - the info hash, 20 bytes
+	 * @return - this message
+	 */
+	public KrpcMessage setInfoHash(ByteString hash) {
+		infoHash.set(checkId(hash));
+		return this;
+	}
+
+	/**
+	 * @return - the token of get_peers and announce_peer, null when not set
+	 */
+	public ByteString token() {
+		return token.view();
+	}
+
+	/**
+	 * @param t
+	 *            - the token
+	 * @return - this message
+	 */
+	public KrpcMessage setToken(ByteString t) {
+		token.set(t);
+		return this;
+	}
+
+	/**
+	 * @return - the port of announce_peer, -1 when not set
+	 */
+	public int port() {
+		return port;
+	}
+
+	/**
+	 * @param p
+	 *            - the port
+	 * @return - this message
+	 */
+	public KrpcMessage setPort(int p) {
+		this.port = checkPort(p);
+		return this;
+	}
+
+	/**
+	 * @return - the implied_port of announce_peer, -1 when not set
+	 */
+	public int impliedPort() {
+		return impliedPort;
+	}
+
+	/**
+	 * @param implied
+	 *            - 1 when the source port of the datagram is the peer port
+	 * @return - this message
+	 */
+	public KrpcMessage setImpliedPort(int implied) {
+		this.impliedPort = implied;
+		return this;
+	}
+
+	/**
+	 * @return - the code of the error, -1 when not set
+	 */
+	public long errorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * @return - the message of the error, null when not set
+	 */
+	public ByteString errorMessage() {
+		return errorMessage.view();
+	}
+
+	/**
+	 * @param code
+	 *            - the code of the error, 201 to 204
+	 * @param message
+	 *            - the message of the error
+	 * @return - this message
+	 */
+	public KrpcMessage setError(long code, ByteString message) {
+		this.errorCode = code;
+		errorMessage.set(message);
+		return this;
+	}
+
+	/*** compact node infos, the 'nodes' key ***/
+
+	/**
+	 * @return - the number of the compact node infos, -1 when there is no
+	 *         'nodes' key
+	 */
+	public int nodeCount() {
+		return nodes.length < 0 ? -1 : nodes.length / NODE_LENGTH;
+	}
+
+	/**
+	 * Copies the id of the node.
+	 *
+	 * @param index
+	 *            - the index of the node
+	 * @param dst
+	 *            - the array to copy to
+	 * @param offset
+	 *            - the index in the array of the first byte
+	 */
+	public void nodeId(int index, byte[] dst, int offset) {
+		System.arraycopy(nodes.data, node(index), dst, offset, ID_LENGTH);
+	}
+
+	/**
+	 * @param index
+	 *            - the index of the node
+	 * @return - the IPv4 address of the node, big endian
+	 */
+	public int nodeAddress(int index) {
+		return address(nodes.data, node(index) + ID_LENGTH);
+	}
+
+	/**
+	 * @param index
+	 *            - the index of the node
+	 * @return - the port of the node
+	 */
+	public int nodePort(int index) {
+		return port(nodes.data, node(index) + ID_LENGTH + 4);
+	}
+
+	/**
+	 * Appends the compact node info.
+	 *
+	 * @param nodeId
+	 *            - the array of the node id
+	 * @param offset
+	 *            - the index of the first byte of the node id
+	 * @param address
+	 *            - the IPv4 address, big endian
+	 * @param p
+	 *            - the port
+	 * @return - this message
+	 */
+	public KrpcMessage addNode(byte[] nodeId, int offset, int address, int p) {
+		checkPort(p);
+		int i = nodes.append(NODE_LENGTH);
+		System.arraycopy(nodeId, offset, nodes.data, i, ID_LENGTH);
+		putCompact(nodes.data, i + ID_LENGTH, address, p);
+		return this;
+	}
+
+	/*** compact peer infos, the 'values' key ***/
+
+	/**
+	 * @return - the number of the compact peer infos, -1 when there is no
+	 *         'values' key
+	 */
+	public int peerCount() {
+		return values.length < 0 ? -1 : values.length / PEER_LENGTH;
+	}
+
+	/**
+	 * @param index
+	 *            - the index of the peer
+	 * @return - the IPv4 address of the peer, big endian
+	 */
+	public int peerAddress(int index) {
+		return address(values.data, peer(index));
+	}
+
+	/**
+	 * @param index
+	 *            - the index of the peer
+	 * @return - the port of the peer
+	 */
+	public int peerPort(int index) {
+		return port(values.data, peer(index) + 4);
+	}
+
+	/**
+	 * Appends the compact peer info.
+	 *
+	 * @param address
+	 *            - the IPv4 address, big endian
+	 * @param p
+	 *            - the port
+	 * @return - this message
+	 */
+	public KrpcMessage addPeer(int address, int p) {
+		checkPort(p);
+		int i = values.append(PEER_LENGTH);
+		putCompact(values.data, i, address, p);
+		return this;
+	}
+
+	// resolves the method by the name decoded
+	void resolveMethod() {
+		method = Method.of(methodName.data, methodName.length);
+	}
+
+	private int node(int index) {
+		if (index < 0 || index >= nodeCount()) {
+			throw new IndexOutOfBoundsException("Node " + index + " of "
+					+ nodeCount());
+		}
+		return index * NODE_LENGTH;
+	}
+
+	private int peer(int index) {
+		if (index < 0 || index >= peerCount()) {
+			throw new IndexOutOfBoundsException("Peer " + index + " of "
+					+ peerCount());
+		}
+		return index * PEER_LENGTH;
+	}
+
+	private static int address(byte[] b, int i) {
+		return (b[i] & 0xff) << 24 | (b[i + 1] & 0xff) << 16
+				| (b[i + 2] & 0xff) << 8 | b[i + 3] & 0xff;
+	}
+
+	private static int port(byte[] b, int i) {
+		return (b[i] & 0xff) << 8 | b[i + 1] & 0xff;
+	}
+
+	private static void putCompact(byte[] b, int i, int address, int p) {
+		b[i] = (byte) (address >>> 24);
+		b[i + 1] = (byte) (address >>> 16);
+		b[i + 2] = (byte) (address >>> 8);
+		b[i + 3] = (byte) address;
+		b[i + 4] = (byte) (p >>> 8);
+		b[i + 5] = (byte) p;
+	}
+
+	private static ByteString checkId(ByteString value) {
+		if (value != null && value.length() != ID_LENGTH) {
+			throw new IllegalArgumentException("The id of " + value.length()
+					+ " bytes");
+		}
+		return value;
+	}
+
+	private static int checkPort(int p) {
+		if (p < 0 || p > 0xffff) {
+			throw new IllegalArgumentException("Port " + p);
+		}
+		return p;
+	}
+
+	/**
+	 * The byte string field, copied to the array that is reused, the length
+	 * is -1 when the field isn't set.
+	 */
+	static final class Field {
+
+		private static final int INITIAL_CAPACITY = 32;
+
+		byte[] data = new byte[INITIAL_CAPACITY];
+		int length;
+
+		void clear() {
+			length = -1;
+		}
+
+		boolean isSet() {
+			return length >= 0;
+		}
+
+		ByteString view() {
+			return length < 0 ? null : ByteString.wrap(data, 0, length);
+		}
+
+		void set(ByteString value) {
+			if (value == null) {
+				length = -1;
+				return;
+			}
+			ensure(value.length());
+			value.copyTo(data, 0);
+			length = value.length();
+		}
+
+		void set(byte[] src, int offset, int len) {
+			ensure(len);
+			System.arraycopy(src, offset, data, 0, len);
+			length = len;
+		}
+
+		void set(ByteBuffer src, int offset, int len) {
+			ensure(len);
+			copy(src, offset, 0, len);
+			length = len;
+		}
+
+		void append(ByteBuffer src, int offset, int len) {
+			copy(src, offset, append(len), len);
+		}
+
+		private void copy(ByteBuffer src, int offset, int index, int len) {
+			if (src.hasArray()) {
+				System.arraycopy(src.array(), src.arrayOffset() + offset, data,
+						index, len);
+			} else {
+				for (int i = 0; i < len; i++) {
+					data[index + i] = src.get(offset + i);
+				}
+			}
+		}
+
+		// appends the bytes to the field, the field becomes set
+		int append(int len) {
+			int i = Math.max(length, 0);
+			if (data.length - i < len) {
+				byte[] grown = new byte[Math.max(data.length << 1, i + len)];
+				System.arraycopy(data, 0, grown, 0, i);
+				data = grown;
+			}
+			length = i + len;
+			return i;
+		}
+
+		private void ensure(int len) {
+			if (data.length < len) {
+				data = new byte[Math.max(data.length << 1, len)];
+			}
+		}
+
+		static boolean equals(byte[] a, byte[] b, int length) {
+			for (int i = 0; i < length; i++) {
+				if (a[i] != b[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
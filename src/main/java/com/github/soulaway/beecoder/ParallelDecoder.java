@@ -0,0 +1,207 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Decodes the concatenated Bencoded documents (resume data dumps, tracker
+ * logs) on the ForkJoinPool. The boundaries of the top-level values are found
+ * first by the {@link BencodeValidator} scan, that allocates nothing, then
+ * the ranges of the documents are decoded in parallel, each by the
+ * {@link BencodeDecoder}.
+ *
+ * <pre>
+ * ParallelDecoder d = new ParallelDecoder();
+ * List&lt;Object&gt; docs = d.decodeAll(Paths.get("resume.dump"));
+ * </pre>
+ *
+ * The decoded strings are the views over the source buffer, like those of
+ * the BencodeDecoder. The decoder has no state of its own and can be shared
+ * between threads.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class ParallelDecoder {
+
+	// the documents of this many bytes aren't split between the tasks
+	private static final int MIN_TASK_BYTES = 64 * 1024;
+
+	private final BencodeLimits limits;
+	private final BencodeDecoder decoder;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates the decoder with the {@link BencodeLimits#DEFAULT} limits, on
+	 * the common pool.
+	 */
+	public ParallelDecoder() {
+		this(BencodeLimits.DEFAULT, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates the decoder.
+	 *
+	 * @param limits
+	 *            - the limits every document is checked against
+	 * @param pool
+	 *            - the pool the documents are decoded on
+	 */
+	public ParallelDecoder(BencodeLimits limits, ForkJoinPool pool) {
+		this.limits = limits;
+		this.decoder = new BencodeDecoder(limits);
+		this.pool = pool;
+	}
+
+	/**
+	 * Finds where the documents end, checking them on the way.
+	 *
+	 * @param buf
+	 *            - the concatenated documents, from the position to the
+	 *            limit, the position isn't changed
+	 * @return - the absolute index right behind every document, in order
+	 * @throws IOException
+	 *             when data is malformed
+	 */
+	public int[] boundaries(ByteBuffer buf) throws IOException {
+		BencodeValidator validator = new BencodeValidator(limits, false);
+		ByteBuffer scan = buf.duplicate();
+		int[] ends = new int[16];
+		int n = 0;
+		while (scan.hasRemaining()) {
+			if (n == ends.length) {
+				ends = Arrays.copyOf(ends, n << 1);
+			}
+			ends[n] = validator.validate(scan);
+			BeeCoder.Utils.position(scan, ends[n++]);
+		}
+		return Arrays.copyOf(ends, n);
+	}
+
+	/**
+	 * Decodes the documents in parallel.
+	 *
+	 * @param buf
+	 *            - the concatenated documents, from the position to the
+	 *            limit, the position is moved to the limit
+	 * @return - the decoded documents in order
+	 * @throws IOException
+	 *             when data is malformed, nothing is decoded then
+	 */
+	public List<Object> decodeAll(ByteBuffer buf) throws IOException {
+		int[] ends = boundaries(buf);
+		Object[] docs = new Object[ends.length];
+		run(new DecodeTask(buf, buf.position(), ends, 0, ends.length, docs,
+				null));
+		BeeCoder.Utils.position(buf, buf.limit());
+		return Arrays.asList(docs);
+	}
+
+	/**
+	 * Decodes the documents in parallel, passing every one to the consumer
+	 * as soon as it is decoded, in no particular order.
+	 *
+	 * @param buf
+	 *            - the concatenated documents, from the position to the
+	 *            limit, the position is moved to the limit
+	 * @param consumer
+	 *            - receives the documents, it is called by the threads of
+	 *            the pool concurrently
+	 * @return - the number of the documents
+	 * @throws IOException
+	 *             when data is malformed, nothing is decoded then
+	 */
+	public int decodeAll(ByteBuffer buf, Consumer<Object> consumer)
+			throws IOException {
+		int[] ends = boundaries(buf);
+		run(new DecodeTask(buf, buf.position(), ends, 0, ends.length, null,
+				consumer));
+		BeeCoder.Utils.position(buf, buf.limit());
+		return ends.length;
+	}
+
+	/**
+	 * Decodes the documents of the file in parallel, by memory mapping it.
+	 *
+	 * @param path
+	 *            - the file of the concatenated documents
+	 * @return - the decoded documents in order
+	 * @throws IOException
+	 *             when the file can't be read or data is malformed
+	 */
+	public List<Object> decodeAll(Path path) throws IOException {
+		return decodeAll(BeeCoder.Utils.map(path));
+	}
+
+	private void run(DecodeTask task) throws IOException {
+		try {
+			pool.invoke(task);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Decodes the range of the documents, splitting it in halves till it's
+	 * small enough.
+	 */
+	@SuppressWarnings("serial")
+	private final class DecodeTask extends RecursiveAction {
+
+		private final ByteBuffer buf;
+		private final int start;
+		private final int[] ends;
+		private final int from;
+		private final int to;
+		private final Object[] docs;
+		private final Consumer<Object> consumer;
+
+		DecodeTask(ByteBuffer buf, int start, int[] ends, int from, int to,
+				Object[] docs, Consumer<Object> consumer) {
+			this.buf = buf;
+			this.start = start;
+			this.ends = ends;
+			this.from = from;
+			this.to = to;
+			this.docs = docs;
+			this.consumer = consumer;
+		}
+
+		@Override
+		protected void compute() {
+			if (from == to) {
+				return;
+			}
+			int first = from == 0 ? start : ends[from - 1];
+			if (to - from > 1 && ends[to - 1] - first > MIN_TASK_BYTES) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new DecodeTask(buf, start, ends, from, mid, docs,
+						consumer), new DecodeTask(buf, start, ends, mid, to,
+						docs, consumer));
+				return;
+			}
+			ByteBuffer range = buf.duplicate();
+			BeeCoder.Utils.limit(range, ends[to - 1]);
+			BeeCoder.Utils.position(range, first);
+			try {
+				for (int i = from; i < to; i++) {
+					Object doc = decoder.decode(range);
+					if (docs != null) {
+						docs[i] = doc;
+					} else {
+						consumer.accept(doc);
+					}
+				}
+			} catch (IOException e) {
+				// can't happen, the documents are validated with the same limits
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
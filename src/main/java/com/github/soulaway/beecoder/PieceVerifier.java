@@ -0,0 +1,707 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks the downloaded data against the piece hashes of the torrent, the
+ * way the client rechecks it after the crash. The layout of the files and
+ * the hashes are taken from the decoded torrent: the 'pieces' SHA-1 hashes
+ * over the files concatenated (BitTorrent v1 and the hybrid torrents, the
+ * padding files are the zeros), or the SHA-256 merkle trees of the 16 KiB
+ * blocks of every file, the 'piece layers' and the 'pieces root' (v2). The
+ * ranges of the pieces are hashed in parallel on the ForkJoinPool, every
+ * task reads the files by the large positional reads.
+ *
+ * <pre>
+ * BitSet have = new PieceVerifier().verify(torrent, downloads, (piece, length, valid) -&gt; {
+ * 	progress.add(length);
+ * 	if (!valid) {
+ * 		log.warn("Piece " + piece + " is corrupt");
+ * 	}
+ * });
+ * </pre>
+ *
+ * The missing files and the files shorter than the torrent says fail their
+ * pieces, the other I/O errors stop the check. The verifier has no state of
+ * its own and can be shared between threads.
+ *
+ * @author Dmitry G. Soloviev (soulaway)
+ */
+public final class PieceVerifier {
+
+	/** the size of the v2 merkle tree leaf block */
+	public static final int BLOCK_SIZE = 16 * 1024;
+
+	// the multiple of the block size
+	private static final int READ_SIZE = 1024 * 1024;
+	// the pieces of this many bytes aren't split between the tasks
+	private static final long MIN_TASK_BYTES = 4L * 1024 * 1024;
+	private static final int SHA1_LENGTH = 20;
+	private static final int SHA256_LENGTH = 32;
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * Receives the result of every piece. The method is called by the
+	 * threads of the pool concurrently, in no particular order.
+	 */
+	public interface Listener {
+
+		/**
+		 * @param piece
+		 *            - the index of the piece
+		 * @param length
+		 *            - the number of the bytes of the piece
+		 * @param valid
+		 *            - true when the data matches the hash
+		 */
+		void verified(int piece, long length, boolean valid);
+	}
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates the verifier on the common pool.
+	 */
+	public PieceVerifier() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates the verifier.
+	 *
+	 * @param pool
+	 *            - the pool the pieces are hashed on
+	 */
+	public PieceVerifier(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Verifies the data of the torrent.
+	 *
+	 * @param torrent
+	 *            - the decoded torrent, with the info dictionary, and the
+	 *            piece layers for v2
+	 * @param dir
+	 *            - the directory the torrent is downloaded to, the files are
+	 *            its 'name' or in the 'name' directory
+	 * @param listener
+	 *            - receives the result of every piece, may be null
+	 * @return - the valid pieces
+	 * @throws IOException
+	 *             when the torrent is malformed or the file can't be read
+	 */
+	public BitSet verify(BencodeDict torrent, Path dir, Listener listener)
+			throws IOException {
+		return verify(Layout.of(torrent, dir), listener);
+	}
+
+	/**
+	 * Verifies the data of the torrent, only the info dictionary and the
+	 * piece layers are materialized.
+	 *
+	 * @param torrent
+	 *            - the indexed torrent
+	 * @param dir
+	 *            - the directory the torrent is downloaded to, the files are
+	 *            its 'name' or in the 'name' directory
+	 * @param listener
+	 *            - receives the result of every piece, may be null
+	 * @return - the valid pieces
+	 * @throws IOException
+	 *             when the torrent is malformed or the file can't be read
+	 */
+	public BitSet verify(IndexedDocument torrent, Path dir, Listener listener)
+			throws IOException {
+		IndexedDocument.Node info = torrent.root().get("info");
+		if (info == null || !info.isDict()) {
+			throw new IOException("The torrent has no info dictionary");
+		}
+		IndexedDocument.Node layers = torrent.root().get("piece layers");
+		return verify(Layout.of((BencodeDict) info.materialize(),
+				layers == null || !layers.isDict() ? null
+						: (BencodeDict) layers.materialize(), dir), listener);
+	}
+
+	/**
+	 * @param torrent
+	 *            - the decoded torrent
+	 * @return - the number of the pieces verified
+	 * @throws IOException
+	 *             when the torrent is malformed
+	 */
+	public static int pieceCount(BencodeDict torrent) throws IOException {
+		return Layout.of(torrent, null).pieces;
+	}
+
+	private BitSet verify(Layout layout, Listener listener) throws IOException {
+		boolean[] valid = new boolean[layout.pieces];
+		try {
+			pool.invoke(new VerifyTask(layout, 0, layout.pieces, valid,
+					listener));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		BitSet bits = new BitSet(valid.length);
+		for (int i = 0; i < valid.length; i++) {
+			if (valid[i]) {
+				bits.set(i);
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Hashes the range of the pieces, splitting it in halves till it's small
+	 * enough.
+	 */
+	@SuppressWarnings("serial")
+	private static final class VerifyTask extends RecursiveAction {
+
+		private final Layout layout;
+		private final int from;
+		private final int to;
+		private final boolean[] valid;
+		private final Listener listener;
+
+		VerifyTask(Layout layout, int from, int to, boolean[] valid,
+				Listener listener) {
+			this.layout = layout;
+			this.from = from;
+			this.to = to;
+			this.valid = valid;
+			this.listener = listener;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1 && (to - from) * layout.pieceLength > MIN_TASK_BYTES) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new VerifyTask(layout, from, mid, valid, listener),
+						new VerifyTask(layout, mid, to, valid, listener));
+				return;
+			}
+			Scratch scratch = SCRATCH.get();
+			try (Source files = new Source(layout, scratch)) {
+				for (int i = from; i < to; i++) {
+					valid[i] = layout.v2 ? verifyV2(i, files, scratch)
+							: verifyV1(i, files, scratch);
+					if (listener != null) {
+						listener.verified(i, layout.pieceSize(i), valid[i]);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// hashes the piece of the files concatenated
+		private boolean verifyV1(int piece, Source files, Scratch scratch)
+				throws IOException {
+			MessageDigest md = scratch.sha1;
+			md.reset();
+			long pos = piece * layout.pieceLength;
+			long end = pos + layout.pieceSize(piece);
+			int f = layout.fileAt(pos);
+			while (pos < end) {
+				long fileEnd = layout.offsets[f] + layout.lengths[f];
+				if (pos >= fileEnd) {
+					f++;
+					continue;
+				}
+				long n = Math.min(end, fileEnd) - pos;
+				long filePos = pos - layout.offsets[f];
+				while (n > 0) {
+					int chunk = (int) Math.min(n, READ_SIZE);
+					if (!files.read(f, filePos, chunk)) {
+						return false;
+					}
+					md.update(scratch.buf, 0, chunk);
+					filePos += chunk;
+					pos += chunk;
+					n -= chunk;
+				}
+			}
+			return scratch.digest(md, layout.hashes, piece * SHA1_LENGTH,
+					SHA1_LENGTH);
+		}
+
+		// computes the merkle root of the blocks of the piece
+		private boolean verifyV2(int piece, Source files, Scratch scratch)
+				throws IOException {
+			int f = layout.fileOfPiece(piece);
+			long fileLength = layout.lengths[f];
+			long filePos = (piece - layout.offsets[f]) * layout.pieceLength;
+			long n = layout.pieceSize(piece);
+			int blocks = (int) ((n + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			// the small file is the single tree, the piece is its subtree
+			int leaves;
+			if (fileLength > layout.pieceLength) {
+				leaves = (int) (layout.pieceLength / BLOCK_SIZE);
+			} else {
+				leaves = blocks == 1 ? 1 : Integer.highestOneBit(blocks - 1) << 1;
+			}
+			byte[] tree = scratch.tree(leaves * SHA256_LENGTH);
+			MessageDigest md = scratch.sha256;
+			int leaf = 0;
+			while (n > 0) {
+				int chunk = (int) Math.min(n, READ_SIZE);
+				if (!files.read(f, filePos, chunk)) {
+					return false;
+				}
+				for (int i = 0; i < chunk; i += BLOCK_SIZE) {
+					md.update(scratch.buf, i, Math.min(BLOCK_SIZE, chunk - i));
+					scratch.digestTo(md, tree, leaf++ * SHA256_LENGTH);
+				}
+				filePos += chunk;
+				n -= chunk;
+			}
+			Arrays.fill(tree, leaf * SHA256_LENGTH, leaves * SHA256_LENGTH,
+					(byte) 0);
+			for (int width = leaves; width > 1; width >>>= 1) {
+				for (int i = 0; i < width >>> 1; i++) {
+					md.update(tree, i * 2 * SHA256_LENGTH, 2 * SHA256_LENGTH);
+					scratch.digestTo(md, tree, i * SHA256_LENGTH);
+				}
+			}
+			ByteString expected = layout.fileHashes[f];
+			int offset = fileLength <= layout.pieceLength ? 0
+					: (int) (piece - layout.offsets[f]) * SHA256_LENGTH;
+			for (int i = 0; i < SHA256_LENGTH; i++) {
+				if (tree[i] != expected.byteAt(offset + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Keeps the file open while the task reads it, the missing file is
+	 * remembered till the task reads the other one.
+	 */
+	private static final class Source implements AutoCloseable {
+
+		private final Layout layout;
+		private final Scratch scratch;
+		private int file = -1;
+		private FileChannel channel;
+
+		Source(Layout layout, Scratch scratch) {
+			this.layout = layout;
+			this.scratch = scratch;
+		}
+
+		// reads the bytes of the file to the scratch buffer, false when the
+		// file is missing or shorter
+		boolean read(int f, long position, int length) throws IOException {
+			if (layout.pads[f]) {
+				Arrays.fill(scratch.buf, 0, length, (byte) 0);
+				return true;
+			}
+			if (f != file) {
+				close();
+				file = f;
+				try {
+					channel = FileChannel.open(layout.paths[f],
+							StandardOpenOption.READ);
+				} catch (NoSuchFileException e) {
+					channel = null;
+				}
+			}
+			if (channel == null) {
+				return false;
+			}
+			ByteBuffer dst = ByteBuffer.wrap(scratch.buf, 0, length);
+			while (dst.hasRemaining()) {
+				if (channel.read(dst, position + dst.position()) < 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+			file = -1;
+		}
+	}
+
+	/**
+	 * The digests and the buffers of the thread, reused by its tasks.
+	 */
+	private static final class Scratch {
+
+		final MessageDigest sha1 = digest("SHA-1");
+		final MessageDigest sha256 = digest("SHA-256");
+		final byte[] buf = new byte[READ_SIZE];
+		private byte[] tree = new byte[SHA256_LENGTH];
+		private final byte[] hash = new byte[SHA256_LENGTH];
+
+		byte[] tree(int length) {
+			if (tree.length < length) {
+				tree = new byte[length];
+			}
+			return tree;
+		}
+
+		void digestTo(MessageDigest md, byte[] dst, int offset) {
+			try {
+				md.digest(dst, offset, md.getDigestLength());
+			} catch (DigestException e) {
+				// the room is the digest length
+				throw new IllegalStateException(e);
+			}
+		}
+
+		// compares the digest with the hash in the string
+		boolean digest(MessageDigest md, ByteString hashes, int offset,
+				int length) {
+			digestTo(md, hash, 0);
+			for (int i = 0; i < length; i++) {
+				if (hash[i] != hashes.byteAt(offset + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		static MessageDigest digest(String algorithm) {
+			try {
+				return MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				// every Java platform supports SHA-1 and SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * The files of the torrent and the hashes of their pieces.
+	 */
+	static final class Layout {
+
+		final boolean v2;
+		final long pieceLength;
+		final int pieces;
+		final Path[] paths;
+		final long[] lengths;
+		final boolean[] pads;
+		// v1: the offset of the file in the files concatenated, v2: the index
+		// of its first piece
+		final long[] offsets;
+		final long total;
+		// v1: the 'pieces' string
+		final ByteString hashes;
+		// v2: the piece layer of the file, or its root, when it's the single
+		// piece
+		final ByteString[] fileHashes;
+
+		private Layout(boolean v2, long pieceLength, List<Path> paths,
+				List<Long> lengths, List<Boolean> pads, ByteString hashes,
+				List<ByteString> fileHashes) throws IOException {
+			this.v2 = v2;
+			this.pieceLength = pieceLength;
+			int n = paths.size();
+			this.paths = paths.toArray(new Path[n]);
+			this.lengths = new long[n];
+			this.pads = new boolean[n];
+			this.offsets = new long[n];
+			this.hashes = hashes;
+			this.fileHashes = v2 ? fileHashes.toArray(new ByteString[n]) : null;
+			long offset = 0;
+			long count = 0;
+			for (int i = 0; i < n; i++) {
+				this.lengths[i] = lengths.get(i);
+				this.pads[i] = pads.get(i);
+				if (v2) {
+					this.offsets[i] = count;
+					count += (this.lengths[i] + pieceLength - 1) / pieceLength;
+				} else {
+					this.offsets[i] = offset;
+				}
+				offset += this.lengths[i];
+			}
+			this.total = offset;
+			if (!v2) {
+				count = (offset + pieceLength - 1) / pieceLength;
+				if (hashes.length() != count * SHA1_LENGTH) {
+					throw new IOException("The torrent has "
+							+ hashes.length() / SHA1_LENGTH + " piece hashes, "
+							+ count + " pieces expected");
+				}
+			}
+			if (count > Integer.MAX_VALUE) {
+				throw new IOException("The torrent has " + count + " pieces");
+			}
+			this.pieces = (int) count;
+		}
+
+		static Layout of(BencodeDict torrent, Path dir) throws IOException {
+			BencodeDict info = dict(torrent.get("info"), "info");
+			if (info == null) {
+				throw new IOException("The torrent has no info dictionary");
+			}
+			return of(info, dict(torrent.get("piece layers"), "piece layers"),
+					dir);
+		}
+
+		static Layout of(BencodeDict info, BencodeDict pieceLayers, Path dir)
+				throws IOException {
+			long pieceLength = integer(info, "piece length", 0);
+			String name = pathElement(info.get("name"));
+			ByteString pieces = bytes(info.get("pieces"), "pieces");
+			List<Path> paths = new ArrayList<Path>();
+			List<Long> lengths = new ArrayList<Long>();
+			List<Boolean> pads = new ArrayList<Boolean>();
+			if (pieces != null) {
+				if (pieceLength <= 0) {
+					throw new IOException("The torrent piece length "
+							+ pieceLength);
+				}
+				BencodeList files = list(info.get("files"), "files");
+				if (files == null) {
+					paths.add(resolve(dir, name));
+					lengths.add(length(info));
+					pads.add(false);
+				} else {
+					Path base = resolve(dir, name);
+					for (Object o : files) {
+						BencodeDict file = dict(o, "file");
+						BencodeList elements = list(file.get("path"), "path");
+						if (elements == null) {
+							throw new IOException("The torrent file has no path");
+						}
+						Path path = base;
+						for (Object element : elements) {
+							path = resolve(path, pathElement(element));
+						}
+						paths.add(path);
+						lengths.add(length(file));
+						ByteString attr = bytes(file.get("attr"), "attr");
+						pads.add(attr != null && attr.toString().indexOf('p') >= 0);
+					}
+				}
+				return new Layout(false, pieceLength, paths, lengths, pads,
+						pieces, null);
+			}
+			BencodeDict tree = dict(info.get("file tree"), "file tree");
+			if (tree == null) {
+				throw new IOException("The torrent has neither pieces nor file tree");
+			}
+			if (pieceLength < BLOCK_SIZE || Long.bitCount(pieceLength) != 1) {
+				throw new IOException("The v2 torrent piece length "
+						+ pieceLength);
+			}
+			List<ByteString> roots = new ArrayList<ByteString>();
+			// the single file is the 'name' itself, the others are in it
+			boolean single = tree.size() == 1
+					&& dict(tree.valueAt(0), "file tree").get("") != null;
+			walk(tree, single ? dir : resolve(dir, name), paths, lengths,
+					roots);
+			List<ByteString> fileHashes = new ArrayList<ByteString>();
+			for (int i = 0; i < paths.size(); i++) {
+				pads.add(false);
+				long length = lengths.get(i);
+				ByteString root = roots.get(i);
+				if (length <= pieceLength) {
+					fileHashes.add(root);
+					continue;
+				}
+				ByteString layer = pieceLayers == null ? null : bytes(
+						pieceLayers.get(root), "piece layer");
+				long count = (length + pieceLength - 1) / pieceLength;
+				if (layer == null || layer.length() != count * SHA256_LENGTH) {
+					throw new IOException("The torrent has no piece layer of "
+							+ paths.get(i));
+				}
+				if (!layerMatches(layer, count, pieceLength, root)) {
+					throw new IOException("The piece layer of " + paths.get(i)
+							+ " doesn't match its pieces root");
+				}
+				fileHashes.add(layer);
+			}
+			return new Layout(true, pieceLength, paths, lengths, pads, null,
+					fileHashes);
+		}
+
+		// the piece layer is the level of the tree the info dictionary has the
+		// root of, the pieces beyond the file are the subtrees of zeros
+		private static boolean layerMatches(ByteString layer, long count,
+				long pieceLength, ByteString root) {
+			MessageDigest md = Scratch.digest("SHA-256");
+			byte[] pad = new byte[SHA256_LENGTH];
+			for (long leaves = pieceLength / BLOCK_SIZE; leaves > 1; leaves >>>= 1) {
+				md.update(pad);
+				md.update(pad);
+				pad = md.digest();
+			}
+			int width = (int) count == 1 ? 1 : Integer
+					.highestOneBit((int) count - 1) << 1;
+			byte[] tree = new byte[width * SHA256_LENGTH];
+			layer.copyTo(tree, 0);
+			for (int i = (int) count; i < width; i++) {
+				System.arraycopy(pad, 0, tree, i * SHA256_LENGTH, SHA256_LENGTH);
+			}
+			for (; width > 1; width >>>= 1) {
+				for (int i = 0; i < width >>> 1; i++) {
+					md.update(tree, i * 2 * SHA256_LENGTH, 2 * SHA256_LENGTH);
+					System.arraycopy(md.digest(), 0, tree, i * SHA256_LENGTH,
+							SHA256_LENGTH);
+				}
+			}
+			for (int i = 0; i < SHA256_LENGTH; i++) {
+				if (tree[i] != root.byteAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		// collects the files of the v2 tree, skipping the empty ones
+		private static void walk(BencodeDict tree, Path dir, List<Path> paths,
+				List<Long> lengths, List<ByteString> roots) throws IOException {
+			for (int i = 0; i < tree.size(); i++) {
+				BencodeDict node = dict(tree.valueAt(i), "file tree");
+				Path path = resolve(dir, pathElement(tree.keyAt(i)));
+				BencodeDict file = dict(node.get(""), "file");
+				if (file == null) {
+					walk(node, path, paths, lengths, roots);
+					continue;
+				}
+				long length = length(file);
+				if (length == 0) {
+					continue;
+				}
+				ByteString root = bytes(file.get("pieces root"), "pieces root");
+				if (root == null || root.length() != SHA256_LENGTH) {
+					throw new IOException("The torrent has no pieces root of "
+							+ path);
+				}
+				paths.add(path);
+				lengths.add(length);
+				roots.add(root);
+			}
+		}
+
+		private static long length(BencodeDict file) throws IOException {
+			long length = integer(file, "length", -1);
+			if (length < 0) {
+				throw new IOException("The torrent file length " + length);
+			}
+			return length;
+		}
+
+		// the torrent is untrusted, so the value of the wrong type is the
+		// malformed torrent, not the ClassCastException
+		private static BencodeDict dict(Object value, String what)
+				throws IOException {
+			if (value == null || value instanceof BencodeDict) {
+				return (BencodeDict) value;
+			}
+			throw new IOException("The torrent " + what
+					+ " is not the dictionary");
+		}
+
+		private static BencodeList list(Object value, String what)
+				throws IOException {
+			if (value == null || value instanceof BencodeList) {
+				return (BencodeList) value;
+			}
+			throw new IOException("The torrent " + what + " is not the list");
+		}
+
+		private static ByteString bytes(Object value, String what)
+				throws IOException {
+			if (value == null || value instanceof ByteString) {
+				return (ByteString) value;
+			}
+			throw new IOException("The torrent " + what
+					+ " is not the byte string");
+		}
+
+		private static long integer(BencodeDict dict, String key,
+				long defaultValue) throws IOException {
+			Object value = dict.get(key);
+			if (value == null) {
+				return defaultValue;
+			} else if (value instanceof Number
+					&& !(value instanceof BigInteger)) {
+				return ((Number) value).longValue();
+			}
+			throw new IOException("The torrent " + key
+					+ " is not the 64-bit integer");
+		}
+
+		// the torrent can't point out of the directory
+		private static String pathElement(Object value) throws IOException {
+			String element = value == null ? null : bytes(value, "file name")
+					.toString();
+			if (element == null || element.isEmpty() || element.equals(".")
+					|| element.equals("..") || element.indexOf('/') >= 0
+					|| element.indexOf('\\') >= 0 || element.indexOf(0) >= 0) {
+				throw new IOException("The torrent file name is invalid: "
+						+ element);
+			}
+			return element;
+		}
+
+		private static Path resolve(Path dir, String element) {
+			return dir == null ? null : dir.resolve(element);
+		}
+
+		long pieceSize(int piece) {
+			if (v2) {
+				int f = fileOfPiece(piece);
+				return Math.min(pieceLength, lengths[f] - (piece - offsets[f])
+						* pieceLength);
+			}
+			return Math.min(pieceLength, total - piece * pieceLength);
+		}
+
+		// the first file of the v1 piece, the empty ones included
+		int fileAt(long pos) {
+			int i = Arrays.binarySearch(offsets, pos);
+			if (i < 0) {
+				return -i - 2;
+			}
+			// the empty files share the offset with the next one
+			while (i > 0 && offsets[i - 1] == pos) {
+				i--;
+			}
+			return i;
+		}
+
+		int fileOfPiece(int piece) {
+			int i = Arrays.binarySearch(offsets, piece);
+			return i < 0 ? -i - 2 : i;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for BatchDecoder.
+ */
+public class BatchDecoderTest extends Assert {
+
+	private static final int FILES = 100;
+
+	private final BatchDecoder decoder = new BatchDecoder(
+			BencodeLimits.DEFAULT, 3);
+	private Path dir;
+
+	/**
+	 * Collects the results of the batch.
+	 */
+	private static class Results implements BatchDecoder.Listener {
+
+		final Map<Path, Object> decoded = new ConcurrentHashMap<Path, Object>();
+		final Map<Path, IOException> failed = new ConcurrentHashMap<Path, IOException>();
+
+		@Override
+		public void decoded(Path path, Object value) {
+			decoded.put(path, value);
+		}
+
+		@Override
+		public void failed(Path path, IOException e) {
+			failed.put(path, e);
+		}
+	}
+
+	@BeforeClass
+	public void createFiles() throws IOException {
+		dir = Files.createTempDirectory("beecoder-batch");
+		for (int i = 0; i < FILES; i++) {
+			BencodeWriter w = new BencodeWriter();
+			// every tenth file is large enough to be mapped
+			w.startDict().key("id").value(i).key("pieces")
+					.value(new byte[i % 10 == 0 ? 300000 : 100]).end();
+			Files.write(dir.resolve(i + ".torrent"), w.toByteArray());
+		}
+		Files.write(dir.resolve("broken.torrent"), "d2:id".getBytes("UTF-8"));
+		Files.write(dir.resolve("trailing.torrent"), "i1ei2e".getBytes("UTF-8"));
+		Files.write(dir.resolve("empty.torrent"), new byte[0]);
+		Files.write(dir.resolve("notes.txt"), "not bencode".getBytes("UTF-8"));
+	}
+
+	@AfterClass
+	public void deleteFiles() throws IOException {
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			stream.forEach(files::add);
+		}
+		for (Path file : files) {
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testDecodeDirectoryOk() throws IOException {
+		Results results = new Results();
+		assertEquals(decoder.decodeDirectory(dir, "*.torrent", results), FILES);
+		assertEquals(results.decoded.size(), FILES);
+		for (int i = 0; i < FILES; i++) {
+			BencodeDict doc = (BencodeDict) results.decoded.get(dir
+					.resolve(i + ".torrent"));
+			assertEquals(doc.get("id"), i);
+		}
+		assertEquals(results.failed.size(), 3);
+		assertEquals(results.failed.get(dir.resolve("broken.torrent"))
+				.getMessage(), BeeCoder.BC_MSG_EXCEPTION_STREAM_END + "Dict");
+		assertEquals(results.failed.get(dir.resolve("trailing.torrent"))
+				.getMessage(), BeeCoder.BC_MSG_EXCEPTION_TRAILING + 3);
+		assertEquals(results.failed.get(dir.resolve("empty.torrent"))
+				.getMessage(), BeeCoder.BC_MSG_EXCEPTION_STREAM_END + "Object");
+	}
+
+	@Test
+	public void testDecodeAllMissingFile() throws IOException {
+		Results results = new Results();
+		Path missing = dir.resolve("missing.torrent");
+		assertEquals(decoder.decodeAll(
+				Arrays.asList(dir.resolve("1.torrent"), missing), results), 1);
+		assertTrue(results.failed.containsKey(missing));
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testDecodeAllListenerFails() throws IOException {
+		decoder.decodeDirectory(dir, "*.torrent", new Results() {
+
+			@Override
+			public void decoded(Path path, Object value) {
+				throw new IllegalStateException("stop");
+			}
+		});
+	}
+
+	@Test(expectedExceptions = AssertionError.class,
+			expectedExceptionsMessageRegExp = "stop")
+	public void testDecodeAllListenerError() throws IOException {
+		decoder.decodeDirectory(dir, "*.torrent", new Results() {
+
+			@Override
+			public void decoded(Path path, Object value) {
+				throw new AssertionError("stop");
+			}
+		});
+	}
+}
@@ -0,0 +1,343 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the BeeCoder encoding and decoding paths against the
+ * {@link BenchmarkCorpus}. Besides ops/s every benchmark reports the "bytes"
+ * counter, that is the Bencoded bytes processed per second, the allocation
+ * rate is reported by the GC profiler enabled in the 'benchmark' maven profile.
+ *
+ * <pre>
+ * mvn -B -Pbenchmark test-compile exec:exec -Djmh.args="-prof gc BeeCoderBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BeeCoderBenchmark {
+
+	// the TCP segment payload of the Ethernet frame
+	private static final int CHUNK = 1460;
+
+	@Param({ BenchmarkCorpus.KRPC, BenchmarkCorpus.TORRENT,
+			BenchmarkCorpus.SCRAPE, BenchmarkCorpus.RESUME })
+	public String corpus;
+
+	private byte[] encoded;
+	private byte[] serialized;
+	private final List<Object> decoded = new ArrayList<Object>();
+	private Path file;
+	private int fileLength;
+	private final List<BencodeDict> dicts = new ArrayList<BencodeDict>();
+	private final BencodeDecoder decoder = new BencodeDecoder();
+	private final BencodeWriter writer = new BencodeWriter();
+	private final BencodeEncoder encoder = new BencodeEncoder();
+	private final ParallelDecoder parallelDecoder = new ParallelDecoder();
+	private final BencodeDecoder internDecoder = new BencodeDecoder(
+			BencodeLimits.DEFAULT, null, new KeyInterner());
+	private final DecodeCache cache = new DecodeCache(decoder, 256 << 20);
+	private byte[] first;
+	private final JsonTranscoder json = new JsonTranscoder(
+			JsonTranscoder.Binary.HEX);
+	private final BencodeValidator validator = new BencodeValidator(
+			BencodeLimits.DEFAULT, true);
+	private ByteBuffer encodedBuffer;
+	private MessageDigest sha1;
+
+	/**
+	 * Counts the Bencoded bytes passed through the codec, that JMH reports
+	 * as the bytes per second rate.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Bytes {
+
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		encoded = BenchmarkCorpus.get(corpus);
+		encodedBuffer = ByteBuffer.wrap(encoded);
+		try {
+			sha1 = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		ByteBuffer buf = ByteBuffer.wrap(encoded);
+		Object obj;
+		while ((obj = decoder.decode(buf)) != null) {
+			decoded.add(obj);
+			collectDicts(obj);
+			oos.writeObject(BeeCoder.Utils.toLegacy(obj));
+		}
+		oos.close();
+		serialized = bos.toByteArray();
+		// the file holds the single document, the first one of the corpus
+		buf = ByteBuffer.wrap(encoded);
+		decoder.decode(buf);
+		fileLength = buf.position();
+		first = Arrays.copyOf(encoded, fileLength);
+		file = Files.createTempFile("beecoder", "." + corpus);
+		Files.write(file, first);
+	}
+
+	private void collectDicts(Object obj) {
+		if (obj instanceof BencodeDict) {
+			dicts.add((BencodeDict) obj);
+			for (Object value : ((BencodeDict) obj).values()) {
+				collectDicts(value);
+			}
+		} else if (obj instanceof BencodeList) {
+			for (Object value : (BencodeList) obj) {
+				collectDicts(value);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	@Benchmark
+	public byte[] hashRaw(Bytes counter) {
+		counter.bytes += encoded.length;
+		for (Object obj : decoded) {
+			((BencodeDict) obj).raw().updateDigest(sha1);
+		}
+		return sha1.digest();
+	}
+
+	@Benchmark
+	public int lookupKeys() {
+		int found = 0;
+		for (BencodeDict d : dicts) {
+			for (int i = 0; i < d.size(); i++) {
+				if (d.get(d.keyAt(i)) != null) {
+					found++;
+				}
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public Object decodeBuffer(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		ByteBuffer buf = ByteBuffer.wrap(encoded);
+		Object last = null;
+		Object obj;
+		while ((obj = decoder.decode(buf)) != null) {
+			last = obj;
+		}
+		return last;
+	}
+
+	@Benchmark
+	public int decodeParallel(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		return parallelDecoder.decodeAll(ByteBuffer.wrap(encoded)).size();
+	}
+
+	@Benchmark
+	public int decodeIncremental(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		IncrementalDecoder d = new IncrementalDecoder(v -> {
+		});
+		int values = 0;
+		for (int off = 0; off < encoded.length; off += CHUNK) {
+			values += d.feed(encoded, off, Math.min(CHUNK, encoded.length - off));
+		}
+		return values;
+	}
+
+	@Benchmark
+	public int indexBuffer(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		ByteBuffer buf = ByteBuffer.wrap(encoded);
+		int entries = 0;
+		IndexedDocument doc;
+		while ((doc = decoder.index(buf)) != null) {
+			entries += doc.entries();
+		}
+		return entries;
+	}
+
+	@Benchmark
+	public int validate(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		ByteBuffer buf = encodedBuffer;
+		buf.clear();
+		int values = 0;
+		while (buf.hasRemaining()) {
+			buf.position(validator.validate(buf));
+			values++;
+		}
+		return values;
+	}
+
+	@Benchmark
+	public long readTokens(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		BencodeReader r = new BencodeReader(ByteBuffer.wrap(encoded));
+		long tokens = 0;
+		while (r.next() != BencodeReader.Token.EOF) {
+			tokens++;
+		}
+		return tokens;
+	}
+
+	@Benchmark
+	public int copyTokens(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		BencodeReader r = new BencodeReader(ByteBuffer.wrap(encoded));
+		BencodeWriter w = writer.reset();
+		BencodeReader.Token t;
+		while ((t = r.next()) != BencodeReader.Token.EOF) {
+			switch (t) {
+			case START_DICT:
+				w.startDict();
+				break;
+			case START_LIST:
+				w.startList();
+				break;
+			case KEY:
+				w.key(r.bytesValue());
+				break;
+			case INT:
+				w.value(r.longValue());
+				break;
+			case BYTES:
+				w.value(r.bytesValue());
+				break;
+			default:
+				w.end();
+			}
+		}
+		return w.size();
+	}
+
+	@Benchmark
+	public Object decodeFile(Bytes counter) throws IOException {
+		counter.bytes += fileLength;
+		return BeeCoder.INSTANCE.decodeFile(file);
+	}
+
+	@Benchmark
+	public Object decodeInterned(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		ByteBuffer buf = ByteBuffer.wrap(encoded);
+		Object last = null;
+		Object obj;
+		while ((obj = internDecoder.decode(buf)) != null) {
+			last = obj;
+		}
+		return last;
+	}
+
+	@Benchmark
+	public Object decodeCached(Bytes counter) throws IOException {
+		counter.bytes += fileLength;
+		// hits the document, the bytes are hashed and compared
+		return cache.decode(first);
+	}
+
+	@Benchmark
+	public void decodeStream(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		BeeCoder.INSTANCE.decodeStream(new ByteArrayInputStream(encoded),
+				new ObjectOutputStream(new NullOutputStream()));
+	}
+
+	@Benchmark
+	public int toJson(Bytes counter) throws IOException {
+		counter.bytes += encoded.length;
+		return json.toJson(ByteBuffer.wrap(encoded), new NullOutputStream());
+	}
+
+	@Benchmark
+	public int encode(Bytes counter) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(encoded.length);
+		for (Object obj : decoded) {
+			BeeCoder.INSTANCE.encode(obj, bos);
+		}
+		counter.bytes += bos.size();
+		return bos.size();
+	}
+
+	@Benchmark
+	public int encodeCanonical(Bytes counter) {
+		int size = 0;
+		for (Object obj : decoded) {
+			size += encoder.encode(obj).length;
+		}
+		counter.bytes += size;
+		return size;
+	}
+
+	@Benchmark
+	public int encodeStream(Bytes counter) throws IOException,
+			ClassNotFoundException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(encoded.length);
+		BeeCoder.INSTANCE.encodeStream(new ObjectInputStream(
+				new ByteArrayInputStream(serialized)), bos);
+		counter.bytes += bos.size();
+		return bos.size();
+	}
+
+	/**
+	 * Discards everything, so the serialization cost is measured without the
+	 * cost of storing its output.
+	 */
+	static final class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
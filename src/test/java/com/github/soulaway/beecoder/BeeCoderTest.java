@@ -8,7 +8,14 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -88,4 +95,79 @@ public class BeeCoderTest extends Assert {
 		BeeCoder.INSTANCE.decodeStream(bis, oos);
 	 }
 
+	@Test
+	public void testDecodeFileOk() throws IOException {
+		Path path = Files.createTempFile("beecoder", ".torrent");
+		try {
+			Files.write(path, "d4:name4:spam6:piecesi42ee".getBytes());
+			BencodeDict dict = (BencodeDict) BeeCoder.INSTANCE.decodeFile(path);
+			assertEquals(dict.size(), 2);
+			assertEquals(dict.keyAt(0), ByteString.of("name"));
+			assertEquals(dict.getString("name"), "spam");
+			assertEquals(dict.get("pieces"), 42);
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "unexpected data after the decoded value*.*")
+	public void testDecodeFileFailTrailing() throws IOException {
+		Path path = Files.createTempFile("beecoder", ".torrent");
+		try {
+			Files.write(path, "i1ei2e".getBytes());
+			BeeCoder.INSTANCE.decodeFile(path);
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test(dataProvider = "getEncodedStringExpectedList", dataProviderClass = BcodeTestData.class)
+	public void testDecodeEncodeRoundTrip(String encoded, List<Object> expected)
+			throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(encoded.getBytes());
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Object obj;
+		while ((obj = BeeCoder.INSTANCE.decode(buf)) != null) {
+			BeeCoder.INSTANCE.encode(obj, bos);
+		}
+		assertEquals(bos.toString(), encoded);
+	}
+
+	@Test
+	public void testEncodeMapOk() throws IOException {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("empty", new LinkedList<Object>());
+		map.put("long", 4294967296L);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BeeCoder.INSTANCE.encode(map, bos);
+		assertEquals(bos.toString(), "d5:emptyle4:longi4294967296ee");
+	}
+
+	@Test
+	public void testDecodeInputStreamOk() throws IOException {
+		Object obj = BeeCoder.INSTANCE.decode(new ByteArrayInputStream(
+				"l4:spami42ee".getBytes()));
+		assertEquals(BeeCoder.Utils.toLegacy(obj), Arrays.asList("spam", 42));
+	}
+
+	@Test
+	public void testStreamRoundTripBinary() throws Exception {
+		byte[] encoded = { '3', ':', (byte) 0xff, (byte) 0xfe, 'a', 'l', 'd',
+				'1', ':', (byte) 0x80, '1', ':', (byte) 0xe9, 'e', 'e' };
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		BeeCoder.INSTANCE.decodeStream(new ByteArrayInputStream(encoded),
+				new ObjectOutputStream(serialized));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BeeCoder.INSTANCE.encodeStream(new ObjectInputStream(
+				new ByteArrayInputStream(serialized.toByteArray())), bos);
+		assertEquals(bos.toByteArray(), encoded);
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "unexpected data after the decoded value*.*")
+	public void testDecodeBytesFailTrailing() throws IOException {
+		BeeCoder.INSTANCE.decode("i1ei2e".getBytes());
+	}
+
 }
@@ -0,0 +1,210 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Synthetic, but realistically shaped, Bencoded documents used by the
+ * benchmarks. The data is generated with a fixed seed, so every run measures
+ * exactly the same bytes.
+ */
+public final class BenchmarkCorpus {
+
+	public static final String KRPC = "krpc";
+	public static final String TORRENT = "torrent";
+	public static final String SCRAPE = "scrape";
+	public static final String RESUME = "resume";
+
+	private static final int TORRENT_FILES = 1000;
+	private static final int TORRENT_PIECE_LENGTH = 256 * 1024;
+	private static final int TORRENT_PIECES = 150000;
+	private static final int SCRAPE_HASHES = 20000;
+	private static final int RESUME_DOCUMENTS = 5000;
+
+	private BenchmarkCorpus() {
+	}
+
+	/**
+	 * Returns the encoded corpus by its name.
+	 *
+	 * @param name
+	 *            - one of {@link #KRPC}, {@link #TORRENT}, {@link #SCRAPE} or
+	 *            {@link #RESUME}
+	 * @return - the Bencoded bytes
+	 */
+	public static byte[] get(String name) {
+		switch (name) {
+		case KRPC:
+			return krpc();
+		case TORRENT:
+			return torrent();
+		case SCRAPE:
+			return scrape();
+		case RESUME:
+			return resume();
+		default:
+			throw new IllegalArgumentException("Unknown corpus " + name);
+		}
+	}
+
+	/**
+	 * Four concatenated DHT messages: ping query, find_node response,
+	 * get_peers response with peer values and announce_peer query.
+	 */
+	public static byte[] krpc() {
+		Random rnd = new Random(1);
+		Writer w = new Writer();
+		// ping
+		w.d().s("a").d().s("id").b(bytes(rnd, 20)).e().s("q").s("ping")
+				.s("t").s("aa").s("y").s("q").e();
+		// find_node response with 8 compact nodes
+		w.d().s("r").d().s("id").b(bytes(rnd, 20)).s("nodes")
+				.b(bytes(rnd, 8 * 26)).e().s("t").s("ab").s("y").s("r").e();
+		// get_peers response with 16 peer values
+		w.d().s("r").d().s("id").b(bytes(rnd, 20)).s("token")
+				.b(bytes(rnd, 8)).s("values").l();
+		for (int i = 0; i < 16; i++) {
+			w.b(bytes(rnd, 6));
+		}
+		w.e().e().s("t").s("ac").s("y").s("r").e();
+		// announce_peer
+		w.d().s("a").d().s("id").b(bytes(rnd, 20)).s("implied_port").i(1)
+				.s("info_hash").b(bytes(rnd, 20)).s("port").i(6881)
+				.s("token").b(bytes(rnd, 8)).e().s("q").s("announce_peer")
+				.s("t").s("ad").s("y").s("q").e();
+		return w.toByteArray();
+	}
+
+	/**
+	 * The multi-file .torrent of a few megabytes, the most of which is the
+	 * binary 'pieces' string.
+	 */
+	public static byte[] torrent() {
+		Random rnd = new Random(2);
+		Writer w = new Writer();
+		w.d().s("announce").s("http://tracker.example.org:6969/announce")
+				.s("comment").s("benchmark corpus").s("created by")
+				.s("beecoder").s("creation date").i(1414747183L);
+		w.s("info").d().s("files").l();
+		for (int i = 0; i < TORRENT_FILES; i++) {
+			w.d().s("length").i(TORRENT_PIECE_LENGTH * 150L + rnd.nextInt(1 << 20))
+					.s("path").l().s("dir" + (i % 37)).s("file" + i + ".bin").e()
+					.e();
+		}
+		w.e().s("name").s("benchmark").s("piece length")
+				.i(TORRENT_PIECE_LENGTH).s("pieces")
+				.b(bytes(rnd, TORRENT_PIECES * 20)).e();
+		w.e();
+		return w.toByteArray();
+	}
+
+	/**
+	 * The large tracker scrape response, the dictionary of binary 20 bytes
+	 * info-hash keys.
+	 */
+	public static byte[] scrape() {
+		Random rnd = new Random(3);
+		byte[][] hashes = new byte[SCRAPE_HASHES][];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = bytes(rnd, 20);
+		}
+		Arrays.sort(hashes, UNSIGNED);
+		Writer w = new Writer();
+		w.d().s("files").d();
+		for (byte[] hash : hashes) {
+			w.b(hash).d().s("complete").i(rnd.nextInt(5000)).s("downloaded")
+					.i(rnd.nextInt(1000000)).s("incomplete")
+					.i(rnd.nextInt(500)).e();
+		}
+		w.e().e();
+		return w.toByteArray();
+	}
+
+	/**
+	 * The dump of the concatenated resume data documents, one per torrent.
+	 */
+	public static byte[] resume() {
+		Random rnd = new Random(4);
+		Writer w = new Writer();
+		for (int i = 0; i < RESUME_DOCUMENTS; i++) {
+			w.d().s("active_time").i(rnd.nextInt(1 << 24)).s("file-format")
+					.s("libtorrent resume file").s("file_priority").l();
+			for (int f = 0; f < 1 + rnd.nextInt(20); f++) {
+				w.i(rnd.nextInt(8));
+			}
+			w.e().s("info-hash").b(bytes(rnd, 20)).s("peers")
+					.b(bytes(rnd, 6 * rnd.nextInt(50))).s("pieces")
+					.b(bytes(rnd, 1 + rnd.nextInt(2000))).s("save_path")
+					.s("/data/torrents/" + i).s("total_downloaded")
+					.i(rnd.nextLong() & Long.MAX_VALUE).s("total_uploaded")
+					.i(rnd.nextInt()).e();
+		}
+		return w.toByteArray();
+	}
+
+	private static final Comparator<byte[]> UNSIGNED = (a, b) -> {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return a.length - b.length;
+	};
+
+	private static byte[] bytes(Random rnd, int length) {
+		byte[] b = new byte[length];
+		rnd.nextBytes(b);
+		return b;
+	}
+
+	/**
+	 * Minimal raw Bencode writer, independent from the codec under the test.
+	 */
+	private static final class Writer {
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Writer d() {
+			out.write('d');
+			return this;
+		}
+
+		Writer l() {
+			out.write('l');
+			return this;
+		}
+
+		Writer e() {
+			out.write('e');
+			return this;
+		}
+
+		Writer i(long value) {
+			byte[] digits = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+			out.write('i');
+			out.write(digits, 0, digits.length);
+			out.write('e');
+			return this;
+		}
+
+		Writer s(String value) {
+			return b(value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		Writer b(byte[] value) {
+			byte[] length = Integer.toString(value.length).getBytes(StandardCharsets.US_ASCII);
+			out.write(length, 0, length.length);
+			out.write(':');
+			out.write(value, 0, value.length);
+			return this;
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Unit test for BencodeCodec.
+ */
+public class BencodeCodecTest extends Assert {
+
+	static class FileEntry {
+		long length;
+		List<String> path;
+	}
+
+	static class Info {
+		String name;
+		@BencodeKey("piece length")
+		int pieceLength;
+		byte[] pieces;
+		List<FileEntry> files;
+		@BencodeKey("private")
+		boolean isPrivate;
+		transient String ignored;
+	}
+
+	static class Torrent {
+		String announce;
+		@BencodeKey("creation date")
+		Long creationDate;
+		Info info;
+		Object extra;
+	}
+
+	static class Response {
+		int interval;
+		ByteString peers;
+		Integer complete;
+		BigInteger big;
+		Map<String, Long> stats;
+	}
+
+	static class Node {
+		String id;
+		List<Node> children;
+	}
+
+	static class NoConstructor {
+		NoConstructor(int x) {
+		}
+	}
+
+	static class Duplicated {
+		@BencodeKey("b")
+		int a;
+		int b;
+	}
+
+	private static byte[] torrent() throws IOException {
+		BencodeWriter w = new BencodeWriter();
+		w.startDict().key("announce").value("http://tracker/announce")
+				.key("comment").value("skipped").key("creation date")
+				.value(1400000000L).key("extra").startList().value(1)
+				.value("x").end().key("info").startDict().key("files")
+				.startList().startDict().key("length").value(10).key("path")
+				.startList().value("a").value("b.txt").end().end()
+				.startDict().key("length").value(20).key("path").startList()
+				.value("c").end().end().end().key("name").value("dir")
+				.key("piece length").value(16384).key("pieces")
+				.value(new byte[] { 1, 2, 3 }).key("private").value(1).end()
+				.end();
+		return w.toByteArray();
+	}
+
+	@Test
+	public void testDecodeOk() throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(torrent());
+		Torrent t = BencodeCodec.of(Torrent.class).decode(buf);
+		assertFalse(buf.hasRemaining());
+		assertEquals(t.announce, "http://tracker/announce");
+		assertEquals(t.creationDate, Long.valueOf(1400000000L));
+		assertEquals(t.extra, Arrays.asList(1, ByteString.of("x")));
+		assertEquals(t.info.name, "dir");
+		assertEquals(t.info.pieceLength, 16384);
+		assertEquals(t.info.pieces, new byte[] { 1, 2, 3 });
+		assertTrue(t.info.isPrivate);
+		assertEquals(t.info.files.size(), 2);
+		assertEquals(t.info.files.get(0).length, 10);
+		assertEquals(t.info.files.get(0).path, Arrays.asList("a", "b.txt"));
+		assertEquals(t.info.files.get(1).path, Arrays.asList("c"));
+	}
+
+	@Test
+	public void testEncodeCanonical() throws IOException {
+		byte[] data = torrent();
+		Torrent t = BencodeCodec.of(Torrent.class).decode(data);
+		byte[] encoded = BencodeCodec.of(Torrent.class).encode(t);
+		// the same as the tree encoded, but the key skipped
+		BencodeDict tree = (BencodeDict) new BencodeDecoder().decode(data);
+		Map<ByteString, Object> expected = new TreeMap<ByteString, Object>(
+				tree);
+		expected.remove(ByteString.of("comment"));
+		assertEquals(encoded, new BencodeEncoder().encode(expected));
+		assertTrue(new BencodeValidator(BencodeLimits.DEFAULT, true)
+				.isValid(ByteBuffer.wrap(encoded)));
+	}
+
+	@Test
+	public void testResponseRoundTrip() throws IOException {
+		Response r = new Response();
+		r.interval = 1800;
+		r.peers = ByteString.wrap(new byte[] { 127, 0, 0, 1, 0x1a, (byte) 0xe1 });
+		r.big = BigInteger.ONE.shiftLeft(70);
+		r.stats = new HashMap<String, Long>();
+		r.stats.put("z", 1L);
+		r.stats.put("a", 2L);
+		BencodeCodec<Response> codec = BencodeCodec.of(Response.class);
+		byte[] encoded = codec.encode(r);
+		assertEquals(new String(encoded, "ISO-8859-1"), "d3:bigi"
+				+ BigInteger.ONE.shiftLeft(70) + "e8:intervali1800e5:peers6:"
+				+ new String(r.peers.toByteArray(), "ISO-8859-1")
+				+ "5:statsd1:ai2e1:zi1eee");
+		Response d = codec.decode(encoded);
+		assertEquals(d.interval, 1800);
+		assertEquals(d.peers, r.peers);
+		assertNull(d.complete);
+		assertEquals(d.big, r.big);
+		assertEquals(d.stats.get("a"), Long.valueOf(2));
+		assertEquals(d.stats.keySet().iterator().next(), "a");
+	}
+
+	@Test
+	public void testRecursiveOk() throws IOException {
+		Node n = BencodeCodec.of(Node.class).decode(
+				"d8:childrenld2:id1:bed8:childrenle2:id1:cee2:id1:ae"
+						.getBytes());
+		assertEquals(n.id, "a");
+		assertEquals(n.children.get(0).id, "b");
+		assertNull(n.children.get(0).children);
+		assertEquals(n.children.get(1).children.size(), 0);
+	}
+
+	@Test
+	public void testFailTypeMismatch() {
+		try {
+			BencodeCodec.of(Response.class).decode("d8:interval3:abce".getBytes());
+			fail();
+		} catch (IOException e) {
+			assertEquals(((BencodeException) e).reason(), Reason.UNEXPECTED);
+			assertEquals(e.getMessage(), "Integer expected, but BYTES");
+		}
+	}
+
+	@Test
+	public void testFailIntOverflow() {
+		try {
+			BencodeCodec.of(Response.class).decode(
+					"d8:intervali3000000000ee".getBytes());
+			fail();
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Integer exceeds the int 3000000000");
+		}
+	}
+
+	@Test
+	public void testFailTruncated() {
+		try {
+			BencodeCodec.of(Node.class).decode("d8:childrenl".getBytes());
+			fail();
+		} catch (IOException e) {
+			assertEquals(((BencodeException) e).reason(), Reason.STREAM_END);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testFailNoConstructor() {
+		BencodeCodec.of(NoConstructor.class);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testFailDuplicatedKey() {
+		BencodeCodec.of(Duplicated.class);
+	}
+
+	@Test
+	public void testFailNullElement() {
+		FileEntry file = new FileEntry();
+		file.path = Arrays.asList("a", null);
+		try {
+			BencodeCodec.of(FileEntry.class).encode(file);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("null element"));
+		}
+		Response response = new Response();
+		response.stats = new HashMap<String, Long>();
+		response.stats.put("x", null);
+		try {
+			BencodeCodec.of(Response.class).encode(response);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("null value"));
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for BencodeDecoder.
+ */
+public class BencodeDecoderTest extends Assert {
+
+	private final BencodeDecoder decoder = new BencodeDecoder();
+
+	private List<Object> decodeAll(ByteBuffer buf) throws IOException {
+		List<Object> list = new LinkedList<Object>();
+		Object obj;
+		while ((obj = decoder.decode(buf)) != null) {
+			list.add(BeeCoder.Utils.toLegacy(obj));
+		}
+		return list;
+	}
+
+	@Test(dataProvider = "getEncodedStringExpectedList", dataProviderClass = BcodeTestData.class)
+	public void testDecodeHeapOk(String encoded, List<Object> expected)
+			throws Exception {
+		assertEquals(decodeAll(ByteBuffer.wrap(encoded.getBytes())), expected);
+	}
+
+	@Test(dataProvider = "getEncodedStringExpectedList", dataProviderClass = BcodeTestData.class)
+	public void testDecodeDirectOk(String encoded, List<Object> expected)
+			throws Exception {
+		byte[] bytes = encoded.getBytes();
+		ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+		buf.put(bytes).flip();
+		assertEquals(decodeAll(buf), expected);
+	}
+
+	@Test
+	public void testDecodeAdvancesPosition() throws Exception {
+		ByteBuffer buf = ByteBuffer.wrap("i42e4:spam".getBytes());
+		assertEquals(decoder.decode(buf), 42);
+		assertEquals(buf.position(), 4);
+		assertEquals(decoder.decode(buf), ByteString.of("spam"));
+		assertFalse(buf.hasRemaining());
+		assertNull(decoder.decode(buf));
+	}
+
+	@Test
+	public void testDecodeNarrowestInteger() throws Exception {
+		ByteBuffer buf = ByteBuffer.wrap(("i2147483647ei2147483648e"
+				+ "i-9223372036854775808ei18446744073709551616e").getBytes());
+		assertEquals(decoder.decode(buf), Integer.MAX_VALUE);
+		assertEquals(decoder.decode(buf), 2147483648L);
+		assertEquals(decoder.decode(buf), Long.MIN_VALUE);
+		assertEquals(decoder.decode(buf), BigInteger.ONE.shiftLeft(64));
+	}
+
+	@Test
+	public void testEncodeBigIntegerRoundTrip() throws Exception {
+		BigInteger big = BigInteger.ONE.shiftLeft(100).negate();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BeeCoder.INSTANCE.encode(big, bos);
+		assertEquals(new String(bos.toByteArray()), "i" + big + "e");
+		assertEquals(decoder.decode(bos.toByteArray()), big);
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws Exception {
+		byte[] binary = new byte[256];
+		for (int i = 0; i < binary.length; i++) {
+			binary[i] = (byte) i;
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BeeCoder.INSTANCE.encode(binary, bos);
+		byte[] encoded = bos.toByteArray();
+		ByteString decoded = (ByteString) decoder.decode(encoded);
+		assertEquals(decoded.toByteArray(), binary);
+		bos.reset();
+		BeeCoder.INSTANCE.encode(decoded, bos);
+		assertEquals(bos.toByteArray(), encoded);
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "unexpected end of stream while encoding String")
+	public void testDecodeFailHugeString() throws Exception {
+		decoder.decode("999999999999:x".getBytes());
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Integer value contains unexpected character*.*")
+	public void testDecodeFailEmptyInt() throws Exception {
+		decoder.decode("ie".getBytes());
+	}
+
+	@Test
+	public void testDecodeDeepNestingOk() throws Exception {
+		int depth = 100000;
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			sb.append('l');
+		}
+		for (int i = 0; i < depth; i++) {
+			sb.append('e');
+		}
+		Object obj = new BencodeDecoder(BencodeLimits.UNLIMITED).decode(sb
+				.toString().getBytes());
+		for (int i = 1; i < depth; i++) {
+			obj = ((List<?>) obj).get(0);
+		}
+		assertTrue(((List<?>) obj).isEmpty());
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Depth exceeds the limit of 1024")
+	public void testDecodeFailDepth() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			sb.append("l");
+		}
+		decoder.decode(sb.toString().getBytes());
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "String length exceeds the limit of 4")
+	public void testDecodeFailStringLength() throws Exception {
+		new BencodeDecoder(new BencodeLimits(8, 4, 8, 64)).decode("l5:helloe"
+				.getBytes());
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Number of values exceeds the limit of 3")
+	public void testDecodeFailElements() throws Exception {
+		new BencodeDecoder(new BencodeLimits(8, 4, 3, 64)).decode("li1ei2ei3ee"
+				.getBytes());
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Value length exceeds the limit of 8")
+	public void testDecodeFailTotalBytes() throws Exception {
+		new BencodeDecoder(new BencodeLimits(8, 64, 64, 8)).decode("l8:12345678e"
+				.getBytes());
+	}
+}
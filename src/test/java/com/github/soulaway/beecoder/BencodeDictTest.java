@@ -0,0 +1,90 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for BencodeDict and BencodeList.
+ */
+public class BencodeDictTest extends Assert {
+
+	private final BencodeDecoder decoder = new BencodeDecoder();
+
+	private BencodeDict decode(String encoded) throws IOException {
+		return (BencodeDict) decoder.decode(encoded.getBytes());
+	}
+
+	@Test
+	public void testGetOk() throws IOException {
+		BencodeDict d = decode("d9:info_hash20:aaaaaaaaaaaaaaaaaaaa"
+				+ "7:peer_id3:abc5:peersl2:p12:p2e4:porti6881ee");
+		assertTrue(d.isCanonical());
+		assertEquals(d.size(), 4);
+		assertEquals(d.getBytes("info_hash").length(), 20);
+		assertEquals(d.getString("peer_id"), "abc");
+		assertEquals(d.getLong("port", 0), 6881);
+		assertEquals(d.getLong("numwant", 50), 50);
+		assertEquals(d.get(ByteString.of("port")), 6881);
+		assertEquals(d.getList("peers").size(), 2);
+		assertNull(d.get("peer"));
+		assertNull(d.get("portal"));
+		assertTrue(d.containsKey("peers"));
+		assertFalse(d.containsKey(42));
+	}
+
+	@Test
+	public void testGetUnsortedOk() throws IOException {
+		BencodeDict d = decode("d1:zi1e1:ai2e1:mde1:xi3ee");
+		assertFalse(d.isCanonical());
+		assertEquals(d.keyAt(0), ByteString.of("z"));
+		assertEquals(d.get("z"), 1);
+		assertEquals(d.get("a"), 2);
+		assertEquals(d.getDict("m"), BencodeDict.EMPTY);
+		assertNull(d.get("b"));
+	}
+
+	@Test
+	public void testGetNonAsciiKeyOk() throws IOException {
+		byte[] key = "été".getBytes("UTF-8");
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		bos.write(("d" + key.length + ":").getBytes());
+		bos.write(key);
+		bos.write("i1ee".getBytes());
+		BencodeDict d = (BencodeDict) decoder.decode(bos.toByteArray());
+		assertEquals(d.get("été"), 1);
+	}
+
+	@Test
+	public void testEqualsMap() throws IOException {
+		BencodeDict d = decode("d1:ai1e1:bli2eee");
+		Map<ByteString, Object> map = new HashMap<ByteString, Object>();
+		map.put(ByteString.of("a"), 1);
+		map.put(ByteString.of("b"), Arrays.asList(2));
+		assertEquals(d, map);
+		assertEquals(d.hashCode(), map.hashCode());
+	}
+
+	@Test
+	public void testEncodeRoundTrip() throws IOException {
+		String encoded = "d1:ade1:ble1:cli1ei2eee";
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BeeCoder.INSTANCE.encode(decode(encoded), bos);
+		assertEquals(new String(bos.toByteArray()), encoded);
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void testFailPut() throws IOException {
+		decode("de").put(ByteString.of("a"), 1);
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void testFailListAdd() throws IOException {
+		((BencodeList) decoder.decode("li1ee".getBytes())).add(2);
+	}
+}
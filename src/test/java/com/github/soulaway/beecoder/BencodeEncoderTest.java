@@ -0,0 +1,138 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for BencodeEncoder.
+ */
+public class BencodeEncoderTest extends Assert {
+
+	private final BencodeEncoder encoder = new BencodeEncoder();
+
+	private String encode(Object obj) {
+		byte[] out = encoder.encode(obj);
+		assertEquals(out.length, encoder.encodedSize(obj));
+		return new String(out, StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void testEncodeSortedOk() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("peers", ByteString.wrap(new byte[] { 1, 2, 3, 4, 5, 6 }));
+		map.put("interval", 1800);
+		map.put("complete", Long.MIN_VALUE);
+		map.put("incomplete", Arrays.asList(0, -1, "x"));
+		map.put("big", BigInteger.ONE.shiftLeft(70));
+		assertEquals(encode(map), "d3:bigi1180591620717411303424e"
+				+ "8:completei-9223372036854775808e10:incompleteli0ei-1e1:xe"
+				+ "8:intervali1800e5:peers6:\u0001\u0002\u0003\u0004\u0005\u0006e");
+	}
+
+	@Test
+	public void testEncodeEntryListSortedOk() {
+		List<Object> dict = new LinkedList<Object>();
+		dict.add(new AbstractMap.SimpleEntry<String, Object>("b", 1));
+		dict.add(new AbstractMap.SimpleEntry<ByteString, Object>(ByteString
+				.of("a"), new byte[0]));
+		assertEquals(encode(dict), "d1:a0:1:bi1ee");
+	}
+
+	@Test
+	public void testEncodeNestedUnsortedOk() {
+		// the sorted and the unsorted dictionaries in between each other
+		Map<String, Object> inner = new LinkedHashMap<String, Object>();
+		inner.put("z", 1);
+		inner.put("y", 2);
+		Map<String, Object> sorted = new LinkedHashMap<String, Object>();
+		sorted.put("a", inner);
+		sorted.put("b", 3);
+		Map<String, Object> last = new LinkedHashMap<String, Object>();
+		last.put("q", 4);
+		last.put("p", 5);
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("n", Arrays.asList(sorted, last));
+		map.put("m", inner);
+		String expected = "d1:md1:yi2e1:zi1ee1:nld1:ad1:yi2e1:zi1ee1:bi3eed1:pi5e1:qi4eeee";
+		assertEquals(encode(map), expected);
+		ByteBuffer dst = ByteBuffer.allocate(expected.length());
+		encoder.encode(map, dst);
+		assertEquals(new String(dst.array(), StandardCharsets.ISO_8859_1),
+				expected);
+	}
+
+	@Test
+	public void testEncodeUtf8Ok() {
+		String s = "\u00e9t\u00e9 \u20ac \ud83d\ude00 \ud800";
+		byte[] out = encoder.encode(s);
+		byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+		assertEquals(out, (utf8.length + ":" + new String(utf8,
+				StandardCharsets.ISO_8859_1)).getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void testUtf8KeyOrder() {
+		// the UTF-16 order of these keys is the other one
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("\uffff", 1);
+		map.put("\ud83d\ude00", 2);
+		String encoded = encode(map);
+		assertTrue(encoded.indexOf("i1e") < encoded.indexOf("i2e"), encoded);
+	}
+
+	@Test
+	public void testCanonicalRoundTrip() throws Exception {
+		byte[] torrent = BenchmarkCorpus.get(BenchmarkCorpus.TORRENT);
+		Object decoded = new BencodeDecoder().decode(torrent);
+		assertEquals(encoder.encode(decoded), torrent);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BeeCoder.INSTANCE.encode(decoded, bos);
+		assertEquals(bos.toByteArray(), torrent);
+	}
+
+	@Test
+	public void testEncodeDirectBufferOk() {
+		ByteBuffer buf = ByteBuffer.allocateDirect(32);
+		buf.put((byte) 'x');
+		assertEquals(encoder.encode(Arrays.asList("spam", 42), buf), 12);
+		assertEquals(buf.position(), 13);
+		buf.flip().position(1);
+		byte[] out = new byte[12];
+		buf.get(out);
+		assertEquals(new String(out), "l4:spami42ee");
+	}
+
+	@Test(expectedExceptions = BufferOverflowException.class)
+	public void testFailBufferOverflow() {
+		encoder.encode("spam", ByteBuffer.allocate(5));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class,
+			expectedExceptionsMessageRegExp = "Bencoded dictionary has the duplicated key a")
+	public void testFailDuplicatedKey() {
+		List<Object> dict = new LinkedList<Object>();
+		dict.add(new AbstractMap.SimpleEntry<String, Object>("b", 1));
+		dict.add(new AbstractMap.SimpleEntry<String, Object>("a", 2));
+		dict.add(new AbstractMap.SimpleEntry<ByteString, Object>(ByteString
+				.of("a"), 3));
+		encoder.encode(dict);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testFailNotBencodable() {
+		encoder.encode(Arrays.asList(1.5));
+	}
+}
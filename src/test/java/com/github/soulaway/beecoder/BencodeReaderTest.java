@@ -0,0 +1,114 @@
+package com.github.soulaway.beecoder;
+
+import static com.github.soulaway.beecoder.BencodeReader.Token.BYTES;
+import static com.github.soulaway.beecoder.BencodeReader.Token.END;
+import static com.github.soulaway.beecoder.BencodeReader.Token.EOF;
+import static com.github.soulaway.beecoder.BencodeReader.Token.INT;
+import static com.github.soulaway.beecoder.BencodeReader.Token.KEY;
+import static com.github.soulaway.beecoder.BencodeReader.Token.START_DICT;
+import static com.github.soulaway.beecoder.BencodeReader.Token.START_LIST;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for BencodeReader.
+ */
+public class BencodeReaderTest extends Assert {
+
+	private static final String TORRENT = "d8:announce3:url4:infod5:filesld6:lengthi1e4:pathl1:aeee"
+			+ "4:name4:spam12:piece lengthi16384eee";
+
+	private static BencodeReader reader(String s) {
+		return new BencodeReader(ByteBuffer.wrap(s.getBytes()));
+	}
+
+	@Test
+	public void testTokens() throws IOException {
+		BencodeReader r = reader("d1:ai-42e1:bl0:d1:c1:deee");
+		List<BencodeReader.Token> tokens = new ArrayList<BencodeReader.Token>();
+		BencodeReader.Token t;
+		while ((t = r.next()) != EOF) {
+			tokens.add(t);
+		}
+		assertEquals(tokens, Arrays.asList(START_DICT, KEY, INT, KEY,
+				START_LIST, BYTES, START_DICT, KEY, BYTES, END, END, END));
+	}
+
+	@Test
+	public void testValues() throws IOException {
+		BencodeReader r = reader("i-9223372036854775808e5:hello");
+		assertEquals(r.next(), INT);
+		assertEquals(r.longValue(), Long.MIN_VALUE);
+		assertEquals(r.next(), BYTES);
+		assertEquals(r.stringValue(), "hello");
+		assertEquals(r.valueOffset(), 24);
+		assertEquals(r.valueLength(), 5);
+		assertTrue(r.valueEquals("hello"));
+		assertEquals(r.next(), EOF);
+	}
+
+	@Test
+	public void testSeekSkipsSubtrees() throws IOException {
+		BencodeReader r = reader(TORRENT);
+		assertEquals(r.next(), START_DICT);
+		assertTrue(r.seekKey("info"));
+		assertEquals(r.next(), START_DICT);
+		assertTrue(r.seekKey("name"));
+		assertEquals(r.next(), BYTES);
+		assertEquals(r.stringValue(), "spam");
+		assertFalse(r.seekKey("pieces"));
+		assertEquals(r.token(), END);
+		assertEquals(r.depth(), 1);
+	}
+
+	@Test
+	public void testSkipValue() throws IOException {
+		BencodeReader r = reader(TORRENT + "i1e");
+		assertEquals(r.skipValue(), TORRENT.length());
+		assertEquals(r.next(), INT);
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "unexpected end of stream while encoding List")
+	public void testFailTruncated() throws IOException {
+		BencodeReader r = reader("li1e");
+		r.skipValue();
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Dict value contains unexpected character - i*.*")
+	public void testFailNonStringKey() throws IOException {
+		BencodeReader r = reader("di1ei2ee");
+		r.next();
+		r.next();
+	}
+
+	@Test
+	public void testBigIntegers() throws IOException {
+		BencodeReader r = reader("i9223372036854775807ei-9223372036854775809e"
+				+ "i999999999999999999e");
+		assertEquals(r.next(), INT);
+		assertTrue(r.isLongValue());
+		assertEquals(r.longValue(), Long.MAX_VALUE);
+		assertEquals(r.next(), INT);
+		assertFalse(r.isLongValue());
+		assertEquals(r.bigIntegerValue(), new BigInteger("-9223372036854775809"));
+		assertEquals(r.next(), INT);
+		assertEquals(r.numberValue(), 999999999999999999L);
+	}
+
+	@Test(expectedExceptions = ArithmeticException.class)
+	public void testFailLongOverflow() throws IOException {
+		BencodeReader r = reader("i9223372036854775808e");
+		r.next();
+		r.longValue();
+	}
+}
@@ -0,0 +1,87 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for BencodeValidator.
+ */
+public class BencodeValidatorTest extends Assert {
+
+	private final BencodeValidator validator = new BencodeValidator();
+	private final BencodeValidator canonical = new BencodeValidator(
+			BencodeLimits.DEFAULT, true);
+
+	private static ByteBuffer wrap(String s) {
+		return ByteBuffer.wrap(s.getBytes());
+	}
+
+	@Test(dataProvider = "getEncodedStringExpectedList", dataProviderClass = BcodeTestData.class)
+	public void testValidateOk(String encoded, List<Object> expected)
+			throws Exception {
+		ByteBuffer buf = wrap(encoded);
+		int values = 0;
+		while (buf.hasRemaining()) {
+			buf.position(validator.validate(buf));
+			values++;
+		}
+		assertEquals(values, expected.size());
+	}
+
+	@Test
+	public void testValidateEndOk() throws IOException {
+		assertEquals(canonical.validate(wrap("d1:ai-1e1:bl0:i0eee4:spam")), 19);
+		assertEquals(canonical.validate(wrap("i10e")), 4);
+		assertTrue(canonical.isValid(wrap("d1:ad1:ai1e1:bi2eee")));
+		assertFalse(canonical.isValid(wrap("i1ei2e")));
+	}
+
+	@Test
+	public void testNonCanonical() throws IOException {
+		String[] nonCanonical = { "d1:bi1e1:ai2ee", "d1:ai1e1:ai2ee",
+				"d2:abi1e1:ai2ee", "i01e", "i-01e", "i-0e", "01:a" };
+		for (String s : nonCanonical) {
+			assertTrue(validator.isValid(wrap(s)), s);
+			assertFalse(canonical.isValid(wrap(s)), s);
+		}
+	}
+
+	@Test
+	public void testMalformed() {
+		String[] malformed = { "", "i1", "ie", "i-e", "i--1e", "i1-e", "l",
+				"d1:ae", "di1ei1ee", "5:spam", ":", "x", "1x:a" };
+		for (String s : malformed) {
+			assertFalse(validator.isValid(wrap(s)), s);
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Dict keys are not sorted, the key ends at 10")
+	public void testFailUnsorted() throws IOException {
+		canonical.validate(wrap("d1:bi1e1:ai2ee"));
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Integer value contains unexpected character - x Bytes left 1")
+	public void testFailUnexpected() throws IOException {
+		validator.validate(wrap("li1xe"));
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Value length exceeds the limit of 8")
+	public void testFailTotalLimit() throws IOException {
+		new BencodeValidator(new BencodeLimits(8, 8, 8, 8), false)
+				.validate(wrap("l4:spam4:eggse"));
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Depth exceeds the limit of 2")
+	public void testFailDepthLimit() throws IOException {
+		new BencodeValidator(new BencodeLimits(2, 8, 8, 8), false)
+				.validate(wrap("llleee"));
+	}
+}
@@ -0,0 +1,56 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for BencodeWriter.
+ */
+public class BencodeWriterTest extends Assert {
+
+	@Test
+	public void testWriteOk() throws IOException {
+		BencodeWriter w = new BencodeWriter();
+		w.startDict().key("a").value(Long.MIN_VALUE).key("b").startList()
+				.value("").value(new byte[] { 1, 2 }).value(0).value(-42)
+				.end().key(ByteString.of("c")).value("é").end();
+		assertEquals(w.depth(), 0);
+		assertEquals(new String(w.toByteArray(), "ISO-8859-1"),
+				"d1:ai-9223372036854775808e1:bl0:2:\u0001\u0002i0ei-42ee"
+						+ "1:c2:Ã©e");
+		w.reset();
+		w.value(Long.MAX_VALUE);
+		assertEquals(new String(w.toByteArray()), "i9223372036854775807e");
+	}
+
+	@Test
+	public void testWriteToStreamOk() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BencodeWriter w = new BencodeWriter(bos);
+		byte[] large = new byte[100000];
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			text.append("0123456789");
+		}
+		w.startList().value(large).value(text.toString()).end().flush();
+		byte[] out = bos.toByteArray();
+		assertEquals(out.length, 2 + 2 * (7 + 100000));
+		List<?> list = (List<?>) new BencodeDecoder().decode(out);
+		assertEquals(((ByteString) list.get(0)).toByteArray(), large);
+		assertEquals(list.get(1).toString(), text.toString());
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testFailValueInsteadOfKey() throws IOException {
+		new BencodeWriter().startDict().value(1);
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class)
+	public void testFailKeyWithoutValue() throws IOException {
+		new BencodeWriter().startDict().key("a").end();
+	}
+}
@@ -0,0 +1,64 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for ByteString.
+ */
+public class ByteStringTest extends Assert {
+
+	@Test
+	public void testHeapAndDirectViewsAreEqual() throws Exception {
+		byte[] bytes = "xxspamxx".getBytes();
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes);
+		ByteString heap = ByteString.wrap(bytes, 2, 4);
+		ByteString view = ByteString.view(direct, 2, 4);
+		assertEquals(view, heap);
+		assertEquals(view.hashCode(), heap.hashCode());
+		assertEquals(view.toString(), "spam");
+		assertEquals(view.toByteArray(), "spam".getBytes());
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		view.writeTo(bos);
+		assertEquals(bos.toByteArray(), "spam".getBytes());
+		assertEquals(view.asByteBuffer().remaining(), 4);
+	}
+
+	@Test
+	public void testDirectViewIgnoresSourceLimit() throws Exception {
+		ByteBuffer direct = ByteBuffer.allocateDirect(32);
+		direct.put("d3:abc5:helloe".getBytes()).flip();
+		BencodeDict dict = (BencodeDict) new BencodeDecoder().decode(direct);
+		// the caller reuses the buffer after decoding
+		direct.clear();
+		direct.limit(4);
+		ByteString value = dict.getBytes("abc");
+		assertEquals(value.toByteArray(), "hello".getBytes());
+		byte[] dst = new byte[6];
+		value.copyTo(dst, 1);
+		assertEquals(new String(dst, 1, 5), "hello");
+		assertEquals(value.asByteBuffer(), ByteBuffer.wrap("hello".getBytes()));
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		value.writeTo(bos);
+		assertEquals(bos.toByteArray(), "hello".getBytes());
+		assertEquals(direct.limit(), 4);
+	}
+
+	@Test
+	public void testCompareUnsigned() {
+		ByteString low = ByteString.wrap(new byte[] { 0x7f });
+		ByteString high = ByteString.wrap(new byte[] { (byte) 0x80 });
+		assertTrue(low.compareTo(high) < 0);
+		assertTrue(ByteString.of("a").compareTo(ByteString.of("ab")) < 0);
+		assertEquals(ByteString.of("key").compareTo(ByteString.of("key")), 0);
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void testWrapOutOfBounds() {
+		ByteString.wrap(new byte[4], 2, 3);
+	}
+}
@@ -0,0 +1,146 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.soulaway.beecoder.BencodeException.Reason;
+
+/**
+ * Unit test for CodecStats and the codecs reporting to it.
+ */
+public class CodecStatsTest extends Assert {
+
+	private static Reason rejectedFor(BencodeDecoder decoder, String data) {
+		try {
+			decoder.decodeSingle(ByteBuffer.wrap(data.getBytes()));
+		} catch (BencodeException e) {
+			return e.reason();
+		} catch (IOException e) {
+			fail("Not the BencodeException " + e);
+		}
+		return null;
+	}
+
+	@Test
+	public void testDecodedOk() throws IOException {
+		CodecStats stats = new CodecStats();
+		BencodeDecoder decoder = new BencodeDecoder(BencodeLimits.DEFAULT,
+				stats);
+		ByteBuffer buf = ByteBuffer.wrap("d1:ali1ei2ee1:bd1:cleeei7e"
+				.getBytes());
+		decoder.decode(buf);
+		decoder.decode(buf);
+		assertEquals(stats.getDecodeCount(), 2);
+		assertEquals(stats.getDecodedBytes(), buf.limit());
+		assertEquals(stats.getDecodedDicts(), 2);
+		assertEquals(stats.getDecodedLists(), 2);
+		assertEquals(stats.getDecodedIntegers(), 3);
+		assertEquals(stats.getDecodedStrings(), 3);
+		assertEquals(stats.getMaxDepth(), 3);
+		assertTrue(stats.getDecodeNanosMax() > 0);
+		assertTrue(stats.getDecodeNanosP50() <= stats.getDecodeNanosMax());
+		stats.reset();
+		assertEquals(stats.getDecodeCount(), 0);
+		assertEquals(stats.getDecodeNanosP99(), 0);
+	}
+
+	@Test
+	public void testRejectedOk() {
+		CodecStats stats = new CodecStats();
+		BencodeDecoder decoder = new BencodeDecoder(new BencodeLimits(2, 4,
+				100, 100), stats);
+		assertEquals(rejectedFor(decoder, "d1:a"), Reason.STREAM_END);
+		assertEquals(rejectedFor(decoder, "lllleeee"), Reason.DEPTH);
+		assertEquals(rejectedFor(decoder, "5:abcde"), Reason.STRING_LENGTH);
+		assertEquals(rejectedFor(decoder, "i1x"), Reason.UNEXPECTED);
+		assertEquals(rejectedFor(decoder, "i1ei2e"), Reason.TRAILING);
+		assertEquals(rejectedFor(decoder, "i2e1"), Reason.TRAILING);
+		assertEquals(stats.rejections(Reason.TRAILING), 2);
+		assertEquals(stats.rejections(Reason.DEPTH), 1);
+		assertEquals(stats.getRejections().get("STREAM_END"), Long.valueOf(1));
+		assertEquals(stats.getRejections().get("NON_CANONICAL"),
+				Long.valueOf(0));
+	}
+
+	@Test
+	public void testValidatorReasonOk() {
+		BencodeValidator validator = new BencodeValidator(
+				BencodeLimits.DEFAULT, true);
+		try {
+			validator.validate(ByteBuffer.wrap("d1:bi1e1:ai2ee".getBytes()));
+			fail();
+		} catch (IOException e) {
+			assertEquals(((BencodeException) e).reason(), Reason.NON_CANONICAL);
+		}
+	}
+
+	@Test
+	public void testEncodedOk() {
+		CodecStats stats = new CodecStats();
+		BencodeEncoder encoder = new BencodeEncoder(stats);
+		byte[] out = encoder.encode("spam");
+		encoder.encode(7L, ByteBuffer.allocate(8));
+		assertEquals(stats.getEncodeCount(), 2);
+		assertEquals(stats.getEncodedBytes(), out.length + 3);
+	}
+
+	@Test
+	public void testBeeCoderListenerOk() throws IOException {
+		CodecStats stats = new CodecStats();
+		BeeCoder.INSTANCE.setListener(stats);
+		try {
+			BeeCoder.INSTANCE.decode("li1ee".getBytes());
+			BeeCoder.INSTANCE.encode(1);
+		} finally {
+			BeeCoder.INSTANCE.setListener(null);
+		}
+		BeeCoder.INSTANCE.decode("i1e".getBytes());
+		assertEquals(stats.getDecodeCount(), 1);
+		assertEquals(stats.getEncodeCount(), 1);
+	}
+
+	@Test
+	public void testHistogramOk() {
+		for (long v : new long[] { 0, 3, 4, 5, 7, 8, 9, 1000, 1 << 20,
+				Long.MAX_VALUE }) {
+			int bucket = CodecStats.Histogram.bucket(v);
+			long upper = CodecStats.Histogram.upperBound(bucket);
+			assertTrue(upper >= v, v + " " + upper);
+			assertTrue(upper - v <= v / 4, v + " " + upper);
+			if (bucket > 0) {
+				assertTrue(CodecStats.Histogram.upperBound(bucket - 1) < v);
+			}
+		}
+		CodecStats.Histogram h = new CodecStats.Histogram();
+		for (int i = 1; i <= 100; i++) {
+			h.record(i * 1000);
+		}
+		assertTrue(h.quantile(0.5) >= 50000 && h.quantile(0.5) <= 62500);
+		assertTrue(h.quantile(0.99) >= 99000);
+		assertEquals(h.quantile(1), 100000);
+		assertEquals(h.max(), 100000);
+	}
+
+	@Test
+	public void testMXBeanOk() throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(
+				"com.github.soulaway.beecoder:type=CodecStats,name=test");
+		CodecStats stats = new CodecStats();
+		server.registerMBean(stats, name);
+		try {
+			stats.decoded(10, 100, 1, 0, 1, 2, 1);
+			assertEquals(server.getAttribute(name, "DecodedBytes"), 10L);
+			assertNotNull(server.getAttribute(name, "Rejections"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for DecodeCache.
+ */
+public class DecodeCacheTest extends Assert {
+
+	private static byte[] document(int id) throws IOException {
+		BencodeWriter w = new BencodeWriter();
+		w.startDict().key("id").value(id).key("name").value("file" + id)
+				.key("pieces").value(new byte[200]).end();
+		return w.toByteArray();
+	}
+
+	@Test
+	public void testDecodeHitOk() throws IOException {
+		DecodeCache cache = new DecodeCache(new BencodeDecoder(), 1 << 20);
+		ByteBuffer buf = ByteBuffer.wrap(document(1));
+		Object first = cache.decode(buf);
+		assertFalse(buf.hasRemaining());
+		// the equal bytes of another array hit the same document
+		Object second = cache.decode(document(1));
+		assertSame(second, first);
+		assertNotSame(cache.decode(document(2)), first);
+		assertEquals(cache.hits(), 1);
+		assertEquals(cache.misses(), 2);
+		assertEquals(cache.size(), 2);
+		assertTrue(cache.retainedBytes() > 2 * document(1).length);
+	}
+
+	@Test
+	public void testDecodeSourceReused() throws IOException {
+		DecodeCache cache = new DecodeCache(new BencodeDecoder(), 1 << 20);
+		byte[] bytes = document(7);
+		BencodeDict doc = (BencodeDict) cache.decode(bytes);
+		// the cached document doesn't share the bytes of the caller
+		Arrays.fill(bytes, (byte) '0');
+		assertEquals(doc.getString("name"), "file7");
+		assertEquals(doc.raw().toByteArray(), document(7));
+	}
+
+	@Test
+	public void testEvictionOk() throws IOException {
+		DecodeCache cache = new DecodeCache(new BencodeDecoder(), 4000);
+		for (int i = 0; i < 100; i++) {
+			cache.decode(document(i));
+		}
+		assertTrue(cache.retainedBytes() <= 4000);
+		assertTrue(cache.size() > 1);
+		assertEquals(cache.evictions(), 100 - cache.size());
+		// the most recent stays, the oldest is gone
+		cache.decode(document(99));
+		assertEquals(cache.hits(), 1);
+		cache.decode(document(0));
+		assertEquals(cache.misses(), 101);
+	}
+
+	@Test
+	public void testEvictionLeastRecent() throws IOException {
+		DecodeCache cache = new DecodeCache(new BencodeDecoder(), 1 << 20);
+		int perDocument = 0;
+		for (int i = 0; i < 3; i++) {
+			cache.decode(document(i));
+			perDocument = (int) cache.retainedBytes() / (i + 1);
+		}
+		cache = new DecodeCache(new BencodeDecoder(), 3 * perDocument);
+		for (int i = 0; i < 3; i++) {
+			cache.decode(document(i));
+		}
+		// the first becomes the most recent, so the second is evicted
+		cache.decode(document(0));
+		cache.decode(document(3));
+		assertEquals(cache.evictions(), 1);
+		cache.decode(document(0));
+		cache.decode(document(2));
+		assertEquals(cache.hits(), 3);
+		cache.decode(document(1));
+		assertEquals(cache.misses(), 5);
+	}
+
+	@Test
+	public void testTooLargeNotCached() throws IOException {
+		DecodeCache cache = new DecodeCache(new BencodeDecoder(), 100);
+		assertEquals(((BencodeDict) cache.decode(document(5))).get("id"), 5);
+		assertEquals(cache.size(), 0);
+		assertEquals(cache.retainedBytes(), 0);
+	}
+
+	@Test
+	public void testDecodeFailTrailing() throws IOException {
+		DecodeCache cache = new DecodeCache(new BencodeDecoder(), 1 << 20);
+		try {
+			cache.decode("i1ei2e".getBytes("UTF-8"));
+			fail();
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), BeeCoder.BC_MSG_EXCEPTION_TRAILING + 3);
+		}
+		assertEquals(cache.size(), 0);
+		assertNull(cache.decode(new byte[0]));
+	}
+}
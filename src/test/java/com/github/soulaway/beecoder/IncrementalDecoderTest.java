@@ -0,0 +1,56 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for IncrementalDecoder.
+ */
+public class IncrementalDecoderTest extends Assert {
+
+	@Test(dataProvider = "getEncodedStringExpectedList", dataProviderClass = BcodeTestData.class)
+	public void testFeedByteByByteOk(String encoded, List<Object> expected)
+			throws IOException {
+		List<Object> values = new ArrayList<Object>();
+		IncrementalDecoder d = new IncrementalDecoder(o -> values.add(BeeCoder.Utils.toLegacy(o)));
+		byte[] bytes = encoded.getBytes();
+		for (int i = 0; i < bytes.length; i++) {
+			d.feed(bytes, i, 1);
+		}
+		assertFalse(d.needsInput());
+		assertEquals(values, expected);
+	}
+
+	@Test
+	public void testFeedChunksOk() throws IOException {
+		List<Object> values = new ArrayList<Object>();
+		IncrementalDecoder d = new IncrementalDecoder(values::add);
+		assertEquals(d.feed(ByteBuffer.wrap("d1:ai1e1:b5:he".getBytes())), 0);
+		assertTrue(d.needsInput());
+		assertEquals(d.pending(), 14);
+		assertEquals(d.feed(ByteBuffer.wrap("lloe4:spam".getBytes())), 2);
+		assertEquals(values.size(), 2);
+		assertEquals(values.get(1), ByteString.of("spam"));
+		assertFalse(d.needsInput());
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Value length exceeds the limit of 16")
+	public void testFailTooLong() throws IOException {
+		IncrementalDecoder d = new IncrementalDecoder(new BencodeLimits(8,
+				16, 16, 16), o -> fail());
+		d.feed(ByteBuffer.wrap("999999999:".getBytes()));
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "Integer value contains unexpected character*.*")
+	public void testFailMalformed() throws IOException {
+		IncrementalDecoder d = new IncrementalDecoder(o -> fail());
+		d.feed(ByteBuffer.wrap("li4x".getBytes()));
+	}
+}
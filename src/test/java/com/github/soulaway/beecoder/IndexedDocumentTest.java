@@ -0,0 +1,83 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for IndexedDocument.
+ */
+public class IndexedDocumentTest extends Assert {
+
+	private static final String TORRENT = "d8:announce3:url4:infod5:filesl"
+			+ "d6:lengthi10e4:pathl1:aee"
+			+ "d6:lengthi4294967296e4:pathl1:b1:cee"
+			+ "e4:name4:spam12:piece lengthi16384e6:pieces0:ee";
+
+	private final BencodeDecoder decoder = new BencodeDecoder();
+
+	private IndexedDocument.Node index(String encoded) throws IOException {
+		return decoder.index(ByteBuffer.wrap(encoded.getBytes())).root();
+	}
+
+	@Test
+	public void testGetOk() throws IOException {
+		IndexedDocument.Node root = index(TORRENT);
+		assertTrue(root.isDict());
+		assertEquals(root.size(), 2);
+		IndexedDocument.Node info = root.get("info");
+		assertEquals(info.get("name").stringValue(), "spam");
+		assertEquals(info.get(ByteString.of("piece length")).longValue(), 16384);
+		assertEquals(info.get("pieces").size(), 0);
+		IndexedDocument.Node files = info.get("files");
+		assertTrue(files.isList());
+		assertEquals(files.size(), 2);
+		assertEquals(files.get(1).get("length").numberValue(), 4294967296L);
+		assertEquals(files.get(1).get("path").get(1).bytesValue(),
+				ByteString.of("c"));
+		assertNull(info.get("private"));
+		assertNull(root.get("info1"));
+	}
+
+	@Test
+	public void testRawAndMaterializeOk() throws IOException {
+		IndexedDocument.Node info = index(TORRENT).get("info");
+		String raw = TORRENT.substring(TORRENT.indexOf("d5:files"),
+				TORRENT.length() - 1);
+		assertEquals(info.rawOffset(), TORRENT.indexOf("d5:files"));
+		assertEquals(info.raw().toString(), raw);
+		assertEquals(info.materialize(), decoder.decode(raw.getBytes()));
+	}
+
+	@Test
+	public void testIndexAdvancesPosition() throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap("i123456789012345678901234567890eli1ee"
+				.getBytes());
+		IndexedDocument doc = decoder.index(buf);
+		assertEquals(doc.entries(), 1);
+		assertEquals(doc.root().numberValue(), new BigInteger(
+				"123456789012345678901234567890"));
+		assertEquals(decoder.index(buf).root().get(0).longValue(), 1);
+		assertNull(decoder.index(buf));
+	}
+
+	@Test(expectedExceptions = IllegalStateException.class,
+			expectedExceptionsMessageRegExp = "The value isn't Dict, but List")
+	public void testFailGetKeyOfList() throws IOException {
+		index("le").get("key");
+	}
+
+	@Test(expectedExceptions = IndexOutOfBoundsException.class)
+	public void testFailGetOutOfList() throws IOException {
+		index("li1ee").get(1);
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "unexpected end of stream while encoding List")
+	public void testFailTruncated() throws IOException {
+		index("d4:spaml1:a");
+	}
+}
@@ -0,0 +1,76 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for InfoHash and the raw spans of the decoded values.
+ */
+public class InfoHashTest extends Assert {
+
+	// the keys aren't sorted, re-encoding would change the hash
+	private static final String INFO = "d6:pieces3:\u0000\u00ff\u00804:name4:spam12:piece lengthi16384ee";
+	private static final String TORRENT = "d8:announce3:url4:info" + INFO
+			+ "7:comment2:hie";
+
+	private static ByteBuffer wrap(String s) {
+		return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static byte[] digest(String algorithm, String s) throws Exception {
+		return MessageDigest.getInstance(algorithm).digest(
+				s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void testHashBufferOk() throws Exception {
+		ByteBuffer torrent = wrap(TORRENT);
+		assertEquals(InfoHash.sha1(torrent), digest("SHA-1", INFO));
+		assertEquals(InfoHash.sha256(torrent), digest("SHA-256", INFO));
+		assertEquals(torrent.position(), 0);
+	}
+
+	@Test
+	public void testHashDirectBufferOk() throws Exception {
+		ByteBuffer heap = wrap(TORRENT);
+		ByteBuffer torrent = ByteBuffer.allocateDirect(heap.remaining());
+		torrent.put(heap).flip();
+		assertEquals(InfoHash.sha1(torrent), digest("SHA-1", INFO));
+	}
+
+	@Test
+	public void testHashDecodedOk() throws Exception {
+		BencodeDict torrent = (BencodeDict) new BencodeDecoder()
+				.decode(wrap(TORRENT));
+		BencodeDict info = torrent.getDict("info");
+		assertFalse(info.isCanonical());
+		assertEquals(info.raw().toString(StandardCharsets.ISO_8859_1), INFO);
+		assertEquals(InfoHash.sha1(info), digest("SHA-1", INFO));
+		assertEquals(torrent.raw().length(), TORRENT.length());
+	}
+
+	@Test
+	public void testRawListOk() throws IOException {
+		BencodeList list = (BencodeList) new BencodeDecoder().decode(wrap("l1:ali1eedee"));
+		assertEquals(((BencodeList) list.get(1)).raw(), ByteString.of("li1ee"));
+		assertEquals(((BencodeDict) list.get(2)).raw(), ByteString.of("de"));
+		assertEquals(BencodeList.EMPTY.raw(), ByteString.of("le"));
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "The torrent has no info dictionary")
+	public void testFailNoInfo() throws IOException {
+		InfoHash.sha1(wrap("d8:announce3:urle"));
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "The torrent info is not the dictionary")
+	public void testFailInfoNotDict() throws IOException {
+		InfoHash.sha1(wrap("d4:infoli1eee"));
+	}
+}
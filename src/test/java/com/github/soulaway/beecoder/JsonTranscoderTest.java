@@ -0,0 +1,136 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.soulaway.beecoder.JsonTranscoder.Binary;
+
+/**
+ * Unit test for JsonTranscoder.
+ */
+public class JsonTranscoderTest extends Assert {
+
+	private static final String TORRENT = "d8:announce9:udp://x:14:infod6:lengthi-42e4:name5:a\"b\\c"
+			+ "5:filesld4:pathl1:a1:beeleee4:sizei123456789012345678901234567890ee";
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void testToJsonOk() throws IOException {
+		JsonTranscoder json = new JsonTranscoder(Binary.HEX);
+		assertEquals(json.toJson(bytes(TORRENT)),
+				"{\"announce\":\"udp://x:1\",\"info\":{\"length\":-42,"
+						+ "\"name\":\"a\\\"b\\\\c\",\"files\":[{\"path\":[\"a\",\"b\"]},[]]},"
+						+ "\"size\":123456789012345678901234567890}");
+		assertEquals(json.toJson(bytes("de")), "{}");
+		assertEquals(json.toJson(bytes("le")), "[]");
+		assertEquals(json.toJson(bytes("i0e")), "0");
+		assertEquals(json.toJson(bytes("1:\n")), "\"\\u000a\"");
+	}
+
+	@Test
+	public void testToJsonBinary() throws IOException {
+		byte[] data = { '3', ':', (byte) 0xff, 0, 'a' };
+		assertEquals(new JsonTranscoder(Binary.HEX).toJson(data), "\"ff0061\"");
+		assertEquals(new JsonTranscoder(Binary.BASE64).toJson(data),
+				"\"/wBh\"");
+		assertEquals(new JsonTranscoder(Binary.BASE64).toJson(new byte[] {
+				'1', ':', (byte) 0xfb }), "\"+w==\"");
+		assertEquals(new JsonTranscoder(Binary.LATIN1).toJson(data),
+				"\"\u00ff\\u0000a\"");
+		// the valid UTF-8 stays the text
+		byte[] utf8 = new BencodeEncoder().encode("\u043f\u0440\u0438\u0432\u0435\u0442");
+		assertEquals(new JsonTranscoder(Binary.HEX).toJson(utf8),
+				"\"\u043f\u0440\u0438\u0432\u0435\u0442\"");
+	}
+
+	@Test
+	public void testToJsonIntegers() throws IOException {
+		JsonTranscoder json = new JsonTranscoder(Binary.HEX);
+		// the non canonical digits become the valid JSON numbers
+		assertEquals(json.toJson(bytes("li03ei-0ei-012ee")), "[3,0,-12]");
+		assertEquals(json.toJson(bytes("li-9223372036854775808ei0ee")),
+				"[-9223372036854775808,0]");
+		assertEquals(json.toJson(bytes("i0099999999999999999999e")),
+				"99999999999999999999");
+	}
+
+	@Test
+	public void testToJsonStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer src = ByteBuffer.wrap(bytes("i1eli2eed1:ai3ee"));
+		assertEquals(new JsonTranscoder(Binary.HEX).toJson(src, out), 3);
+		assertFalse(src.hasRemaining());
+		assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8),
+				"1\n[2]\n{\"a\":3}\n");
+	}
+
+	@Test
+	public void testRoundTripLatin1() throws IOException {
+		JsonTranscoder json = new JsonTranscoder(Binary.LATIN1);
+		byte[] pieces = new byte[256];
+		for (int i = 0; i < pieces.length; i++) {
+			pieces[i] = (byte) i;
+		}
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BencodeWriter w = new BencodeWriter(bos);
+		w.startDict().key("info").startDict().key("pieces").value(pieces)
+				.key("private").value(1).end().key("list").startList()
+				.value(Long.MIN_VALUE).startList().end().end().end().flush();
+		byte[] torrent = bos.toByteArray();
+		assertEquals(json.toBencode(json.toJson(torrent)), torrent);
+		byte[] data = bytes(TORRENT);
+		assertEquals(json.toBencode(json.toJson(data)), data);
+	}
+
+	@Test
+	public void testToBencodeOk() throws IOException {
+		JsonTranscoder json = new JsonTranscoder(Binary.HEX);
+		assertEquals(new String(json.toBencode(" { \"b\" : [ 1 , true, false, "
+				+ "\"\\u00e9\\ud83d\\ude00\\n\" ], \"a\":{}, \"c\":-12345678901234567890 } "),
+				StandardCharsets.ISO_8859_1), "d1:bli1ei1ei0e7:\u00c3\u00a9\u00f0\u009f\u0098\u0080\ne"
+				+ "1:ade1:ci-12345678901234567890ee");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(json.toBencode(new ByteArrayInputStream(
+				bytes("1 [] \"x\"\n")), out), 3);
+		assertEquals(out.toByteArray(), bytes("i1ele1:x"));
+	}
+
+	@Test
+	public void testToBencodeFail() {
+		JsonTranscoder json = new JsonTranscoder(Binary.HEX);
+		String[] malformed = { "1.5", "1e3", "null", "[1,]", "{\"a\" 1}",
+				"{1:2}", "[1", "\"abc", "01", "-", "tru", "[1 2]", "\"\\x\"",
+				"\"\\ud83d\"", "{\"a\":1]" };
+		for (String s : malformed) {
+			try {
+				json.toBencode(s);
+				fail(s);
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		try {
+			new JsonTranscoder(Binary.LATIN1).toBencode("\"\u0100\"");
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("Latin-1"));
+		}
+		try {
+			new JsonTranscoder(Binary.HEX, new BencodeLimits(2, 1024, 1024,
+					1024)).toBencode("[[[]]]");
+			fail();
+		} catch (IOException e) {
+			assertEquals(((BencodeException) e).reason(),
+					BencodeException.Reason.DEPTH);
+		}
+	}
+}
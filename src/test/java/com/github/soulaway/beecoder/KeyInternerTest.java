@@ -0,0 +1,84 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for KeyInterner and the decoder interning the keys.
+ */
+public class KeyInternerTest extends Assert {
+
+	private static ByteString intern(KeyInterner keys, String key) {
+		byte[] bytes = key.getBytes();
+		return keys.intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	@Test
+	public void testInternOk() {
+		KeyInterner keys = new KeyInterner();
+		ByteString port = intern(keys, "port");
+		assertEquals(port.toString(), "port");
+		assertSame(intern(keys, "port"), port);
+		ByteString custom = intern(keys, "x-custom");
+		assertSame(intern(keys, "x-custom"), custom);
+		assertSame(keys.intern(ByteString.of("x-custom")), custom);
+		assertNotSame(intern(keys, "x-other"), custom);
+	}
+
+	@Test
+	public void testInternBounded() {
+		KeyInterner keys = new KeyInterner(16, 8);
+		assertNull(intern(keys, "too long key"));
+		ByteString longKey = ByteString.of("too long key");
+		assertSame(keys.intern(longKey), longKey);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(intern(keys, "k" + i).toString(), "k" + i);
+		}
+		assertTrue(keys.size() <= 16);
+	}
+
+	@Test
+	public void testDecodeSharedKeys() throws IOException {
+		BencodeDecoder decoder = new BencodeDecoder(BencodeLimits.DEFAULT,
+				null, new KeyInterner());
+		byte[] data = "d2:ip9:127.0.0.14:porti6881ee".getBytes();
+		BencodeDict a = (BencodeDict) decoder.decode(data);
+		BencodeDict b = (BencodeDict) decoder.decode(data.clone());
+		assertSame(a.keyAt(0), b.keyAt(0));
+		assertSame(a.keyAt(1), b.keyAt(1));
+		// the keys don't depend on the source bytes, the values do
+		Arrays.fill(data, (byte) 'x');
+		assertEquals(a.keyAt(1).toString(), "port");
+		assertEquals(a.get("port"), 6881);
+		assertEquals(b.getString("ip"), "127.0.0.1");
+	}
+
+	@Test
+	public void testInternConcurrent() throws Exception {
+		final KeyInterner keys = new KeyInterner(64, 16);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			Future<?>[] futures = new Future<?>[4];
+			for (int t = 0; t < futures.length; t++) {
+				futures[t] = pool.submit(() -> {
+					for (int i = 0; i < 100000; i++) {
+						String key = "key" + (i % 200);
+						assertEquals(intern(keys, key).toString(), key);
+					}
+				});
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
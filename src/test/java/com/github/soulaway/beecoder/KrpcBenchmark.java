@@ -0,0 +1,101 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the {@link KrpcCodec} fast path against the datagrams of
+ * the {@link BenchmarkCorpus#krpc()} corpus, compared with the generic
+ * decoder. Every operation handles the single datagram, so ops/s is the
+ * packet rate of the core.
+ *
+ * <pre>
+ * mvn -B -Pbenchmark test-compile exec:exec -Djmh.args="-prof gc KrpcBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class KrpcBenchmark {
+
+	private ByteBuffer[] datagrams;
+	private int next;
+	private final KrpcCodec codec = new KrpcCodec();
+	private final KrpcMessage query = new KrpcMessage();
+	private final KrpcMessage reply = new KrpcMessage();
+	private final BencodeDecoder decoder = new BencodeDecoder();
+	private final byte[] nodeId = new byte[KrpcMessage.ID_LENGTH];
+
+	@Setup
+	public void setup() throws IOException {
+		byte[] corpus = BenchmarkCorpus.krpc();
+		int[] ends = new ParallelDecoder().boundaries(ByteBuffer.wrap(corpus));
+		datagrams = new ByteBuffer[ends.length];
+		int start = 0;
+		for (int i = 0; i < ends.length; i++) {
+			datagrams[i] = ByteBuffer.wrap(corpus, start, ends[i] - start)
+					.slice();
+			start = ends[i];
+		}
+	}
+
+	private ByteBuffer nextDatagram() {
+		ByteBuffer datagram = datagrams[next];
+		next = (next + 1) % datagrams.length;
+		datagram.rewind();
+		return datagram;
+	}
+
+	@Benchmark
+	public int decode(BeeCoderBenchmark.Bytes counter) throws IOException {
+		ByteBuffer datagram = nextDatagram();
+		counter.bytes += datagram.remaining();
+		codec.decode(datagram, query);
+		int sum = 0;
+		for (int i = 0; i < query.nodeCount(); i++) {
+			sum += query.nodeAddress(i) + query.nodePort(i);
+		}
+		for (int i = 0; i < query.peerCount(); i++) {
+			sum += query.peerAddress(i) + query.peerPort(i);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Object decodeGeneric(BeeCoderBenchmark.Bytes counter)
+			throws IOException {
+		ByteBuffer datagram = nextDatagram();
+		counter.bytes += datagram.remaining();
+		return decoder.decode(datagram);
+	}
+
+	@Benchmark
+	public int reply(BeeCoderBenchmark.Bytes counter) throws IOException {
+		ByteBuffer datagram = nextDatagram();
+		counter.bytes += datagram.remaining();
+		codec.decode(datagram, query);
+		// answers every datagram as the find_node query with 8 nodes
+		reply.clear().setType(KrpcMessage.Type.RESPONSE)
+				.setTransactionId(query.transactionId()).setId(query.id());
+		query.id().copyTo(nodeId, 0);
+		for (int i = 0; i < 8; i++) {
+			reply.addNode(nodeId, 0, 0x7f000001 + i, 6881);
+		}
+		return codec.encode(reply).remaining();
+	}
+}
@@ -0,0 +1,188 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.github.soulaway.beecoder.KrpcMessage.Method;
+import com.github.soulaway.beecoder.KrpcMessage.Type;
+
+/**
+ * Unit test for KrpcCodec and KrpcMessage.
+ */
+public class KrpcCodecTest extends Assert {
+
+	private final KrpcCodec codec = new KrpcCodec();
+
+	private static ByteBuffer datagram(String s) {
+		return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static String string(ByteBuffer buf) {
+		byte[] bytes = new byte[buf.remaining()];
+		buf.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	private static ByteString id(char c) {
+		byte[] id = new byte[KrpcMessage.ID_LENGTH];
+		Arrays.fill(id, (byte) c);
+		return ByteString.wrap(id);
+	}
+
+	@Test
+	public void testDecodeQuery() throws IOException {
+		KrpcMessage msg = new KrpcMessage();
+		ByteBuffer buf = datagram("d1:ad2:id20:abcdefghij01234567899:info_hash20:"
+				+ "mnopqrstuvwxyz1234564:porti6881e5:token8:aoeusnth4:wantl2:n4ee"
+				+ "1:q13:announce_peer1:t2:aa1:v4:UT011:y1:qe");
+		codec.decode(buf, msg);
+		assertFalse(buf.hasRemaining());
+		assertEquals(msg.type(), Type.QUERY);
+		assertEquals(msg.method(), Method.ANNOUNCE_PEER);
+		assertEquals(msg.transactionId().toString(), "aa");
+		assertEquals(msg.version().toString(), "UT01");
+		assertEquals(msg.id().toString(), "abcdefghij0123456789");
+		assertEquals(msg.infoHash().toString(), "mnopqrstuvwxyz123456");
+		assertEquals(msg.token().toString(), "aoeusnth");
+		assertEquals(msg.port(), 6881);
+		assertEquals(msg.impliedPort(), -1);
+		assertNull(msg.target());
+		assertEquals(msg.nodeCount(), -1);
+		assertEquals(msg.peerCount(), -1);
+		// the same message decodes the next datagram
+		codec.decode(datagram("d1:ad2:id20:abcdefghij0123456789e1:q7:vote_it1:t1:b1:y1:qe"), msg);
+		assertEquals(msg.method(), Method.OTHER);
+		assertEquals(msg.methodName().toString(), "vote_it");
+		assertEquals(msg.port(), -1);
+		assertNull(msg.infoHash());
+	}
+
+	@Test
+	public void testDecodeCompactInfos() throws IOException {
+		KrpcMessage msg = new KrpcMessage();
+		byte[] node = new byte[KrpcMessage.NODE_LENGTH];
+		Arrays.fill(node, 0, KrpcMessage.ID_LENGTH, (byte) 'n');
+		byte[] compact = { (byte) 192, (byte) 168, 1, 2, 0x1a, (byte) 0xe1 };
+		System.arraycopy(compact, 0, node, KrpcMessage.ID_LENGTH, 6);
+		String peers = "6:" + new String(compact, StandardCharsets.ISO_8859_1);
+		codec.decode(datagram("d1:rd2:id20:abcdefghij01234567895:nodes52:"
+				+ new String(node, StandardCharsets.ISO_8859_1)
+				+ new String(node, StandardCharsets.ISO_8859_1) + "6:valuesl"
+				+ peers + peers + peers + "ee1:t2:ab1:y1:re"), msg);
+		assertEquals(msg.type(), Type.RESPONSE);
+		assertNull(msg.method());
+		assertEquals(msg.nodeCount(), 2);
+		byte[] nodeId = new byte[KrpcMessage.ID_LENGTH];
+		msg.nodeId(1, nodeId, 0);
+		assertEquals(nodeId, Arrays.copyOf(node, KrpcMessage.ID_LENGTH));
+		assertEquals(msg.nodeAddress(0), 0xc0a80102);
+		assertEquals(msg.nodePort(1), 6881);
+		assertEquals(msg.peerCount(), 3);
+		assertEquals(msg.peerAddress(2), 0xc0a80102);
+		assertEquals(msg.peerPort(0), 6881);
+		try {
+			msg.peerPort(3);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDecodeError() throws IOException {
+		KrpcMessage msg = new KrpcMessage();
+		codec.decode(datagram("d1:eli201e23:A Generic Error Ocurrede1:t2:aa1:y1:ee"), msg);
+		assertEquals(msg.type(), Type.ERROR);
+		assertEquals(msg.errorCode(), 201);
+		assertEquals(msg.errorMessage().toString(), "A Generic Error Ocurred");
+	}
+
+	@Test
+	public void testDecodeFail() {
+		KrpcMessage msg = new KrpcMessage();
+		String[] malformed = { "le", "d1:t2:aae", "d1:t2:aa1:y1:xe",
+				"d1:t2:aa1:y1:qe", "d1:ad2:id20:abcdefghij0123456789e1:t2:aa1:y1:qe",
+				"d1:rd2:id3:abce1:t2:aa1:y1:re",
+				"d1:rd2:id20:abcdefghij01234567895:nodes3:abce1:t2:aa1:y1:re",
+				"d1:rd2:id20:abcdefghij01234567896:valuesl3:abcee1:t2:aa1:y1:re",
+				"d1:ad2:id20:abcdefghij01234567894:porti70000ee1:q4:ping1:t2:aa1:y1:qe",
+				"d1:t2:aa1:y1:ei1ee", "d1:eli201ee1:t2:aa1:y1:ee",
+				"d1:t2:aa1:y1:ee1:x" };
+		for (String s : malformed) {
+			try {
+				codec.decode(datagram(s), msg);
+				fail(s);
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testEncode() throws IOException {
+		KrpcMessage reply = new KrpcMessage();
+		reply.setType(Type.RESPONSE).setTransactionId(ByteString.of("aa"))
+				.setId(id('x')).setToken(ByteString.of("tok"))
+				.addPeer(0x7f000001, 6881).addPeer(0x0a000001, 80);
+		assertEquals(string(codec.encode(reply)),
+				"d1:rd2:id20:xxxxxxxxxxxxxxxxxxxx5:token3:tok6:valuesl6:\u007f\0\0\1\u001aá"
+						+ "6:\n\0\0\1\0Pee1:t2:aa1:y1:re");
+		reply.clear().setType(Type.ERROR).setTransactionId(ByteString.of("b"))
+				.setError(203, ByteString.of("Protocol Error"));
+		assertEquals(string(codec.encode(reply)),
+				"d1:eli203e14:Protocol Errore1:t1:b1:y1:ee");
+		reply.clear().setType(Type.QUERY).setTransactionId(ByteString.of("c"))
+				.setMethod(Method.FIND_NODE).setId(id('a')).setTarget(id('b'));
+		assertEquals(string(codec.encode(reply)),
+				"d1:ad2:id20:aaaaaaaaaaaaaaaaaaaa6:target20:bbbbbbbbbbbbbbbbbbbbe"
+						+ "1:q9:find_node1:t1:c1:y1:qe");
+		reply.clear().setType(Type.QUERY).setTransactionId(ByteString.of("c"));
+		try {
+			codec.encode(reply);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected, the query has no method
+		}
+	}
+
+	@Test
+	public void testCorpusRoundTrip() throws IOException {
+		byte[] corpus = BenchmarkCorpus.krpc();
+		ByteBuffer buf = ByteBuffer.wrap(corpus);
+		int[] ends = new ParallelDecoder().boundaries(buf);
+		assertEquals(ends.length, 4);
+		KrpcMessage msg = new KrpcMessage();
+		KrpcMessage copy = new KrpcMessage();
+		int start = 0;
+		for (int end : ends) {
+			ByteBuffer datagram = ByteBuffer.wrap(corpus, start, end - start)
+					.slice();
+			codec.decode(datagram, msg);
+			ByteBuffer encoded = codec.encode(msg);
+			datagram.rewind();
+			assertEquals(encoded, datagram);
+			// the nodes and the peers are added back as the primitives
+			copy.clear().setType(msg.type()).setTransactionId(msg.transactionId())
+					.setMethodName(msg.methodName()).setId(msg.id())
+					.setInfoHash(msg.infoHash()).setToken(msg.token());
+			if (msg.port() >= 0) {
+				copy.setPort(msg.port()).setImpliedPort(msg.impliedPort());
+			}
+			byte[] nodeId = new byte[KrpcMessage.ID_LENGTH];
+			for (int i = 0; i < msg.nodeCount(); i++) {
+				msg.nodeId(i, nodeId, 0);
+				copy.addNode(nodeId, 0, msg.nodeAddress(i), msg.nodePort(i));
+			}
+			for (int i = 0; i < msg.peerCount(); i++) {
+				copy.addPeer(msg.peerAddress(i), msg.peerPort(i));
+			}
+			assertEquals(codec.encode(copy), datagram);
+			start = end;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.github.soulaway.beecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for ParallelDecoder.
+ */
+public class ParallelDecoderTest extends Assert {
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+	private final ParallelDecoder decoder = new ParallelDecoder(
+			BencodeLimits.DEFAULT, pool);
+
+	// the documents are large enough to be split between the tasks
+	private static byte[] documents(int n) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] padding = new byte[10000];
+		for (int i = 0; i < n; i++) {
+			BencodeWriter w = new BencodeWriter();
+			w.startDict().key("id").value(i).key("padding").value(padding)
+					.end();
+			w.writeTo(bos);
+		}
+		return bos.toByteArray();
+	}
+
+	@Test
+	public void testDecodeAllOrderedOk() throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(documents(100));
+		List<Object> docs = decoder.decodeAll(buf);
+		assertEquals(docs.size(), 100);
+		for (int i = 0; i < docs.size(); i++) {
+			assertEquals(((BencodeDict) docs.get(i)).get("id"), i);
+		}
+		assertFalse(buf.hasRemaining());
+	}
+
+	@Test
+	public void testDecodeAllUnorderedOk() throws IOException {
+		ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<Object>();
+		assertEquals(decoder.decodeAll(ByteBuffer.wrap(documents(50)),
+				queue::add), 50);
+		List<Integer> ids = new ArrayList<Integer>();
+		for (Object doc : queue) {
+			ids.add((Integer) ((BencodeDict) doc).get("id"));
+		}
+		Collections.sort(ids);
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(ids.get(i).intValue(), i);
+		}
+	}
+
+	@Test
+	public void testDecodeFileOk() throws IOException {
+		Path path = Files.createTempFile("beecoder", ".dump");
+		try {
+			Files.write(path, "i1e4:spamle".getBytes());
+			assertEquals(BeeCoder.Utils.toLegacy(decoder.decodeAll(path)),
+					BeeCoder.Utils.toLegacy(new BencodeDecoder().decode(
+							"li1e4:spamlee".getBytes())));
+			assertEquals(decoder.boundaries(ByteBuffer.wrap("i1e4:spamle"
+					.getBytes())), new int[] { 3, 9, 11 });
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testDecodeEmptyOk() throws IOException {
+		assertTrue(decoder.decodeAll(ByteBuffer.allocate(0)).isEmpty());
+	}
+
+	@Test(expectedExceptions = IOException.class,
+			expectedExceptionsMessageRegExp = "unexpected end of stream while encoding List")
+	public void testFailMalformed() throws IOException {
+		decoder.decodeAll(ByteBuffer.wrap("i1eli2e".getBytes()));
+	}
+}
@@ -0,0 +1,311 @@
+package com.github.soulaway.beecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for PieceVerifier.
+ */
+public class PieceVerifierTest extends Assert {
+
+	private static final int PIECE = 64 * 1024;
+
+	private Path dir;
+	private final Random rnd = new Random(7);
+
+	@BeforeMethod
+	public void createDir() throws IOException {
+		dir = Files.createTempDirectory("beecoder-verify");
+	}
+
+	@AfterMethod
+	public void deleteDir() throws IOException {
+		List<Path> paths = new ArrayList<Path>();
+		Files.walk(dir).forEach(paths::add);
+		for (int i = paths.size() - 1; i >= 0; i--) {
+			Files.delete(paths.get(i));
+		}
+	}
+
+	private byte[] file(Path path, int length) throws IOException {
+		byte[] data = new byte[length];
+		rnd.nextBytes(data);
+		Files.createDirectories(path.getParent());
+		Files.write(path, data);
+		return data;
+	}
+
+	private static MessageDigest digest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] sha1Pieces(byte[] data) {
+		MessageDigest md = digest("SHA-1");
+		int count = (data.length + PIECE - 1) / PIECE;
+		byte[] pieces = new byte[count * 20];
+		for (int i = 0; i < count; i++) {
+			md.update(data, i * PIECE, Math.min(PIECE, data.length - i * PIECE));
+			System.arraycopy(md.digest(), 0, pieces, i * 20, 20);
+		}
+		return pieces;
+	}
+
+	// the merkle root of the leaves padded with the zero leaves
+	private static byte[] merkle(List<byte[]> leaves, int width) {
+		if (width == 1) {
+			return leaves.isEmpty() ? new byte[32] : leaves.get(0);
+		}
+		int half = width / 2;
+		List<byte[]> left = leaves.subList(0, Math.min(half, leaves.size()));
+		List<byte[]> right = leaves.size() > half ? leaves.subList(half,
+				leaves.size()) : new ArrayList<byte[]>();
+		MessageDigest md = digest("SHA-256");
+		md.update(merkle(left, half));
+		md.update(merkle(right, half));
+		return md.digest();
+	}
+
+	private static List<byte[]> blocks(byte[] data, int from, int to) {
+		MessageDigest md = digest("SHA-256");
+		List<byte[]> leaves = new ArrayList<byte[]>();
+		for (int i = from; i < to; i += PieceVerifier.BLOCK_SIZE) {
+			md.update(data, i, Math.min(PieceVerifier.BLOCK_SIZE, to - i));
+			leaves.add(md.digest());
+		}
+		return leaves;
+	}
+
+	private static int width(int n) {
+		return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+	}
+
+	private static BencodeDict decode(BencodeWriter w) throws IOException {
+		return (BencodeDict) new BencodeDecoder().decode(w.toByteArray());
+	}
+
+	private BencodeDict v1Torrent(byte[] concatenated, Object[][] files)
+			throws IOException {
+		BencodeWriter w = new BencodeWriter();
+		w.startDict().key("info").startDict().key("files").startList();
+		for (Object[] file : files) {
+			w.startDict();
+			if (file.length > 2) {
+				w.key("attr").value((String) file[2]);
+			}
+			w.key("length").value((Integer) file[1]).key("path").startList();
+			for (String element : ((String) file[0]).split("/")) {
+				w.value(element);
+			}
+			w.end().end();
+		}
+		w.end().key("name").value("v1").key("piece length").value(PIECE)
+				.key("pieces").value(sha1Pieces(concatenated)).end().end();
+		return decode(w);
+	}
+
+	@Test
+	public void testVerifyV1() throws IOException {
+		Path base = dir.resolve("v1");
+		byte[] a = file(base.resolve("a.bin"), 3 * 1024 * 1024 + 123);
+		file(base.resolve("empty"), 0);
+		byte[] b = file(base.resolve("sub/b.bin"), 2 * 1024 * 1024 + 4567);
+		byte[] all = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, all, a.length, b.length);
+		BencodeDict torrent = v1Torrent(all, new Object[][] {
+				{ "a.bin", a.length }, { "empty", 0 },
+				{ "sub/b.bin", b.length } });
+		int pieces = (all.length + PIECE - 1) / PIECE;
+		assertEquals(PieceVerifier.pieceCount(torrent), pieces);
+
+		AtomicLong bytes = new AtomicLong();
+		AtomicInteger calls = new AtomicInteger();
+		PieceVerifier verifier = new PieceVerifier();
+		BitSet have = verifier.verify(torrent, dir, (piece, length, valid) -> {
+			bytes.addAndGet(length);
+			calls.incrementAndGet();
+		});
+		assertEquals(have.cardinality(), pieces);
+		assertEquals(bytes.get(), all.length);
+		assertEquals(calls.get(), pieces);
+
+		// the piece spanning both files and the piece of the corrupt byte
+		b[100] ^= 1;
+		Files.write(base.resolve("sub/b.bin"), b);
+		int corrupt = (a.length + 100) / PIECE;
+		b[b.length - 1] ^= 1;
+		Files.write(base.resolve("sub/b.bin"), b);
+		have = verifier.verify(torrent, dir, null);
+		assertEquals(have.cardinality(), pieces - 2);
+		assertFalse(have.get(corrupt));
+		assertFalse(have.get(pieces - 1));
+
+		// the missing file fails its pieces only
+		Files.delete(base.resolve("a.bin"));
+		have = verifier.verify(torrent, dir, null);
+		assertEquals(have.nextSetBit(0), corrupt + 1);
+	}
+
+	@Test
+	public void testVerifyPaddingAndIndexed() throws IOException {
+		Path base = dir.resolve("v1");
+		byte[] a = file(base.resolve("a"), 100);
+		byte[] b = file(base.resolve("b"), 1000);
+		// the padding file aligns b to the piece, it isn't on the disk
+		byte[] all = new byte[PIECE + b.length];
+		System.arraycopy(a, 0, all, 0, a.length);
+		System.arraycopy(b, 0, all, PIECE, b.length);
+		BencodeDict torrent = v1Torrent(all, new Object[][] {
+				{ "a", a.length }, { ".pad/65436", PIECE - a.length, "p" },
+				{ "b", b.length } });
+		BitSet have = new PieceVerifier().verify(torrent, dir, null);
+		assertEquals(have.cardinality(), 2);
+
+		IndexedDocument doc = new BencodeDecoder().index(ByteBuffer
+				.wrap(torrent.raw().toByteArray()));
+		assertEquals(new PieceVerifier().verify(doc, dir, null), have);
+	}
+
+	@Test
+	public void testVerifyV2() throws IOException {
+		Path base = dir.resolve("v2");
+		byte[] big = file(base.resolve("big.bin"), 200000);
+		byte[] small = file(base.resolve("dir/small.bin"), 40000);
+		file(base.resolve("empty"), 0);
+		List<byte[]> bigLeaves = blocks(big, 0, big.length);
+		int perPiece = PIECE / PieceVerifier.BLOCK_SIZE;
+		byte[] layer = new byte[4 * 32];
+		for (int i = 0; i < 4; i++) {
+			List<byte[]> leaves = bigLeaves.subList(i * perPiece,
+					Math.min((i + 1) * perPiece, bigLeaves.size()));
+			System.arraycopy(merkle(leaves, perPiece), 0, layer, i * 32, 32);
+		}
+		byte[] bigRoot = merkle(bigLeaves, width(bigLeaves.size()));
+		List<byte[]> smallLeaves = blocks(small, 0, small.length);
+		byte[] smallRoot = merkle(smallLeaves, width(smallLeaves.size()));
+
+		BencodeWriter w = new BencodeWriter();
+		w.startDict().key("info").startDict().key("file tree").startDict()
+				.key("big.bin").startDict().key("").startDict().key("length")
+				.value(big.length).key("pieces root").value(bigRoot).end()
+				.end().key("dir").startDict().key("small.bin").startDict()
+				.key("").startDict().key("length").value(small.length)
+				.key("pieces root").value(smallRoot).end().end().end()
+				.key("empty").startDict().key("").startDict().key("length")
+				.value(0).end().end().end().key("meta version").value(2)
+				.key("name").value("v2").key("piece length").value(PIECE)
+				.end().key("piece layers").startDict().key(bigRoot)
+				.value(layer).end().end();
+		BencodeDict torrent = decode(w);
+		assertEquals(PieceVerifier.pieceCount(torrent), 5);
+		BitSet have = new PieceVerifier().verify(torrent, dir, null);
+		assertEquals(have.cardinality(), 5);
+
+		big[PIECE * 3 + 5] ^= 1;
+		Files.write(base.resolve("big.bin"), big);
+		small[0] ^= 1;
+		Files.write(base.resolve("dir/small.bin"), small);
+		have = new PieceVerifier().verify(torrent, dir, null);
+		assertEquals(have.toString(), "{0, 1, 2}");
+
+		// the piece layer must hash to the root the info hash covers
+		byte[] raw = torrent.raw().toByteArray();
+		for (int i = 0;; i++) {
+			if (Arrays.equals(Arrays.copyOfRange(raw, i, i + layer.length),
+					layer)) {
+				raw[i] ^= 1;
+				break;
+			}
+		}
+		try {
+			new PieceVerifier().verify(
+					(BencodeDict) new BencodeDecoder().decode(raw), dir, null);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("pieces root"));
+		}
+	}
+
+	@Test
+	public void testMalformedTorrent() throws IOException {
+		BencodeWriter w = new BencodeWriter();
+		w.startDict().key("info").startDict().key("length").value(10)
+				.key("name").value("..").key("piece length").value(PIECE)
+				.key("pieces").value(new byte[20]).end().end();
+		try {
+			new PieceVerifier().verify(decode(w), dir, null);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("file name"));
+		}
+		w.reset().startDict().key("info").startDict().key("length").value(10)
+				.key("name").value("x").key("piece length").value(PIECE)
+				.key("pieces").value(new byte[40]).end().end();
+		try {
+			new PieceVerifier().verify(decode(w), dir, null);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("piece hashes"));
+		}
+		// the values of the wrong types
+		assertMalformed(v1Files("d6:lengthi1ee"), "no path");
+		assertMalformed(v1Files("i1e"), "file is not the dictionary");
+		assertMalformed(v1Files("d6:length1:14:pathl1:aee"),
+				"length is not the 64-bit integer");
+		assertMalformed(v1Files("d6:lengthi1e4:pathli7eee"),
+				"file name is not the byte string");
+		assertMalformed(v2Tree("1:ai1e", ""), "file tree is not the dictionary");
+		assertMalformed(v2Tree("1:ad0:d6:lengthi" + (2 * PIECE)
+				+ "e11:pieces root32:" + new String(new char[32]) + "ee",
+				"12:piece layersd32:" + new String(new char[32]) + "i1ee"),
+				"piece layer is not the byte string");
+	}
+
+	// the v1 torrent of the single file written as given
+	private static BencodeDict v1Files(String file) throws IOException {
+		return torrent("d4:infod5:filesl" + file
+				+ "e4:name1:x12:piece lengthi" + PIECE + "e6:pieces20:"
+				+ new String(new char[20]) + "ee");
+	}
+
+	// the v2 torrent of the file tree and the piece layers written as given
+	private static BencodeDict v2Tree(String tree, String layers)
+			throws IOException {
+		return torrent("d4:infod9:file treed" + tree
+				+ "e4:name1:x12:piece lengthi" + PIECE + "ee" + layers + "e");
+	}
+
+	private static BencodeDict torrent(String encoded) throws IOException {
+		return (BencodeDict) new BencodeDecoder().decode(encoded
+				.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private void assertMalformed(BencodeDict torrent, String message) {
+		try {
+			new PieceVerifier().verify(torrent, dir, null);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains(message), e.getMessage());
+		}
+	}
+}